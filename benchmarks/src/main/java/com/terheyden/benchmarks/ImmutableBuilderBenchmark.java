@@ -0,0 +1,141 @@
+package com.terheyden.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
+import com.terheyden.ImmutableBuilder;
+import com.terheyden.Immutables;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every {@link ImmutableBuilder} terminal over a shuffled source, with 5% of the values staged for removal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ImmutableBuilderBenchmark
+{
+    @Param({ "10", "1000", "100000", "10000000" })
+    public int size;
+
+    private List<Integer> values;
+    private List<Integer> valuesToRemove;
+    private ImmutableSetMultimap<Integer, Integer> multimap;
+
+    @Setup
+    public void setup()
+    {
+        values = new ArrayList<>(size);
+        valuesToRemove = new ArrayList<>(size / 20 + 1);
+        ImmutableSetMultimap.Builder<Integer, Integer> multimapBuilder = ImmutableSetMultimap.builder();
+
+        for (int i = 0; i < size; i++)
+        {
+            values.add(i);
+            // Four values per key:
+            multimapBuilder.put(i / 4, i);
+
+            if (i % 20 == 0)
+            {
+                valuesToRemove.add(i);
+            }
+        }
+
+        Collections.shuffle(values, new Random(42));
+        multimap = multimapBuilder.build();
+    }
+
+    private ImmutableBuilder listBuilder()
+    {
+        return Immutables
+            .builder()
+            .addListValues(values)
+            .removeListValues(valuesToRemove);
+    }
+
+    private ImmutableBuilder mapBuilder()
+    {
+        return Immutables
+            .from(multimap)
+            .addMapValue(size, size)
+            .removeMapKey(0)
+            .removeMapValue(1, 5);
+    }
+
+    ////////////////////////////////////////
+    // TO LISTS:
+
+    @Benchmark
+    public List<Integer> toList()
+    {
+        return listBuilder().toList();
+    }
+
+    @Benchmark
+    public List<Integer> toSortedList()
+    {
+        return listBuilder().toSortedList();
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> toImmutableList()
+    {
+        return listBuilder().toImmutableList();
+    }
+
+    @Benchmark
+    public ImmutableSortedSet<Integer> toImmutableSortedSet()
+    {
+        return listBuilder().toImmutableSortedSet();
+    }
+
+    ////////////////////////////////////////
+    // TO MAPS:
+
+    @Benchmark
+    public SetMultimap<Integer, Integer> toSetMultimap()
+    {
+        return mapBuilder().toSetMultimap();
+    }
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, Integer> toImmutableSetMultimap()
+    {
+        return mapBuilder().toImmutableSetMultimap();
+    }
+
+    @Benchmark
+    public ListMultimap<Integer, Integer> toListMultimap()
+    {
+        return mapBuilder().toListMultimap();
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<Integer, Integer> toImmutableListMultimap()
+    {
+        return mapBuilder().toImmutableListMultimap();
+    }
+}
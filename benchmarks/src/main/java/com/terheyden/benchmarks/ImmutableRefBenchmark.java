@@ -0,0 +1,81 @@
+package com.terheyden.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.ImmutableMap;
+import com.terheyden.ImmutableRef;
+import com.terheyden.Immutables;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 32 writers updating one shared map: a CAS loop around {@link Immutables#addToMap} vs {@link ImmutableRef}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Threads(32)
+public class ImmutableRefBenchmark
+{
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private AtomicReference<ImmutableMap<Integer, Integer>> atomicRef;
+    private ImmutableRef<ImmutableMap<Integer, Integer>, Map<Integer, Integer>> immutableRef;
+
+    @Setup
+    public void setup()
+    {
+        ImmutableMap.Builder<Integer, Integer> builder = ImmutableMap.builderWithExpectedSize(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            builder.put(i, i);
+        }
+
+        atomicRef = new AtomicReference<>(builder.build());
+        immutableRef = ImmutableRef.ofMap(atomicRef.get());
+    }
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> casLoop()
+    {
+        // Overwrite existing keys, so the map stays the same size:
+        Integer key = ThreadLocalRandom.current().nextInt(size);
+
+        while (true)
+        {
+            ImmutableMap<Integer, Integer> oldMap = atomicRef.get();
+            ImmutableMap<Integer, Integer> newMap = Immutables.editMap(oldMap, map -> map.put(key, -key));
+
+            if (atomicRef.compareAndSet(oldMap, newMap))
+            {
+                return newMap;
+            }
+        }
+    }
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> flatCombining()
+    {
+        Integer key = ThreadLocalRandom.current().nextInt(size);
+        return immutableRef.update(map -> map.put(key, -key));
+    }
+}
@@ -0,0 +1,190 @@
+package com.terheyden.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.terheyden.Immutables;
+import com.terheyden.PersistentHashMap;
+import com.terheyden.PersistentSetMultimap;
+import com.terheyden.PersistentSortedMap;
+import com.terheyden.PersistentVector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single add / remove on every {@link Immutables} collection type, Guava copy-based vs persistent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ImmutablesBenchmark
+{
+    @Param({ "10", "1000", "100000", "10000000" })
+    public int size;
+
+    private Integer newKey;
+    private Integer oldKey;
+
+    private ImmutableList<Integer> list;
+    private PersistentVector<Integer> vector;
+    private ImmutableMap<Integer, Integer> map;
+    private PersistentHashMap<Integer, Integer> hashMap;
+    private ImmutableSortedMap<Integer, Integer> sortedMap;
+    private PersistentSortedMap<Integer, Integer> persistentSortedMap;
+    private ImmutableSetMultimap<Integer, Integer> setMultimap;
+    private PersistentSetMultimap<Integer, Integer> persistentSetMultimap;
+
+    @Setup
+    public void setup()
+    {
+        newKey = size;
+        oldKey = size / 2;
+
+        Map<Integer, Integer> src = new HashMap<>(size * 2);
+        ImmutableList.Builder<Integer> listBuilder = ImmutableList.builderWithExpectedSize(size);
+        ImmutableSetMultimap.Builder<Integer, Integer> multimapBuilder = ImmutableSetMultimap.builder();
+
+        for (int i = 0; i < size; i++)
+        {
+            src.put(i, i);
+            listBuilder.add(i);
+            // Four values per key:
+            multimapBuilder.put(i / 4, i);
+        }
+
+        list = listBuilder.build();
+        vector = PersistentVector.copyOf(list);
+        map = ImmutableMap.copyOf(src);
+        hashMap = PersistentHashMap.copyOf(src);
+        sortedMap = ImmutableSortedMap.copyOf(src);
+        persistentSortedMap = PersistentSortedMap.copyOf(src);
+        setMultimap = multimapBuilder.build();
+        persistentSetMultimap = PersistentSetMultimap.copyOf(setMultimap);
+    }
+
+    ////////////////////////////////////////
+    // LIST:
+
+    @Benchmark
+    public ImmutableList<Integer> addToList()
+    {
+        return Immutables.addToList(list, newKey);
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> removeFromList()
+    {
+        return Immutables.removeFromList(list, oldKey);
+    }
+
+    @Benchmark
+    public PersistentVector<Integer> addToPersistentList()
+    {
+        return Immutables.addToList(vector, newKey);
+    }
+
+    @Benchmark
+    public PersistentVector<Integer> removeFromPersistentList()
+    {
+        return Immutables.removeFromList(vector, oldKey);
+    }
+
+    ////////////////////////////////////////
+    // MAP:
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> addToMap()
+    {
+        return Immutables.addToMap(map, newKey, newKey);
+    }
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> removeFromMap()
+    {
+        return Immutables.removeFromMap(map, oldKey);
+    }
+
+    @Benchmark
+    public PersistentHashMap<Integer, Integer> addToPersistentMap()
+    {
+        return Immutables.addToMap(hashMap, newKey, newKey);
+    }
+
+    @Benchmark
+    public PersistentHashMap<Integer, Integer> removeFromPersistentMap()
+    {
+        return Immutables.removeFromMap(hashMap, oldKey);
+    }
+
+    ////////////////////////////////////////
+    // SORTED MAP:
+
+    @Benchmark
+    public ImmutableSortedMap<Integer, Integer> addToSortedMap()
+    {
+        return Immutables.addToSortedMap(sortedMap, newKey, newKey);
+    }
+
+    @Benchmark
+    public ImmutableSortedMap<Integer, Integer> removeFromSortedMap()
+    {
+        return Immutables.removeFromSortedMap(sortedMap, oldKey);
+    }
+
+    @Benchmark
+    public PersistentSortedMap<Integer, Integer> addToPersistentSortedMap()
+    {
+        return Immutables.addToSortedMap(persistentSortedMap, newKey, newKey);
+    }
+
+    @Benchmark
+    public PersistentSortedMap<Integer, Integer> removeFromPersistentSortedMap()
+    {
+        return Immutables.removeFromSortedMap(persistentSortedMap, oldKey);
+    }
+
+    ////////////////////////////////////////
+    // SET MULTIMAP:
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, Integer> addToSetMultimap()
+    {
+        return Immutables.addToSetMultimap(setMultimap, newKey, newKey);
+    }
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, Integer> removeFromSetMultimap()
+    {
+        return Immutables.removeFromSetMultimap(setMultimap, oldKey / 4, oldKey);
+    }
+
+    @Benchmark
+    public PersistentSetMultimap<Integer, Integer> addToPersistentSetMultimap()
+    {
+        return Immutables.addToSetMultimap(persistentSetMultimap, newKey, newKey);
+    }
+
+    @Benchmark
+    public PersistentSetMultimap<Integer, Integer> removeFromPersistentSetMultimap()
+    {
+        return Immutables.removeFromSetMultimap(persistentSetMultimap, oldKey / 4, oldKey);
+    }
+}
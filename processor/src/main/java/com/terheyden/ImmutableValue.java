@@ -0,0 +1,38 @@
+package com.terheyden;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a final, immutable implementation of the annotated interface or abstract class,
+ * named {@code Immutable} plus its name, with one field per abstract accessor:
+ * <pre>
+ *   &#64;ImmutableValue
+ *   public interface User
+ *   {
+ *       UUID getId();
+ *       String getName();
+ *       int getAge();
+ *   }
+ *
+ *   User cora = new ImmutableUser(UUID.randomUUID(), "Cora", 8);
+ *   User older = cora.withAge(9);
+ * </pre>
+ *
+ * The generated class has a {@code withX} method per property that returns a changed copy (or
+ * {@code this}, if nothing changed), and computes its hash once, in the constructor - the same value
+ * {@code Objects.hash} gives over the properties in declaration order. {@code equals} compares hashes
+ * before any field, and never allocates. Properties are non-null unless the accessor is annotated
+ * {@code @Nullable}. Array properties aren't allowed, since they're mutable, and neither are collections,
+ * maps or multimaps other than Guava's {@code Immutable*} collections and this library's
+ * {@code Persistent*} ones - not their mutable {@code Transient} builders.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ImmutableValue
+{
+}
@@ -0,0 +1,556 @@
+package com.terheyden.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the implementations behind {@link com.terheyden.ImmutableValue}.
+ *
+ * Generated fields are declared widest first (longs and doubles, then references, then ints
+ * and so on down to booleans), so the object packs without padding even where the VM keeps
+ * declaration order, and primitives stay unboxed. The only field on top of the properties is
+ * the cached {@code int} hash.
+ */
+@SupportedAnnotationTypes("com.terheyden.ImmutableValue")
+public final class ImmutableValueProcessor extends AbstractProcessor
+{
+    /** Properties of these types, or their subtypes, could change under the cached hash. */
+    private static final List<String> MUTABLE_CONTAINER_TYPES = List.of(
+        "java.util.Collection",
+        "java.util.Map",
+        "com.google.common.collect.Multimap");
+
+    /**
+     * ...unless they're one of these, which can't. Listed by name, since their nested types
+     * (like {@code PersistentHashMap.Transient}) needn't be immutable.
+     */
+    private static final Set<String> IMMUTABLE_CONTAINER_TYPES = Set.of(
+        "com.google.common.collect.ImmutableBiMap",
+        "com.google.common.collect.ImmutableClassToInstanceMap",
+        "com.google.common.collect.ImmutableCollection",
+        "com.google.common.collect.ImmutableList",
+        "com.google.common.collect.ImmutableListMultimap",
+        "com.google.common.collect.ImmutableMap",
+        "com.google.common.collect.ImmutableMultimap",
+        "com.google.common.collect.ImmutableMultiset",
+        "com.google.common.collect.ImmutableSet",
+        "com.google.common.collect.ImmutableSetMultimap",
+        "com.google.common.collect.ImmutableSortedMap",
+        "com.google.common.collect.ImmutableSortedMultiset",
+        "com.google.common.collect.ImmutableSortedSet",
+        "com.terheyden.PersistentHashMap",
+        "com.terheyden.PersistentHashSet",
+        "com.terheyden.PersistentListMultimap",
+        "com.terheyden.PersistentSetMultimap",
+        "com.terheyden.PersistentSortedMap",
+        "com.terheyden.PersistentVector");
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for (TypeElement annotation : annotations)
+        {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                try
+                {
+                    generate(validate(element));
+                }
+                catch (InvalidValueException e)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                }
+                catch (IOException e)
+                {
+                    processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR, "Couldn't write generated class: " + e, element);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    ////////////////////////////////////////
+    // VALIDATION:
+
+    private TypeElement validate(Element element)
+    {
+        boolean isInterface = element.getKind() == ElementKind.INTERFACE;
+        boolean isAbstractClass = element.getKind() == ElementKind.CLASS && element.getModifiers().contains(Modifier.ABSTRACT);
+
+        if (!isInterface && !isAbstractClass)
+        {
+            throw new InvalidValueException(element, "@ImmutableValue must be on an interface or abstract class");
+        }
+
+        TypeElement type = (TypeElement) element;
+
+        if (type.getModifiers().contains(Modifier.PRIVATE))
+        {
+            throw new InvalidValueException(type, "@ImmutableValue types can't be private");
+        }
+
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC) && !isInterface)
+        {
+            throw new InvalidValueException(type, "Nested @ImmutableValue classes must be static");
+        }
+
+        if (!type.getTypeParameters().isEmpty())
+        {
+            throw new InvalidValueException(type, "Generic @ImmutableValue types aren't supported");
+        }
+
+        if (isAbstractClass && ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+            .noneMatch(ctor -> ctor.getParameters().isEmpty() && !ctor.getModifiers().contains(Modifier.PRIVATE)))
+        {
+            throw new InvalidValueException(type, "@ImmutableValue classes need a non-private no-arg constructor");
+        }
+
+        return type;
+    }
+
+    /**
+     * The abstract accessors, in declaration order, supertypes first.
+     */
+    private List<Property> properties(TypeElement type)
+    {
+        Map<String, ExecutableElement> declared = new LinkedHashMap<>();
+        collectAccessors(type, declared);
+
+        // Only what's still abstract in the type itself, after any overrides:
+        List<ExecutableElement> abstractMethods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))
+            .stream()
+            .filter(method -> method.getModifiers().contains(Modifier.ABSTRACT))
+            .collect(Collectors.toList());
+
+        for (ExecutableElement method : abstractMethods)
+        {
+            if (!method.getParameters().isEmpty() && !method.getSimpleName().contentEquals("equals"))
+            {
+                throw new InvalidValueException(method, "Abstract methods of @ImmutableValue types must be plain accessors");
+            }
+        }
+
+        Set<String> abstractNames = abstractMethods.stream()
+            .filter(method -> method.getParameters().isEmpty())
+            .map(method -> method.getSimpleName().toString())
+            .collect(Collectors.toSet());
+
+        List<Property> properties = new ArrayList<>();
+
+        for (ExecutableElement method : declared.values())
+        {
+            String methodName = method.getSimpleName().toString();
+
+            if (!abstractNames.contains(methodName) || methodName.equals("hashCode") || methodName.equals("toString"))
+            {
+                continue;
+            }
+
+            if (!method.getTypeParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID)
+            {
+                throw new InvalidValueException(method, "Abstract methods of @ImmutableValue types must be plain accessors");
+            }
+
+            if (method.getReturnType().getKind() == TypeKind.ARRAY)
+            {
+                throw new InvalidValueException(method, "Arrays are mutable; use an immutable collection instead");
+            }
+
+            if (isMutableContainer(method.getReturnType()))
+            {
+                throw new InvalidValueException(method, method.getReturnType()
+                    + " may be mutable, which would leave the cached hash stale; use an immutable collection instead");
+            }
+
+            Property property = new Property(method);
+
+            if (property.name.equals("hashCode"))
+            {
+                throw new InvalidValueException(method, "The property name hashCode is reserved for the cached hash");
+            }
+
+            properties.add(property);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Whether {@code type} is a collection, map or multimap that isn't one of the known immutable ones.
+     * Interfaces like {@code List} count as mutable, since the caller could pass any implementation.
+     */
+    private boolean isMutableContainer(TypeMirror type)
+    {
+        if (type.getKind() != TypeKind.DECLARED)
+        {
+            return false;
+        }
+
+        String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+
+        if (IMMUTABLE_CONTAINER_TYPES.contains(name))
+        {
+            return false;
+        }
+
+        Types types = processingEnv.getTypeUtils();
+
+        return MUTABLE_CONTAINER_TYPES.stream()
+            .map(containerName -> processingEnv.getElementUtils().getTypeElement(containerName))
+            .filter(Objects::nonNull)
+            .anyMatch(container -> types.isAssignable(types.erasure(type), types.erasure(container.asType())));
+    }
+
+    private void collectAccessors(TypeElement type, Map<String, ExecutableElement> accessors)
+    {
+        TypeMirror superclass = type.getSuperclass();
+
+        if (superclass.getKind() == TypeKind.DECLARED)
+        {
+            collectAccessors((TypeElement) ((DeclaredType) superclass).asElement(), accessors);
+        }
+
+        for (TypeMirror iface : type.getInterfaces())
+        {
+            collectAccessors((TypeElement) ((DeclaredType) iface).asElement(), accessors);
+        }
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements()))
+        {
+            if (method.getModifiers().contains(Modifier.ABSTRACT) && method.getParameters().isEmpty())
+            {
+                // A redeclaration, e.g. with a narrower return type, wins but keeps its original position:
+                accessors.put(method.getSimpleName().toString(), method);
+            }
+        }
+    }
+
+    ////////////////////////////////////////
+    // GENERATION:
+
+    private void generate(TypeElement type) throws IOException
+    {
+        List<Property> properties = properties(type);
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String valueName = type.getSimpleName().toString();
+        String className = "Immutable" + valueName;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        boolean serializable = processingEnv.getTypeUtils().isAssignable(
+            type.asType(),
+            processingEnv.getElementUtils().getTypeElement("java.io.Serializable").asType());
+
+        List<Property> fieldOrder = new ArrayList<>(properties);
+        fieldOrder.sort(Comparator.comparingInt(Property::width).reversed());
+
+        StringBuilder src = new StringBuilder();
+
+        if (!packageName.isEmpty())
+        {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        src.append("public final class ").append(className)
+            .append(type.getKind() == ElementKind.INTERFACE ? " implements " : " extends ")
+            .append(type.getQualifiedName()).append("\n{\n");
+
+        if (serializable)
+        {
+            src.append("    private static final long serialVersionUID = 1L;\n\n");
+        }
+
+        for (Property property : fieldOrder)
+        {
+            src.append("    private final ").append(property.type).append(' ').append(property.name).append(";\n");
+        }
+
+        src.append("    private final int hashCode;\n\n");
+
+        // Constructor:
+        src.append("    public ").append(className).append('(').append(parameters(properties)).append(")\n    {\n");
+
+        for (Property property : properties)
+        {
+            src.append("        this.").append(property.name).append(" = ");
+
+            if (property.isPrimitive() || property.nullable)
+            {
+                src.append(property.name).append(";\n");
+            }
+            else
+            {
+                src.append("java.util.Objects.requireNonNull(").append(property.name)
+                    .append(", \"").append(property.name).append("\");\n");
+            }
+        }
+
+        src.append("\n        int hashCode = 1;\n");
+
+        for (Property property : properties)
+        {
+            src.append("        hashCode = 31 * hashCode + ").append(property.hashExpression("this." + property.name)).append(";\n");
+        }
+
+        src.append("        this.hashCode = hashCode;\n    }\n");
+
+        // Accessors and withers:
+        for (Property property : properties)
+        {
+            src.append("\n    @Override\n    public ").append(property.type).append(' ').append(property.accessor)
+                .append("()\n    {\n        return this.").append(property.name).append(";\n    }\n");
+        }
+
+        for (Property property : properties)
+        {
+            src.append("\n    public ").append(className).append(' ').append(property.witherName())
+                .append('(').append(property.type).append(' ').append(property.name).append(")\n    {\n")
+                .append("        return ").append(property.sameExpression("this." + property.name, property.name))
+                .append("\n            ? this\n            : new ").append(className).append('(')
+                .append(properties.stream()
+                    .map(other -> other == property ? other.name : "this." + other.name)
+                    .collect(Collectors.joining(", ")))
+                .append(");\n    }\n");
+        }
+
+        // Object:
+        src.append("\n    @Override\n    public boolean equals(Object obj)\n    {\n")
+            .append("        if (obj == this)\n        {\n            return true;\n        }\n\n")
+            .append("        if (!(obj instanceof ").append(className).append("))\n        {\n            return false;\n        }\n\n")
+            .append("        ").append(className).append(" other = (").append(className).append(") obj;\n\n")
+            .append("        return this.hashCode == other.hashCode");
+
+        // Primitives first, since they're cheapest to compare:
+        List<Property> compareOrder = new ArrayList<>(properties);
+        compareOrder.sort(Comparator.comparing(property -> !property.isPrimitive()));
+
+        for (Property property : compareOrder)
+        {
+            src.append("\n            && ").append(property.equalsExpression("this." + property.name, "other." + property.name));
+        }
+
+        src.append(";\n    }\n");
+
+        src.append("\n    @Override\n    public int hashCode()\n    {\n        return this.hashCode;\n    }\n");
+
+        src.append("\n    @Override\n    public String toString()\n    {\n        return \"").append(valueName).append("{\"");
+
+        for (int i = 0; i < properties.size(); i++)
+        {
+            src.append("\n            + \"").append(i == 0 ? "" : ", ").append(properties.get(i).name)
+                .append("=\" + this.").append(properties.get(i).name);
+        }
+
+        src.append("\n            + \"}\";\n    }\n");
+
+        if (serializable)
+        {
+            // Hashes of enums and the like aren't stable across JVMs, so recompute on the way in:
+            src.append("\n    private Object readResolve()\n    {\n        return new ").append(className).append('(')
+                .append(properties.stream().map(property -> "this." + property.name).collect(Collectors.joining(", ")))
+                .append(");\n    }\n");
+        }
+
+        src.append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())
+        {
+            writer.write(src.toString());
+        }
+    }
+
+    private static String parameters(List<Property> properties)
+    {
+        return properties.stream()
+            .map(property -> property.type + " " + property.name)
+            .collect(Collectors.joining(", "));
+    }
+
+    ////////////////////////////////////////
+    // PROPERTIES:
+
+    private static final class Property
+    {
+        private final String accessor;
+        private final String name;
+        private final TypeMirror typeMirror;
+        private final String type;
+        private final boolean nullable;
+
+        private Property(ExecutableElement method)
+        {
+            this.accessor = method.getSimpleName().toString();
+            this.typeMirror = method.getReturnType();
+            this.type = typeMirror.toString();
+            this.name = propertyName(accessor, typeMirror.getKind() == TypeKind.BOOLEAN);
+            this.nullable = method.getAnnotationMirrors().stream()
+                .anyMatch(mirror -> mirror.getAnnotationType().asElement().getSimpleName().contentEquals("Nullable"));
+        }
+
+        /**
+         * {@code getName} and {@code name} both become {@code name}; {@code isActive} becomes
+         * {@code active} if it returns a boolean.
+         */
+        private static String propertyName(String accessor, boolean isBoolean)
+        {
+            if (hasPrefix(accessor, "get"))
+            {
+                return decapitalize(accessor.substring(3));
+            }
+
+            if (isBoolean && hasPrefix(accessor, "is"))
+            {
+                return decapitalize(accessor.substring(2));
+            }
+
+            return accessor;
+        }
+
+        private static boolean hasPrefix(String accessor, String prefix)
+        {
+            return accessor.length() > prefix.length()
+                && accessor.startsWith(prefix)
+                && Character.isUpperCase(accessor.charAt(prefix.length()));
+        }
+
+        private static String decapitalize(String name)
+        {
+            String decapitalized = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+
+            // getDefault() can't have a field named default, so keep Default:
+            return SourceVersion.isKeyword(decapitalized) ? name : decapitalized;
+        }
+
+        private String witherName()
+        {
+            return "with" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private boolean isPrimitive()
+        {
+            return typeMirror.getKind().isPrimitive();
+        }
+
+        /**
+         * Bytes per field; references count as 4, assuming compressed oops.
+         */
+        private int width()
+        {
+            switch (typeMirror.getKind())
+            {
+                case LONG:
+                case DOUBLE:
+                    return 8;
+                case INT:
+                case FLOAT:
+                    return 4;
+                case SHORT:
+                case CHAR:
+                    return 2;
+                case BYTE:
+                case BOOLEAN:
+                    return 1;
+                default:
+                    return 4;
+            }
+        }
+
+        /**
+         * Same as {@code Objects.hash} would contribute, without the boxing.
+         */
+        private String hashExpression(String value)
+        {
+            switch (typeMirror.getKind())
+            {
+                case BOOLEAN:
+                    return "Boolean.hashCode(" + value + ")";
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                case INT:
+                    return "(int) " + value;
+                case LONG:
+                    return "Long.hashCode(" + value + ")";
+                case FLOAT:
+                    return "Float.hashCode(" + value + ")";
+                case DOUBLE:
+                    return "Double.hashCode(" + value + ")";
+                default:
+                    return nullable ? "java.util.Objects.hashCode(" + value + ")" : value + ".hashCode()";
+            }
+        }
+
+        private String equalsExpression(String left, String right)
+        {
+            switch (typeMirror.getKind())
+            {
+                case FLOAT:
+                    return "Float.floatToIntBits(" + left + ") == Float.floatToIntBits(" + right + ")";
+                case DOUBLE:
+                    return "Double.doubleToLongBits(" + left + ") == Double.doubleToLongBits(" + right + ")";
+                default:
+                    if (isPrimitive())
+                    {
+                        return left + " == " + right;
+                    }
+
+                    return nullable ? "java.util.Objects.equals(" + left + ", " + right + ")" : left + ".equals(" + right + ")";
+            }
+        }
+
+        /**
+         * Whether a wither can return {@code this}: equal primitives, or the very same reference.
+         */
+        private String sameExpression(String current, String replacement)
+        {
+            return isPrimitive() ? equalsExpression(current, replacement) : current + " == " + replacement;
+        }
+    }
+
+    private static final class InvalidValueException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private InvalidValueException(Element element, String message)
+        {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.terheyden.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImmutableValueProcessorTest
+{
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testUser() throws Exception
+    {
+        ClassLoader loader = compile("test.User",
+            "package test;",
+            "",
+            "@com.terheyden.ImmutableValue",
+            "public interface User extends java.io.Serializable",
+            "{",
+            "    java.util.UUID getId();",
+            "    String getName();",
+            "    int getAge();",
+            "}");
+
+        Class<?> type = loader.loadClass("test.ImmutableUser");
+        Constructor<?> constructor = type.getConstructor(UUID.class, String.class, int.class);
+
+        UUID id = UUID.randomUUID();
+        Object cora = constructor.newInstance(id, "Cora", 8);
+
+        assertEquals("Cora", type.getMethod("getName").invoke(cora));
+        assertEquals(Objects.hash(id, "Cora", 8), cora.hashCode());
+        assertEquals("User{id=" + id + ", name=Cora, age=8}", cora.toString());
+
+        Object older = type.getMethod("withAge", int.class).invoke(cora, 9);
+        assertEquals(9, type.getMethod("getAge").invoke(older));
+        assertEquals(8, type.getMethod("getAge").invoke(cora));
+        assertNotEquals(cora, older);
+
+        assertSame(cora, type.getMethod("withAge", int.class).invoke(cora, 8));
+        assertSame(cora, type.getMethod("withName", String.class).invoke(cora, "Cora"));
+        assertEquals(cora, type.getMethod("withName", String.class).invoke(cora, new String("Cora")));
+        assertEquals(cora, constructor.newInstance(id, "Cora", 8));
+
+        InvocationTargetException e = assertThrows(
+            InvocationTargetException.class,
+            () -> constructor.newInstance(id, null, 8));
+        assertTrue(e.getCause() instanceof NullPointerException);
+
+        assertEquals(cora, roundTrip(cora, loader));
+    }
+
+    @Test
+    public void testAbstractClass() throws Exception
+    {
+        ClassLoader loader = compile("test.Reading",
+            "package test;",
+            "",
+            "@com.terheyden.ImmutableValue",
+            "public abstract class Reading",
+            "{",
+            "    public abstract boolean isCalibrated();",
+            "    public abstract double value();",
+            "    @Nullable public abstract String label();",
+            "",
+            "    public String describe()",
+            "    {",
+            "        return label() + \": \" + value();",
+            "    }",
+            "}",
+            "",
+            "@interface Nullable",
+            "{",
+            "}");
+
+        Class<?> type = loader.loadClass("test.ImmutableReading");
+        Object reading = type.getConstructor(boolean.class, double.class, String.class).newInstance(true, 1.5, null);
+
+        assertEquals("null: 1.5", type.getMethod("describe").invoke(reading));
+        assertEquals(Objects.hash(true, 1.5, null), reading.hashCode());
+
+        Object nan = type.getMethod("withValue", double.class).invoke(reading, Double.NaN);
+        assertEquals(nan, type.getMethod("withValue", double.class).invoke(nan, Double.NaN));
+        assertSame(nan, type.getMethod("withValue", double.class).invoke(nan, Double.NaN));
+
+        Object labelled = type.getMethod("withLabel", String.class).invoke(reading, "temp");
+        assertFalse(labelled.equals(reading));
+        assertEquals("Reading{calibrated=true, value=1.5, label=temp}", labelled.toString());
+    }
+
+    @Test
+    public void testRejectsArrays()
+    {
+        List<String> errors = compileErrors("test.Bytes",
+            "package test;",
+            "",
+            "@com.terheyden.ImmutableValue",
+            "public interface Bytes",
+            "{",
+            "    byte[] data();",
+            "}");
+
+        assertEquals(List.of("Arrays are mutable; use an immutable collection instead"), errors);
+    }
+
+    @Test
+    public void testRejectsMutableCollections()
+    {
+        List<String> errors = compileErrors("test.Tagged",
+            "package test;",
+            "",
+            "@com.terheyden.ImmutableValue",
+            "public interface Tagged",
+            "{",
+            "    java.util.List<String> tags();",
+            "}");
+
+        assertEquals(
+            List.of("java.util.List<java.lang.String> may be mutable, which would leave the cached hash stale; "
+                + "use an immutable collection instead"),
+            errors);
+
+        errors = compileErrors("test.Counted",
+            "package test;",
+            "",
+            "@com.terheyden.ImmutableValue",
+            "public interface Counted",
+            "{",
+            "    java.util.HashMap<String, Integer> counts();",
+            "}");
+
+        assertEquals(1, errors.size());
+
+        // Allowed by name only, so a persistent type's mutable Transient is still caught.
+        // The library isn't on this module's classpath, so stand in for it:
+        errors = compileErrors("com.terheyden.Scratch",
+            "package com.terheyden;",
+            "",
+            "@ImmutableValue",
+            "public interface Scratch",
+            "{",
+            "    PersistentHashMap<String, String> getSnapshot();",
+            "    PersistentHashMap.Transient<String, String> getScratch();",
+            "}",
+            "",
+            "abstract class PersistentHashMap<K, V> extends java.util.AbstractMap<K, V>",
+            "{",
+            "    abstract static class Transient<K, V> extends java.util.AbstractMap<K, V>",
+            "    {",
+            "    }",
+            "}");
+
+        assertEquals(
+            List.of("com.terheyden.PersistentHashMap.Transient<java.lang.String,java.lang.String> may be mutable, "
+                + "which would leave the cached hash stale; use an immutable collection instead"),
+            errors);
+    }
+
+    ////////////////////////////////////////
+    // COMPILING:
+
+    private ClassLoader compile(String className, String... lines) throws IOException
+    {
+        List<String> errors = compileErrors(className, lines);
+        assertEquals(List.of(), errors);
+        return new URLClassLoader(new URL[] { tempDir.resolve("classes").toUri().toURL() }, getClass().getClassLoader());
+    }
+
+    private List<String> compileErrors(String className, String... lines)
+    {
+        try
+        {
+            Path source = tempDir.resolve("src").resolve(className.replace('.', '/') + ".java");
+            Path classes = Files.createDirectories(tempDir.resolve("classes"));
+            Files.createDirectories(source.getParent());
+            Files.write(source, List.of(lines));
+
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+            try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null))
+            {
+                JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    files,
+                    diagnostics,
+                    List.of("-d", classes.toString(), "-classpath", System.getProperty("java.class.path")),
+                    null,
+                    files.getJavaFileObjects(source));
+
+                task.setProcessors(List.of(new ImmutableValueProcessor()));
+                task.call();
+            }
+
+            return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(null))
+                .collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Object roundTrip(Object value, ClassLoader loader) throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(value);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+        {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException
+            {
+                return Class.forName(desc.getName(), false, loader);
+            }
+        })
+        {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.terheyden;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+
+/**
+ * The read side of a persistent multimap: a {@link PersistentHashMap} from each key to a persistent
+ * collection of its values, plus the total number of entries. Empty collections are never stored,
+ * so the key set is exactly the keys that have values.
+ *
+ * The mutators from {@link Multimap} all throw; subclasses add persistent versions.
+ */
+@ParametersAreNonnullByDefault
+abstract class AbstractPersistentMultimap<K, V, C extends Collection<V>> implements Multimap<K, V>
+{
+    final PersistentHashMap<K, C> map;
+    final int size;
+
+    AbstractPersistentMultimap(PersistentHashMap<K, C> map, int size)
+    {
+        this.map = map;
+        this.size = size;
+    }
+
+    /**
+     * Each key with its values. O(1) - this is the multimap's own backing map.
+     */
+    @Nonnull
+    public PersistentHashMap<K, C> asPersistentMap()
+    {
+        return map;
+    }
+
+    ////////////////////////////////////////
+    // MULTIMAP:
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(@Nullable Object value)
+    {
+        return map.values().stream().anyMatch(values -> values.contains(value));
+    }
+
+    @Override
+    public boolean containsEntry(@Nullable Object key, @Nullable Object value)
+    {
+        C values = key == null ? null : map.get(key);
+        return values != null && values.contains(value);
+    }
+
+    @Nonnull
+    @Override
+    public Set<K> keySet()
+    {
+        return map.keySet();
+    }
+
+    /**
+     * Each key as many times as it has values. O(number of keys).
+     */
+    @Nonnull
+    @Override
+    public Multiset<K> keys()
+    {
+        ImmutableMultiset.Builder<K> keys = ImmutableMultiset.builder();
+        map.forEach((key, values) -> keys.addCopies(key, values.size()));
+        return keys.build();
+    }
+
+    @Nonnull
+    @Override
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>()
+        {
+            @Override
+            public Iterator<V> iterator()
+            {
+                return Iterators.concat(Iterators.transform(map.values().iterator(), Collection::iterator));
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Map.Entry<K, V>> entries()
+    {
+        return new AbstractCollection<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return entryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    Iterator<Map.Entry<K, V>> entryIterator()
+    {
+        return Iterators.concat(Iterators.transform(
+            map.entrySet().iterator(),
+            keyValues -> Iterators.transform(
+                keyValues.getValue().iterator(),
+                value -> Maps.immutableEntry(keyValues.getKey(), value))));
+    }
+
+    /**
+     * O(1) - the backing map, read-only.
+     */
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, Collection<V>> asMap()
+    {
+        return (Map<K, Collection<V>>) (Map<K, ?>) map;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (obj instanceof AbstractPersistentMultimap)
+        {
+            AbstractPersistentMultimap<?, ?, ?> other = (AbstractPersistentMultimap<?, ?, ?>) obj;
+            return size == other.size && map.equals(other.map);
+        }
+
+        return obj instanceof Multimap && map.equals(((Multimap<?, ?>) obj).asMap());
+    }
+
+    /**
+     * O(1), like the backing map's.
+     */
+    @Override
+    public int hashCode()
+    {
+        return map.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return map.toString();
+    }
+
+    ////////////////////////////////////////
+    // UNSUPPORTED:
+
+    @Override
+    @Deprecated
+    public boolean put(K key, V value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean remove(@Nullable Object key, @Nullable Object value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean putAll(K key, Iterable<? extends V> values)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean putAll(Multimap<? extends K, ? extends V> multimap)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
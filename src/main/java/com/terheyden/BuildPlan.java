@@ -0,0 +1,726 @@
+package com.terheyden;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Streams;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
+import com.google.common.primitives.Ints;
+
+/**
+ * The operations staged on an {@link ImmutableBuilder}, compiled for a single pass.
+ * Removals are indexed into hash sets up front; the source and added values are then
+ * streamed through that index straight into the final immutable builder, with no
+ * intermediate mutable collection.
+ *
+ * When a sorted result is asked for and the source is already in natural order - an
+ * {@code ImmutableSortedSet}, say, or a multimap with sorted keys - only the staged additions
+ * are sorted, and they're merged into the source in one linear pass: O(n + m log m)
+ * instead of re-sorting all n + m values.
+ *
+ * Terminals whose source is already the type they return hand the source back untouched when
+ * the staged edits can't change it. With only a few edits per source element, each edit is
+ * probed against the source, or applied to it directly for persistent sources; past that,
+ * the edits are assumed to matter and the result is rebuilt in one pass.
+ *
+ * Streamed additions are read once, lazily, along with everything else. Since their size and
+ * contents aren't known up front, they always count as a large delta.
+ */
+@SuppressWarnings("unchecked")
+@ParametersAreNonnullByDefault
+final class BuildPlan
+{
+    /** Edits are worth handling one at a time when there's at most one per this many source elements. */
+    private static final int SMALL_DELTA_DIVISOR = 16;
+
+    @Nullable private final Collection srcList;
+    @Nullable private final Multimap srcMultimap;
+    @Nullable private final Map srcMap;
+
+    private final Iterable<Object> listValues;
+    @Nullable private final Collection sortedSrcList;
+    private final Collection listValuesToAdd;
+    private final int listSizeHint;
+    private final boolean listStreamed;
+    @Nullable private final Collection listValuesToRemove;
+    private final Set<Object> listRemovalIndex;
+    private final boolean removeOnce;
+
+    private final Iterable<Map.Entry<Object, Object>> mapEntries;
+    @Nullable private final Collection<Map.Entry<Object, Object>> sortedSrcEntries;
+    private final Collection<Map.Entry<Object, Object>> mapEntriesToAdd;
+    private final boolean mapStreamed;
+    private final Set<Object> mapKeysToRemove;
+    private final Multimap<Object, Object> mapValuesToRemove;
+
+    private final boolean sortKeys;
+
+    @Nullable private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    @Nullable private final SpillingSorter<Object> spill;
+    @Nullable private final SpillingSorter<Map.Entry<Object, Object>> mapSpill;
+
+    BuildPlan(
+        @Nullable Multimap srcMultimap,
+        @Nullable Map srcMap,
+        @Nullable Collection srcList,
+        @Nullable Collection listValuesToAdd,
+        @Nullable Iterator<Object> streamedListValues,
+        @Nullable Collection listValuesToRemove,
+        @Nullable Multimap mapValuesToAdd,
+        @Nullable Iterator<Map.Entry> streamedMapEntries,
+        @Nullable Multimap mapValuesToRemove,
+        @Nullable Collection mapKeysToRemove,
+        boolean sortKeys,
+        boolean removeOnce,
+        @Nullable ForkJoinPool pool,
+        int parallelThreshold,
+        @Nullable SpillingSorter<Object> spill,
+        @Nullable SpillingSorter<Map.Entry<Object, Object>> mapSpill)
+    {
+        this.srcList = srcList;
+        this.srcMultimap = srcMultimap;
+        this.srcMap = srcMap;
+
+        // Spilled values already include the source's, and come back sorted:
+        this.listValues = spill == null
+            ? Iterables.concat(orEmpty(srcList), orEmpty(listValuesToAdd), once(streamedListValues))
+            : spill::sorted;
+        this.listStreamed = streamedListValues != null;
+        this.sortedSrcList = srcList instanceof SortedSet
+            && isNatural(((SortedSet) srcList).comparator())
+            && !listStreamed
+            ? srcList
+            : null;
+        this.listValuesToAdd = orEmpty(listValuesToAdd);
+        this.listSizeHint = spill == null
+            ? orEmpty(srcList).size() + orEmpty(listValuesToAdd).size()
+            : Ints.saturatedCast(spill.size());
+        this.listValuesToRemove = listValuesToRemove;
+        this.listRemovalIndex = removeOnce ? Collections.emptySet() : index(listValuesToRemove);
+        this.removeOnce = removeOnce;
+
+        this.mapEntries = Iterables.concat(
+            srcMultimap == null ? Collections.emptySet() : srcMultimap.entries(),
+            srcMap == null ? Collections.emptySet() : srcMap.entrySet(),
+            mapValuesToAdd == null ? Collections.emptySet() : mapValuesToAdd.entries(),
+            once((Iterator) streamedMapEntries),
+            mapSpill == null ? Collections.emptySet() : mapSpill::sorted);
+
+        // Spilled entries already include the source's, and come back sorted by key:
+        this.mapStreamed = streamedMapEntries != null || mapSpill != null;
+        this.sortedSrcEntries = mapStreamed ? null : sortedEntries(srcMultimap, srcMap);
+        this.mapEntriesToAdd = mapValuesToAdd == null ? Collections.emptySet() : mapValuesToAdd.entries();
+
+        this.mapKeysToRemove = index(mapKeysToRemove);
+        this.mapValuesToRemove = mapValuesToRemove == null ? ImmutableSetMultimap.of() : mapValuesToRemove;
+        this.sortKeys = sortKeys;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.spill = spill;
+        this.mapSpill = mapSpill;
+    }
+
+    ////////////////////////////////////////
+    // TO LISTS:
+
+    @Nonnull
+    <K> List<K> toList()
+    {
+        if (isParallel())
+        {
+            Object[] values = needsListSort() ? parallelSortedListValues() : parallelListValues();
+            return new ArrayList(Arrays.asList(values));
+        }
+
+        ArrayList newList = new ArrayList(listSizeHint);
+        orderedListValues().forEach(newList::add);
+
+        if (needsListSort())
+        {
+            newList.sort(null);
+        }
+
+        return newList;
+    }
+
+    @Nonnull
+    <K> ImmutableList<K> toImmutableList()
+    {
+        if (!sortKeys
+            && srcList instanceof ImmutableList
+            && listValuesToAdd.isEmpty()
+            && !listStreamed
+            && nothingRemovedFromList())
+        {
+            return (ImmutableList<K>) srcList;
+        }
+
+        if (isParallel())
+        {
+            Object[] values = needsListSort() ? parallelSortedListValues() : parallelListValues();
+            return (ImmutableList<K>) ImmutableList.copyOf(values);
+        }
+
+        if (needsListSort())
+        {
+            // Fills one array and sorts it in place:
+            return ImmutableList.sortedCopyOf((Ordering) Ordering.natural(), listValues());
+        }
+
+        ImmutableList.Builder<Object> builder = ImmutableList.builderWithExpectedSize(listSizeHint);
+        orderedListValues().forEach(builder::add);
+        return (ImmutableList<K>) builder.build();
+    }
+
+    @Nonnull
+    <K> ImmutableSortedSet<K> toImmutableSortedSet()
+    {
+        if (sortedSrcList instanceof ImmutableSortedSet
+            && isSmallDelta(listValuesToAdd.size())
+            && sortedSrcList.containsAll(listValuesToAdd)
+            && nothingRemovedFromList())
+        {
+            return (ImmutableSortedSet<K>) sortedSrcList;
+        }
+
+        if (sortedSrcList == null && isParallel())
+        {
+            Object[] values = parallelSortedListValues();
+            int uniques = dedupeSorted(values);
+
+            // Already sorted, so TimSort inside copyOf() finds the one run and stops after n compares:
+            return ImmutableSortedSet.copyOf((Ordering) Ordering.natural(), Arrays.asList(values).subList(0, uniques));
+        }
+
+        // ImmutableSortedSet sorts and dedupes on its own; sorting the input first would be wasted work.
+        // Given merged input it still sorts, but TimSort finds the one run and stops after n compares:
+        return ImmutableSortedSet.copyOf(
+            (Ordering) Ordering.natural(),
+            sortedSrcList == null ? listValues() : mergedListValues());
+    }
+
+    /**
+     * The source and added values with the removals filtered out, in O(n + m).
+     */
+    private Iterable<Object> listValues()
+    {
+        return withoutListRemovals(listValues);
+    }
+
+    /**
+     * The additions sorted on their own, then merged into the sorted source with the removals
+     * filtered out, in O(n + m log m).
+     */
+    private Iterable<Object> mergedListValues()
+    {
+        ArrayList additions = new ArrayList(listValuesToAdd);
+        additions.sort(null);
+        return withoutListRemovals(mergeSorted(sortedSrcList, additions, Ordering.natural()));
+    }
+
+    /**
+     * Lazy, except for the sort when the values aren't sorted already.
+     */
+    @Nonnull
+    <K> Stream<K> toSortedStream()
+    {
+        Stream<Object> values = Streams.stream(orderedListValues());
+
+        if (needsListSort())
+        {
+            values = values.sorted();
+        }
+
+        return (Stream<K>) (spill == null ? values : values.onClose(spill::close));
+    }
+
+    /**
+     * The list values in the order the terminal wants, merged if that saves a sort.
+     */
+    private Iterable<Object> orderedListValues()
+    {
+        if (spill != null && !sortKeys)
+        {
+            spill.close();
+            throw new IllegalStateException("Values spilled to disk come back sorted: call sortList() first");
+        }
+
+        return sortKeys && sortedSrcList != null ? mergedListValues() : listValues();
+    }
+
+    /**
+     * Whether {@link #orderedListValues()} still has to be sorted.
+     */
+    private boolean needsListSort()
+    {
+        return sortKeys && sortedSrcList == null && spill == null;
+    }
+
+    /**
+     * Whether the staged removals miss the source entirely - checked only for a small delta.
+     */
+    private boolean nothingRemovedFromList()
+    {
+        if (listValuesToRemove == null || listValuesToRemove.isEmpty())
+        {
+            return true;
+        }
+
+        // disjoint() probes the source if it's a set, so this is O(m); otherwise one O(n) scan:
+        return isSmallDelta(listValuesToRemove.size())
+            && Collections.disjoint(srcList, srcList instanceof Set ? listValuesToRemove : index(listValuesToRemove));
+    }
+
+    private Iterable<Object> withoutListRemovals(Iterable<Object> values)
+    {
+        if (listValuesToRemove == null || listValuesToRemove.isEmpty())
+        {
+            return values;
+        }
+
+        if (removeOnce)
+        {
+            // Each staged removal is used up by the first value it matches:
+            Multiset<Object> pending = HashMultiset.create(listValuesToRemove);
+            return Iterables.filter(values, val -> pending.isEmpty() || !pending.remove(val));
+        }
+
+        return Iterables.filter(values, val -> !listRemovalIndex.contains(val));
+    }
+
+    ////////////////////////////////////////
+    // TO PRIMITIVES:
+
+    @Nonnull
+    ImmutableIntArray toImmutableIntArray()
+    {
+        IntStream values = Streams.stream(orderedListValues()).mapToInt(val -> ((Number) val).intValue());
+        return ImmutableIntArray.copyOf(needsListSort() ? values.sorted() : values);
+    }
+
+    @Nonnull
+    ImmutableLongArray toImmutableLongArray()
+    {
+        LongStream values = Streams.stream(orderedListValues()).mapToLong(val -> ((Number) val).longValue());
+        return ImmutableLongArray.copyOf(needsListSort() ? values.sorted() : values);
+    }
+
+    @Nonnull
+    ImmutableDoubleArray toImmutableDoubleArray()
+    {
+        DoubleStream values = Streams.stream(orderedListValues()).mapToDouble(val -> ((Number) val).doubleValue());
+        return ImmutableDoubleArray.copyOf(needsListSort() ? values.sorted() : values);
+    }
+
+    @Nonnull
+    ImmutableLongSet toImmutableLongSet()
+    {
+        ImmutableLongSet.Builder builder = ImmutableLongSet.builder(listSizeHint);
+        listValues().forEach(val -> builder.add(((Number) val).longValue()));
+        return builder.build();
+    }
+
+    ////////////////////////////////////////
+    // TO MAPS:
+
+    @Nonnull
+    <K, V> ImmutableSetMultimap<K, V> toImmutableSetMultimap()
+    {
+        if (!sortKeys && srcMultimap instanceof ImmutableSetMultimap && mapEditsHaveNoEffect(true))
+        {
+            return (ImmutableSetMultimap<K, V>) srcMultimap;
+        }
+
+        ImmutableSetMultimap.Builder<Object, Object> builder = ImmutableSetMultimap.builder();
+
+        if (needsKeySort())
+        {
+            builder.orderKeysBy((Ordering) Ordering.natural());
+        }
+
+        setMultimapEntries(orderedMapEntries()).forEach(builder::put);
+        return (ImmutableSetMultimap<K, V>) builder.build();
+    }
+
+    @Nonnull
+    <K, V> ImmutableListMultimap<K, V> toImmutableListMultimap()
+    {
+        if (!sortKeys && srcMultimap instanceof ImmutableListMultimap && mapEditsHaveNoEffect(false))
+        {
+            return (ImmutableListMultimap<K, V>) srcMultimap;
+        }
+
+        ImmutableListMultimap.Builder<Object, Object> builder = ImmutableListMultimap.builder();
+
+        if (needsKeySort())
+        {
+            builder.orderKeysBy((Ordering) Ordering.natural());
+        }
+
+        listMultimapEntries(orderedMapEntries()).forEach(builder::put);
+        return (ImmutableListMultimap<K, V>) builder.build();
+    }
+
+    /**
+     * Key order is the hash trie's own, so {@code sortKeys} doesn't apply.
+     */
+    @Nonnull
+    <K, V> PersistentSetMultimap<K, V> toPersistentSetMultimap()
+    {
+        if (srcMultimap instanceof PersistentSetMultimap && srcMap == null && isSmallDelta(mapEditCount()))
+        {
+            // O(log n) per edit, and the source itself if none of them change anything:
+            PersistentSetMultimap<Object, Object> map = (PersistentSetMultimap<Object, Object>) srcMultimap;
+
+            for (Map.Entry<Object, Object> entry : mapEntriesToAdd)
+            {
+                map = map.assoc(entry.getKey(), entry.getValue());
+            }
+
+            for (Map.Entry<Object, Object> entry : mapValuesToRemove.entries())
+            {
+                map = map.dissoc(entry.getKey(), entry.getValue());
+            }
+
+            for (Object key : mapKeysToRemove)
+            {
+                map = map.dissocAll(key);
+            }
+
+            return (PersistentSetMultimap<K, V>) map;
+        }
+
+        return (PersistentSetMultimap<K, V>) PersistentSetMultimap.fromEntries(setMultimapEntries(mapEntries));
+    }
+
+    /**
+     * Key order is the hash trie's own, so {@code sortKeys} doesn't apply.
+     */
+    @Nonnull
+    <K, V> PersistentListMultimap<K, V> toPersistentListMultimap()
+    {
+        if (srcMultimap instanceof PersistentListMultimap && srcMap == null && isSmallDelta(mapEditCount()))
+        {
+            PersistentListMultimap<Object, Object> map = (PersistentListMultimap<Object, Object>) srcMultimap;
+
+            // The source's values come first, so a removal only reaches the additions
+            // if the source doesn't have it:
+            Multimap<Object, Object> pending = HashMultimap.create();
+
+            for (Map.Entry<Object, Object> entry : mapValuesToRemove.entries())
+            {
+                PersistentListMultimap<Object, Object> newMap = map.dissoc(entry.getKey(), entry.getValue());
+
+                if (newMap == map)
+                {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+
+                map = newMap;
+            }
+
+            for (Map.Entry<Object, Object> entry : mapEntriesToAdd)
+            {
+                if (pending.isEmpty() || !pending.remove(entry.getKey(), entry.getValue()))
+                {
+                    map = map.assoc(entry.getKey(), entry.getValue());
+                }
+            }
+
+            for (Object key : mapKeysToRemove)
+            {
+                map = map.dissocAll(key);
+            }
+
+            return (PersistentListMultimap<K, V>) map;
+        }
+
+        return (PersistentListMultimap<K, V>) PersistentListMultimap.fromEntries(listMultimapEntries(mapEntries));
+    }
+
+    /**
+     * Whether the staged map edits leave the source multimap as it is - checked only for a small delta.
+     * Any addition changes a list multimap; a set multimap ignores entries it already has.
+     */
+    private boolean mapEditsHaveNoEffect(boolean isSet)
+    {
+        if (srcMap != null || !isSmallDelta(mapEditCount()) || (!isSet && !mapEntriesToAdd.isEmpty()))
+        {
+            return false;
+        }
+
+        for (Map.Entry<Object, Object> entry : mapEntriesToAdd)
+        {
+            if (!srcMultimap.containsEntry(entry.getKey(), entry.getValue()))
+            {
+                return false;
+            }
+        }
+
+        for (Map.Entry<Object, Object> entry : mapValuesToRemove.entries())
+        {
+            if (srcMultimap.containsEntry(entry.getKey(), entry.getValue()))
+            {
+                return false;
+            }
+        }
+
+        return Collections.disjoint(srcMultimap.keySet(), mapKeysToRemove);
+    }
+
+    /**
+     * Streamed entries can't be counted without reading them, so they count as a large delta.
+     */
+    private int mapEditCount()
+    {
+        return mapStreamed
+            ? Integer.MAX_VALUE
+            : mapEntriesToAdd.size() + mapValuesToRemove.size() + mapKeysToRemove.size();
+    }
+
+    /**
+     * Whether {@code edits} is small enough, next to the source, to be worth handling one at a time.
+     */
+    private boolean isSmallDelta(int edits)
+    {
+        int srcSize = srcList != null ? srcList.size() : srcMultimap != null ? srcMultimap.size() : 0;
+        return edits <= srcSize / SMALL_DELTA_DIVISOR;
+    }
+
+    /**
+     * The map entries in the order the terminal wants: if the source's keys are already sorted,
+     * the additions are sorted by key on their own and merged in, in O(n + m log m).
+     * Ties keep the source's entries first, as a stable sort of everything would.
+     */
+    private Iterable<Map.Entry<Object, Object>> orderedMapEntries()
+    {
+        if (!sortKeys || sortedSrcEntries == null)
+        {
+            return mapEntries;
+        }
+
+        List<Map.Entry<Object, Object>> additions = new ArrayList<>(mapEntriesToAdd);
+        Comparator<Map.Entry<Object, Object>> byKey =
+            (left, right) -> ((Comparable) left.getKey()).compareTo(right.getKey());
+        additions.sort(byKey);
+        return mergeSorted(sortedSrcEntries, additions, byKey);
+    }
+
+    /**
+     * Whether {@link #orderedMapEntries()} still has to be sorted by key.
+     */
+    private boolean needsKeySort()
+    {
+        return sortKeys && sortedSrcEntries == null && mapSpill == null;
+    }
+
+    /**
+     * The given entries without the removed keys and entries, in O(n + m).
+     */
+    private Iterable<Map.Entry<Object, Object>> setMultimapEntries(Iterable<Map.Entry<Object, Object>> entries)
+    {
+        return Iterables.filter(entries, entry ->
+            !mapKeysToRemove.contains(entry.getKey())
+                && !mapValuesToRemove.containsEntry(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Like {@link #setMultimapEntries()}, but a list multimap only drops the first occurrence
+     * of each removed entry, so this tracks which ones have been used up. Single use.
+     */
+    private Iterable<Map.Entry<Object, Object>> listMultimapEntries(Iterable<Map.Entry<Object, Object>> entries)
+    {
+        Multimap<Object, Object> pending = mapValuesToRemove.isEmpty()
+            ? mapValuesToRemove
+            : HashMultimap.create(mapValuesToRemove);
+
+        return Iterables.filter(entries, entry ->
+            !mapKeysToRemove.contains(entry.getKey())
+                && (pending.isEmpty() || !pending.remove(entry.getKey(), entry.getValue())));
+    }
+
+    ////////////////////////////////////////
+    // PARALLEL:
+
+    /**
+     * Not when a sorted source is merged instead: that's already linear, and the parallel paths don't merge.
+     */
+    private boolean isParallel()
+    {
+        return pool != null
+            && spill == null
+            && !(sortKeys && sortedSrcList != null)
+            && listSizeHint >= parallelThreshold;
+    }
+
+    /**
+     * The list values with the removals filtered out, filtering in parallel unless each
+     * removal is used up by the first value it matches, which depends on order.
+     */
+    private Object[] parallelListValues()
+    {
+        if (listValuesToRemove == null || listValuesToRemove.isEmpty() || removeOnce)
+        {
+            return Iterables.toArray(listValues(), Object.class);
+        }
+
+        Object[] values = Iterables.toArray(listValues, Object.class);
+        return pool.submit(() -> Arrays.stream(values)
+            .parallel()
+            .filter(val -> !listRemovalIndex.contains(val))
+            .toArray())
+            .join();
+    }
+
+    /**
+     * {@link #parallelListValues()}, then a parallel merge sort. It's stable, like the sequential sorts.
+     */
+    private Object[] parallelSortedListValues()
+    {
+        Object[] values = parallelListValues();
+
+        // Run from inside the pool, parallelSort() forks its tasks there instead of in the common pool:
+        pool.submit(() -> Arrays.parallelSort(values, (Comparator) Ordering.natural())).join();
+        return values;
+    }
+
+    /**
+     * Moves the first of each run of equal values to the front, as ImmutableSortedSet keeps
+     * the first of equal elements. Returns how many there are.
+     */
+    private static int dedupeSorted(Object[] values)
+    {
+        int uniques = 0;
+
+        for (Object val : values)
+        {
+            if (uniques == 0 || ((Comparable) values[uniques - 1]).compareTo(val) != 0)
+            {
+                values[uniques++] = val;
+            }
+        }
+
+        return uniques;
+    }
+
+    ////////////////////////////////////////
+    // HELPERS:
+
+    /**
+     * Two sorted sequences as one, lazily. Ties go to {@code sorted}, as a stable sort of
+     * {@code sorted} followed by {@code additions} would order them.
+     */
+    private static <T> Iterable<T> mergeSorted(
+        Iterable<? extends T> sorted,
+        Iterable<? extends T> additions,
+        Comparator<? super T> comparator)
+    {
+        return () -> new AbstractIterator<T>()
+        {
+            private final PeekingIterator<T> left = Iterators.peekingIterator(sorted.iterator());
+            private final PeekingIterator<T> right = Iterators.peekingIterator(additions.iterator());
+
+            @Override
+            protected T computeNext()
+            {
+                if (!left.hasNext())
+                {
+                    return right.hasNext() ? right.next() : endOfData();
+                }
+
+                if (!right.hasNext() || comparator.compare(right.peek(), left.peek()) >= 0)
+                {
+                    return left.next();
+                }
+
+                return right.next();
+            }
+        };
+    }
+
+    /**
+     * The source's entries, if they're already in natural key order.
+     */
+    @Nullable
+    private static Collection<Map.Entry<Object, Object>> sortedEntries(
+        @Nullable Multimap srcMultimap,
+        @Nullable Map srcMap)
+    {
+        if (srcMultimap != null && srcMap == null
+            && srcMultimap.keySet() instanceof SortedSet
+            && isNatural(((SortedSet) srcMultimap.keySet()).comparator()))
+        {
+            return srcMultimap.entries();
+        }
+
+        if (srcMap instanceof SortedMap && srcMultimap == null && isNatural(((SortedMap) srcMap).comparator()))
+        {
+            return srcMap.entrySet();
+        }
+
+        return null;
+    }
+
+    private static boolean isNatural(@Nullable Comparator comparator)
+    {
+        return comparator == null
+            || comparator.equals(Ordering.natural())
+            || comparator.equals(Comparator.naturalOrder());
+    }
+
+    private static Set<Object> index(@Nullable Collection values)
+    {
+        return values == null || values.isEmpty()
+            ? Collections.emptySet()
+            : new HashSet<>(values);
+    }
+
+    /**
+     * A streamed input as an Iterable, to be iterated only once.
+     */
+    private static <T> Iterable<T> once(@Nullable Iterator<T> values)
+    {
+        return values == null ? Collections.emptyList() : () -> values;
+    }
+
+    private static Collection<Object> orEmpty(@Nullable Collection values)
+    {
+        return values == null ? Collections.emptyList() : values;
+    }
+}
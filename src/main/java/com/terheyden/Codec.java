@@ -0,0 +1,27 @@
+package com.terheyden;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Turns values into bytes and back, for collections that live on disk or off-heap.
+ * See {@link Codecs} for the built-in ones.
+ *
+ * Frozen maps keep their keys sorted by encoded bytes, compared unsigned, so a key codec
+ * whose byte order matches the natural order gives naturally ordered iteration for free.
+ */
+@ParametersAreNonnullByDefault
+public interface Codec<T>
+{
+    @Nonnull
+    byte[] encode(T value);
+
+    /**
+     * @param bytes exactly one encoded value, from its position to its limit - possibly a read-only
+     *              view of a mapped file, so don't hold on to it
+     */
+    @Nonnull
+    T decode(ByteBuffer bytes);
+}
@@ -0,0 +1,171 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The built-in {@link Codec}s.
+ */
+@ParametersAreNonnullByDefault
+public enum Codecs
+{
+    ;
+
+    /**
+     * UTF-8. Byte order is code point order, which matches {@link String#compareTo} outside of surrogate pairs.
+     */
+    public static final Codec<String> STRING = new Codec<String>()
+    {
+        @Override
+        public byte[] encode(String value)
+        {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer bytes)
+        {
+            return StandardCharsets.UTF_8.decode(bytes).toString();
+        }
+    };
+
+    /**
+     * Big-endian with the sign bit flipped, so byte order is numeric order.
+     */
+    public static final Codec<Long> LONG = new Codec<Long>()
+    {
+        @Override
+        public byte[] encode(Long value)
+        {
+            return ByteBuffer.allocate(Long.BYTES).putLong(value ^ Long.MIN_VALUE).array();
+        }
+
+        @Override
+        public Long decode(ByteBuffer bytes)
+        {
+            return bytes.getLong(bytes.position()) ^ Long.MIN_VALUE;
+        }
+    };
+
+    /**
+     * Big-endian with the sign bit flipped, so byte order is numeric order.
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>()
+    {
+        @Override
+        public byte[] encode(Integer value)
+        {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value ^ Integer.MIN_VALUE).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer bytes)
+        {
+            return bytes.getInt(bytes.position()) ^ Integer.MIN_VALUE;
+        }
+    };
+
+    /**
+     * A key and value as the key's length, then the key, then the value. Byte order isn't key order.
+     */
+    @Nonnull
+    public static <K, V> Codec<Map.Entry<K, V>> entry(Codec<K> keyCodec, Codec<V> valueCodec)
+    {
+        checkNotNull(keyCodec);
+        checkNotNull(valueCodec);
+
+        return new Codec<Map.Entry<K, V>>()
+        {
+            @Override
+            public byte[] encode(Map.Entry<K, V> entry)
+            {
+                byte[] key = keyCodec.encode(entry.getKey());
+                byte[] value = valueCodec.encode(entry.getValue());
+
+                return ByteBuffer.allocate(Integer.BYTES + key.length + value.length)
+                    .putInt(key.length)
+                    .put(key)
+                    .put(value)
+                    .array();
+            }
+
+            @Override
+            public Map.Entry<K, V> decode(ByteBuffer bytes)
+            {
+                int keyStart = bytes.position() + Integer.BYTES;
+                int valueStart = keyStart + bytes.getInt(bytes.position());
+
+                ByteBuffer key = bytes.duplicate();
+                key.position(keyStart).limit(valueStart);
+
+                ByteBuffer value = bytes.duplicate();
+                value.position(valueStart);
+
+                return Maps.immutableEntry(keyCodec.decode(key), valueCodec.decode(value));
+            }
+        };
+    }
+
+    /**
+     * Plain Java serialization. Convenient for values, but slow and bulky - prefer a dedicated codec for keys.
+     */
+    @Nonnull
+    public static <T extends Serializable> Codec<T> serializable()
+    {
+        return new Codec<T>()
+        {
+            @Override
+            public byte[] encode(T value)
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+                {
+                    out.writeObject(value);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+
+                return bytes.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decode(ByteBuffer bytes)
+            {
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.duplicate().get(copy);
+
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(copy)))
+                {
+                    return (T) in.readObject();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                catch (ClassNotFoundException e)
+                {
+                    throw new IllegalStateException("Can't decode value: " + e.getMessage(), e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,350 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * A read-only map over a memory-mapped snapshot file. Opening one is just an mmap: nothing is
+ * loaded onto the heap, entries are decoded lazily on access, and every JVM on the host that opens
+ * the same file shares one copy of it in the page cache.
+ *
+ * File layout, all big-endian:
+ * <pre>
+ *   int    magic ("FRZM")
+ *   int    format version
+ *   int    entry count (n)
+ *   int    reserved, 0
+ *   int[2n + 1] offsets - entry i's key spans [off[2i], off[2i + 1]) and its value [off[2i + 1], off[2i + 2])
+ *   bytes  encoded keys and values, in key order
+ * </pre>
+ * Keys are sorted by their encoded bytes, compared unsigned, so {@link #get(Object)} is a binary search
+ * that compares raw bytes without decoding anything, and iteration follows that byte order.
+ * Snapshots are limited to 2GB, the most a single mapping can address.
+ */
+@ParametersAreNonnullByDefault
+public final class FrozenMap<K, V> extends AbstractMap<K, V>
+{
+    private static final int MAGIC = 0x46525A4D;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int size;
+
+    private FrozenMap(ByteBuffer buffer, Codec<K> keyCodec, Codec<V> valueCodec, int size)
+    {
+        this.buffer = buffer;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.size = size;
+    }
+
+    ////////////////////////////////////////
+    // WRITING AND OPENING:
+
+    /**
+     * Writes {@code map} to {@code path} as a snapshot, replacing any existing file atomically,
+     * so readers never see a half-written one.
+     *
+     * @throws IllegalArgumentException if two keys encode to the same bytes, or the snapshot would pass 2GB
+     */
+    public static <K, V> void write(
+        Map<? extends K, ? extends V> map,
+        Path path,
+        Codec<? super K> keyCodec,
+        Codec<? super V> valueCodec) throws IOException
+    {
+        List<byte[][]> entries = new ArrayList<>(map.size());
+        long dataBytes = 0;
+
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+        {
+            byte[] key = keyCodec.encode(entry.getKey());
+            byte[] value = valueCodec.encode(entry.getValue());
+            entries.add(new byte[][] { key, value });
+            dataBytes += key.length + value.length;
+        }
+
+        Comparator<byte[]> byteOrder = UnsignedBytes.lexicographicalComparator();
+        entries.sort((e1, e2) -> byteOrder.compare(e1[0], e2[0]));
+
+        for (int i = 1; i < entries.size(); i++)
+        {
+            checkArgument(
+                byteOrder.compare(entries.get(i - 1)[0], entries.get(i)[0]) != 0,
+                "Two keys have the same encoding in %s",
+                path);
+        }
+
+        long indexBytes = HEADER_BYTES + Integer.BYTES * (2L * entries.size() + 1);
+        checkArgument(indexBytes + dataBytes <= Integer.MAX_VALUE, "Snapshot would pass 2GB: %s", path);
+
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmpPath = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                out.writeInt(0);
+
+                int offset = (int) indexBytes;
+
+                for (byte[][] entry : entries)
+                {
+                    out.writeInt(offset);
+                    offset += entry[0].length;
+                    out.writeInt(offset);
+                    offset += entry[1].length;
+                }
+
+                out.writeInt(offset);
+
+                for (byte[][] entry : entries)
+                {
+                    out.write(entry[0]);
+                    out.write(entry[1]);
+                }
+            }
+
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * Maps the snapshot at {@code path} into memory. The file must not be modified in place while it's open;
+     * {@link #write} replaces files rather than overwriting them, so it's safe to rewrite a snapshot
+     * other JVMs have open.
+     *
+     * @throws IOException if the file can't be read, or isn't a snapshot in a format this version understands
+     */
+    @Nonnull
+    public static <K, V> FrozenMap<K, V> open(Path path, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException
+    {
+        checkNotNull(keyCodec);
+        checkNotNull(valueCodec);
+
+        MappedByteBuffer mapped;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Snapshot is over 2GB: " + path);
+            }
+
+            // The mapping stays valid after the channel closes:
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (mapped.capacity() < HEADER_BYTES + Integer.BYTES || mapped.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a frozen map snapshot: " + path);
+        }
+
+        int version = mapped.getInt(4);
+
+        if (version != VERSION)
+        {
+            throw new IOException(String.format("Unsupported snapshot version %d (expected %d): %s", version, VERSION, path));
+        }
+
+        int size = mapped.getInt(8);
+
+        if (size < 0 || HEADER_BYTES + Integer.BYTES * (2L * size + 1) > mapped.capacity()
+            || mapped.getInt(HEADER_BYTES + Integer.BYTES * 2 * size) != mapped.capacity())
+        {
+            throw new IOException("Truncated or corrupt snapshot: " + path);
+        }
+
+        return new FrozenMap<>(mapped.asReadOnlyBuffer(), keyCodec, valueCodec, size);
+    }
+
+    ////////////////////////////////////////
+    // MAP:
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Nullable
+    @Override
+    public V get(@Nullable Object key)
+    {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Nonnull
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public int size()
+            {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new Iterator<Entry<K, V>>()
+                {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Entry<K, V> next()
+                    {
+                        if (!hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+
+                        int i = index++;
+                        return new SimpleImmutableEntry<>(keyAt(i), valueAt(i));
+                    }
+                };
+            }
+        };
+    }
+
+    ////////////////////////////////////////
+    // DECODING:
+
+    @SuppressWarnings("unchecked")
+    private int indexOf(@Nullable Object key)
+    {
+        if (key == null)
+        {
+            return -1;
+        }
+
+        byte[] encoded;
+
+        try
+        {
+            encoded = keyCodec.encode((K) key);
+        }
+        catch (ClassCastException e)
+        {
+            return -1;
+        }
+
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKeyAt(mid, encoded);
+
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private int compareKeyAt(int index, byte[] key)
+    {
+        int start = offset(2 * index);
+        int length = offset(2 * index + 1) - start;
+        int common = Math.min(length, key.length);
+
+        for (int i = 0; i < common; i++)
+        {
+            int cmp = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(key[i]);
+
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+
+        return length - key.length;
+    }
+
+    private K keyAt(int index)
+    {
+        return keyCodec.decode(slice(offset(2 * index), offset(2 * index + 1)));
+    }
+
+    private V valueAt(int index)
+    {
+        return valueCodec.decode(slice(offset(2 * index + 1), offset(2 * index + 2)));
+    }
+
+    private int offset(int i)
+    {
+        return buffer.getInt(HEADER_BYTES + Integer.BYTES * i);
+    }
+
+    /**
+     * A private view, so concurrent readers never share a position.
+     */
+    private ByteBuffer slice(int from, int to)
+    {
+        return buffer.duplicate().limit(to).position(from);
+    }
+}
@@ -1,11 +1,19 @@
 package com.terheyden;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -14,28 +22,51 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.SetMultimap;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
 
 @SuppressWarnings("unchecked")
 @ParametersAreNonnullByDefault
 public class ImmutableBuilder
 {
+    /** Below this many values, splitting the work costs more than it saves. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+
     @Nullable private final Multimap<Object, Object> srcMultimap;
     @Nullable private final Map<Object, Object> srcMap;
     @Nullable private final Collection srcList;
 
-    private LinkedList mapKeysToRemove;
+    private ArrayList mapKeysToRemove;
     private Multimap mapValuesToRemove;
     private Multimap mapValuesToAdd;
 
-    private LinkedList listValuesToAdd;
-    private LinkedList listValuesToRemove;
+    private ArrayList listValuesToAdd;
+    private ArrayList listValuesToRemove;
+
+    // Streamed inputs, read once by the terminal. Staged list values are moved in here
+    // as each stream is added, so the values stay in the order they were added:
+    @Nullable private List<Iterator<Object>> listValueSources;
+    @Nullable private List<Iterator<Map.Entry>> mapEntrySources;
+    private boolean sourcesConsumed;
 
     boolean sortKeys;
     boolean sortVals;
+    boolean removeOnce;
+    @Nullable private ImmutableInterner interner;
+
+    @Nullable private ForkJoinPool pool;
+    private int parallelThreshold;
+
+    @Nullable private SpillingSorter<Object> spill;
+    @Nullable private SpillingSorter<Map.Entry<Object, Object>> mapSpill;
 
     ImmutableBuilder()
     {
@@ -51,14 +82,34 @@ public class ImmutableBuilder
         this.srcList = null;
     }
 
+    ImmutableBuilder(Map<Object, Object> srcMap)
+    {
+        this.srcMultimap = null;
+        this.srcMap = srcMap;
+        this.srcList = null;
+    }
+
+    ImmutableBuilder(Collection srcList)
+    {
+        this.srcMultimap = null;
+        this.srcMap = null;
+        this.srcList = srcList;
+    }
+
     ////////////////////////////////////////
     // LIST BUILDER:
 
     public ImmutableBuilder addListValue(Object val)
     {
+        if (spill != null)
+        {
+            spill.add(val);
+            return this;
+        }
+
         if (listValuesToAdd == null)
         {
-            listValuesToAdd = new LinkedList();
+            listValuesToAdd = new ArrayList();
         }
 
         listValuesToAdd.add(val);
@@ -67,20 +118,64 @@ public class ImmutableBuilder
 
     public ImmutableBuilder addListValues(Collection vals)
     {
+        if (spill != null)
+        {
+            vals.forEach(spill::add);
+            return this;
+        }
+
         if (listValuesToAdd == null)
         {
-            listValuesToAdd = new LinkedList();
+            listValuesToAdd = new ArrayList();
         }
 
         listValuesToAdd.addAll(vals);
         return this;
     }
 
+    /**
+     * Like {@link #addListValues(Iterator)}. The stream isn't closed.
+     */
+    public ImmutableBuilder addListValues(Stream vals)
+    {
+        return addListValues(vals.iterator());
+    }
+
+    /**
+     * Stages {@code vals} without reading them: the terminal reads them once, straight into its result,
+     * dropping removals as it goes. That makes it a one-shot builder - building it again throws.
+     * Source passthrough and sorted-source merging are skipped, since they need the additions up front.
+     */
+    public ImmutableBuilder addListValues(Iterator vals)
+    {
+        checkNotNull(vals);
+
+        if (spill != null)
+        {
+            vals.forEachRemaining(spill::add);
+            return this;
+        }
+
+        if (listValueSources == null)
+        {
+            listValueSources = new ArrayList<>();
+        }
+
+        if (listValuesToAdd != null)
+        {
+            listValueSources.add(listValuesToAdd.iterator());
+            listValuesToAdd = null;
+        }
+
+        listValueSources.add(vals);
+        return this;
+    }
+
     public ImmutableBuilder removeListValue(Object val)
     {
         if (listValuesToRemove == null)
         {
-            listValuesToRemove = new LinkedList();
+            listValuesToRemove = new ArrayList();
         }
 
         listValuesToRemove.add(val);
@@ -91,7 +186,7 @@ public class ImmutableBuilder
     {
         if (listValuesToRemove == null)
         {
-            listValuesToRemove = new LinkedList();
+            listValuesToRemove = new ArrayList();
         }
 
         listValuesToRemove.addAll(vals);
@@ -110,6 +205,16 @@ public class ImmutableBuilder
         return addListValues(vals);
     }
 
+    public ImmutableBuilder addSetValues(Stream vals)
+    {
+        return addListValues(vals);
+    }
+
+    public ImmutableBuilder addSetValues(Iterator vals)
+    {
+        return addListValues(vals);
+    }
+
     public ImmutableBuilder removeSetValue(Object val)
     {
         return removeListValue(val);
@@ -120,6 +225,17 @@ public class ImmutableBuilder
         return removeListValues(vals);
     }
 
+    /**
+     * Each staged list / set removal drops a single matching occurrence, like {@link List#remove(Object)},
+     * instead of every occurrence, like {@link List#removeAll(Collection)}. Removing a value twice
+     * then drops two occurrences.
+     */
+    public ImmutableBuilder removeOneOccurrence()
+    {
+        removeOnce = true;
+        return this;
+    }
+
     public ImmutableBuilder sortList()
     {
         return sortMapKeys();
@@ -135,6 +251,12 @@ public class ImmutableBuilder
 
     public ImmutableBuilder addMapValue(Object key, Object val)
     {
+        if (mapSpill != null)
+        {
+            mapSpill.add(Maps.immutableEntry(key, val));
+            return this;
+        }
+
         if (mapValuesToAdd == null)
         {
             mapValuesToAdd = MultimapBuilder.hashKeys().hashSetValues().build();
@@ -144,6 +266,38 @@ public class ImmutableBuilder
         return this;
     }
 
+    /**
+     * Like {@link #addMapValues(Iterator)}. The stream isn't closed.
+     */
+    public ImmutableBuilder addMapValues(Stream<? extends Map.Entry> entries)
+    {
+        return addMapValues(entries.iterator());
+    }
+
+    /**
+     * Stages {@code entries} without reading them, like {@link #addListValues(Iterator)}. They're read
+     * after the entries staged with {@link #addMapValue(Object, Object)}, and duplicates aren't
+     * dropped until they reach a set multimap.
+     */
+    public ImmutableBuilder addMapValues(Iterator<? extends Map.Entry> entries)
+    {
+        checkNotNull(entries);
+
+        if (mapSpill != null)
+        {
+            entries.forEachRemaining(entry -> mapSpill.add(Maps.immutableEntry(entry.getKey(), entry.getValue())));
+            return this;
+        }
+
+        if (mapEntrySources == null)
+        {
+            mapEntrySources = new ArrayList<>();
+        }
+
+        mapEntrySources.add((Iterator<Map.Entry>) entries);
+        return this;
+    }
+
     public ImmutableBuilder removeMapValue(Object key, Object val)
     {
         if (mapValuesToRemove == null)
@@ -159,7 +313,7 @@ public class ImmutableBuilder
     {
         if (mapKeysToRemove == null)
         {
-            mapKeysToRemove = new LinkedList();
+            mapKeysToRemove = new ArrayList();
         }
 
         mapKeysToRemove.add(key);
@@ -178,6 +332,16 @@ public class ImmutableBuilder
         return removeMapValue(key, val);
     }
 
+    public ImmutableBuilder addMultimapValues(Stream<? extends Map.Entry> entries)
+    {
+        return addMapValues(entries);
+    }
+
+    public ImmutableBuilder addMultimapValues(Iterator<? extends Map.Entry> entries)
+    {
+        return addMapValues(entries);
+    }
+
     public ImmutableBuilder removeMultimapKey(Object key)
     {
         return removeMapKey(key);
@@ -189,26 +353,147 @@ public class ImmutableBuilder
         return this;
     }
 
-    ////////////////////////////////////////
-    // BUILDING:
+    /**
+     * The immutable terminals return canonical instances from {@code interner} - the collection
+     * and everything in it - so equal results built separately share one instance.
+     */
+    public ImmutableBuilder intern(ImmutableInterner interner)
+    {
+        this.interner = interner;
+        return this;
+    }
 
-    ////////////////////////////////////////
-    // TO LISTS:
+    /**
+     * Builds of at least {@link #DEFAULT_PARALLEL_THRESHOLD} list / set values sort and filter in parallel
+     * on the common {@code ForkJoinPool}. See {@link #parallel(int, ForkJoinPool)}.
+     */
+    public ImmutableBuilder parallel()
+    {
+        return parallel(DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
 
-    public <K> List<K> toList()
+    /**
+     * Builds of at least {@code threshold} list / set values sort and filter in parallel on {@code pool}:
+     * {@link #toList()}, {@link #toSortedList()}, {@link #toImmutableList()} and {@link #toImmutableSortedSet()}.
+     * The results are identical to a sequential build's - the sort is stable, and filtering keeps order.
+     *
+     * Removals staged with {@link #removeOneOccurrence()} still filter sequentially, since which
+     * occurrence goes depends on order. The multimap terminals are always sequential.
+     */
+    public ImmutableBuilder parallel(int threshold, ForkJoinPool pool)
     {
-        ArrayList newList = new ArrayList();
+        checkArgument(threshold >= 0, "Negative threshold: %s", threshold);
+        this.parallelThreshold = threshold;
+        this.pool = checkNotNull(pool);
+        return this;
+    }
+
+    /**
+     * Like {@link #spillToDisk(Codec, int, Path)}, in the system temp directory.
+     */
+    public ImmutableBuilder spillToDisk(Codec codec, int maxValuesInMemory)
+    {
+        return spillToDisk(codec, maxValuesInMemory, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * For builds too big for the heap: list / set values are staged in memory only
+     * {@code maxValuesInMemory} at a time. Each time that fills up, they're sorted and written to a
+     * temp file in {@code dir}, encoded with {@code codec}; the terminal then merges the files back
+     * together, reading each one front to back. Any source values, and values staged so far, go first.
+     *
+     * Spilled values always come back sorted, so this works with {@link #toImmutableSortedSet()},
+     * {@link #toSortedStream()}, and the other terminals after {@link #sortList()}. Staged values
+     * can only be built once, after which the temp files are gone. Removals are still held in memory.
+     * For map / multimap entries, see {@link #spillMapToDisk(Codec, Codec, int, Path)}.
+     */
+    public ImmutableBuilder spillToDisk(Codec codec, int maxValuesInMemory, Path dir)
+    {
+        checkState(spill == null, "Already spilling to disk");
+        spill = new SpillingSorter<>(codec, Ordering.natural(), maxValuesInMemory, dir);
+
+        if (srcList != null)
+        {
+            srcList.forEach(spill::add);
+        }
 
-        addSourceListValues(newList, srcList);
-        addNewListValues(newList, listValuesToAdd);
-        removeListValues(newList, listValuesToRemove);
+        if (listValueSources != null)
+        {
+            listValueSources.forEach(values -> values.forEachRemaining(spill::add));
+            listValueSources = null;
+        }
 
-        if (sortKeys)
+        if (listValuesToAdd != null)
         {
-            Collections.sort(newList);
+            listValuesToAdd.forEach(spill::add);
+            listValuesToAdd = null;
         }
 
-        return newList;
+        return this;
+    }
+
+    /**
+     * Like {@link #spillMapToDisk(Codec, Codec, int, Path)}, in the system temp directory.
+     */
+    public ImmutableBuilder spillMapToDisk(Codec keyCodec, Codec valueCodec, int maxEntriesInMemory)
+    {
+        return spillMapToDisk(
+            keyCodec,
+            valueCodec,
+            maxEntriesInMemory,
+            Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * {@link #spillToDisk(Codec, int, Path)} for map / multimap entries, sorted by key. Entries
+     * with equal keys stay in the order they were added, and duplicates aren't dropped until they
+     * reach a set multimap. Since the entries come back sorted, the map terminals skip their own
+     * key sort; {@link #toPersistentSetMultimap()} and {@link #toPersistentListMultimap()} still
+     * hold their whole result in memory.
+     */
+    public ImmutableBuilder spillMapToDisk(Codec keyCodec, Codec valueCodec, int maxEntriesInMemory, Path dir)
+    {
+        checkState(mapSpill == null, "Already spilling map entries to disk");
+        Codec<Map.Entry<Object, Object>> codec = Codecs.entry(keyCodec, valueCodec);
+        Comparator<Map.Entry<Object, Object>> byKey =
+            (left, right) -> ((Comparable) left.getKey()).compareTo(right.getKey());
+        mapSpill = new SpillingSorter<>(codec, byKey, maxEntriesInMemory, dir);
+
+        if (srcMultimap != null)
+        {
+            srcMultimap.entries().forEach(mapSpill::add);
+        }
+
+        if (srcMap != null)
+        {
+            srcMap.entrySet().forEach(mapSpill::add);
+        }
+
+        if (mapValuesToAdd != null)
+        {
+            ((Multimap<Object, Object>) mapValuesToAdd).entries().forEach(mapSpill::add);
+            mapValuesToAdd = null;
+        }
+
+        if (mapEntrySources != null)
+        {
+            mapEntrySources.forEach(entries -> entries.forEachRemaining(entry ->
+                mapSpill.add(Maps.immutableEntry(entry.getKey(), entry.getValue()))));
+            mapEntrySources = null;
+        }
+
+        return this;
+    }
+
+    ////////////////////////////////////////
+    // BUILDING:
+
+    ////////////////////////////////////////
+    // TO LISTS:
+
+    public <K> List<K> toList()
+    {
+        return plan().toList();
     }
 
     public <K> List<K> toSortedList()
@@ -219,12 +504,49 @@ public class ImmutableBuilder
 
     public <K> ImmutableList<K> toImmutableList()
     {
-        return ImmutableList.copyOf(toList());
+        ImmutableList<K> list = plan().toImmutableList();
+        return interner == null ? list : interner.intern(list);
     }
 
     public <K> ImmutableSortedSet<K> toImmutableSortedSet()
     {
-        return ImmutableSortedSet.copyOf(toList());
+        ImmutableSortedSet<K> set = plan().toImmutableSortedSet();
+        return interner == null ? set : (ImmutableSortedSet<K>) interner.intern(set);
+    }
+
+    /**
+     * The list values in natural order, produced lazily as the stream is read. With
+     * {@link #spillToDisk(Codec, int, Path)}, that means straight off the merged temp files -
+     * close the stream to delete them if it isn't read to the end.
+     */
+    public <K> Stream<K> toSortedStream()
+    {
+        sortKeys = true;
+        return plan().toSortedStream();
+    }
+
+    ////////////////////////////////////////
+    // TO PRIMITIVES:
+    // The staged values must be Numbers.
+
+    public ImmutableIntArray toImmutableIntArray()
+    {
+        return plan().toImmutableIntArray();
+    }
+
+    public ImmutableLongArray toImmutableLongArray()
+    {
+        return plan().toImmutableLongArray();
+    }
+
+    public ImmutableDoubleArray toImmutableDoubleArray()
+    {
+        return plan().toImmutableDoubleArray();
+    }
+
+    public ImmutableLongSet toImmutableLongSet()
+    {
+        return plan().toImmutableLongSet();
     }
 
     ////////////////////////////////////////
@@ -236,8 +558,11 @@ public class ImmutableBuilder
             ? MultimapBuilder.treeKeys().hashSetValues().build()
             : MultimapBuilder.hashKeys().hashSetValues().build();
 
-        addSourceMapValues(newMap, srcMultimap, srcMap);
+        consumeSources();
+        addSourceMapValues(newMap, mapSpill == null ? srcMultimap : null, mapSpill == null ? srcMap : null);
         addNewMapValues(newMap, mapValuesToAdd);
+        addStreamedMapValues(newMap, streamedMapEntries());
+        addStreamedMapValues(newMap, mapSpill == null ? null : mapSpill.sorted());
         removeMapValues(newMap, mapValuesToRemove);
         removeMapKeys(newMap, mapKeysToRemove);
 
@@ -246,7 +571,8 @@ public class ImmutableBuilder
 
     public <K, V> ImmutableSetMultimap<K, V> toImmutableSetMultimap()
     {
-        return ImmutableSetMultimap.<K, V>copyOf(toSetMultimap());
+        ImmutableSetMultimap<K, V> map = plan().toImmutableSetMultimap();
+        return interner == null ? map : interner.intern(map);
     }
 
     public <K, V> ListMultimap<K, V> toListMultimap()
@@ -255,23 +581,113 @@ public class ImmutableBuilder
             ? MultimapBuilder.treeKeys().arrayListValues().build()
             : MultimapBuilder.hashKeys().arrayListValues().build();
 
-        addSourceMapValues(newMap, srcMultimap, srcMap);
+        consumeSources();
+        addSourceMapValues(newMap, mapSpill == null ? srcMultimap : null, mapSpill == null ? srcMap : null);
         addNewMapValues(newMap, mapValuesToAdd);
+        addStreamedMapValues(newMap, streamedMapEntries());
+        addStreamedMapValues(newMap, mapSpill == null ? null : mapSpill.sorted());
         removeMapValues(newMap, mapValuesToRemove);
         removeMapKeys(newMap, mapKeysToRemove);
 
         return newMap;
     }
 
+    public <K, V> ImmutableListMultimap<K, V> toImmutableListMultimap()
+    {
+        ImmutableListMultimap<K, V> map = plan().toImmutableListMultimap();
+        return interner == null ? map : interner.intern(map);
+    }
+
+    /**
+     * Ignores {@link #sortMapKeys()}: persistent multimaps keep their keys in a hash trie.
+     */
+    public <K, V> PersistentSetMultimap<K, V> toPersistentSetMultimap()
+    {
+        return plan().toPersistentSetMultimap();
+    }
+
+    /**
+     * Ignores {@link #sortMapKeys()}: persistent multimaps keep their keys in a hash trie.
+     */
+    public <K, V> PersistentListMultimap<K, V> toPersistentListMultimap()
+    {
+        return plan().toPersistentListMultimap();
+    }
+
+    private BuildPlan plan()
+    {
+        consumeSources();
+        Iterator<Object> streamedListValues = streamedListValues();
+
+        return new BuildPlan(
+            mapSpill == null ? srcMultimap : null,
+            mapSpill == null ? srcMap : null,
+            spill == null ? srcList : null,
+            streamedListValues == null ? listValuesToAdd : null,
+            streamedListValues,
+            listValuesToRemove,
+            mapValuesToAdd,
+            streamedMapEntries(),
+            mapValuesToRemove,
+            mapKeysToRemove,
+            sortKeys,
+            removeOnce,
+            pool,
+            parallelThreshold,
+            spill,
+            mapSpill);
+    }
+
     ////////////////////////////////////////
-    // MAP MODS:
+    // STREAMED SOURCES:
 
-    public <K, V> ImmutableListMultimap<K, V> toImmutableListMultimap()
+    /**
+     * Every staged list value, in the order it was added, if any of them were streamed.
+     */
+    @Nullable
+    private Iterator<Object> streamedListValues()
+    {
+        if (listValueSources == null)
+        {
+            return null;
+        }
+
+        if (listValuesToAdd != null)
+        {
+            listValueSources.add(listValuesToAdd.iterator());
+            listValuesToAdd = null;
+        }
+
+        return Iterators.concat(listValueSources.iterator());
+    }
+
+    @Nullable
+    private Iterator<Map.Entry> streamedMapEntries()
     {
-        return ImmutableListMultimap.<K, V>copyOf(toListMultimap());
+        if (mapEntrySources == null)
+        {
+            return null;
+        }
+
+        return Iterators.concat(mapEntrySources.iterator());
     }
 
-    private static void removeMapKeys(Multimap map, @Nullable LinkedList keysToRemove)
+    /**
+     * Streams and iterators can only be read once, so neither can a builder they were added to.
+     */
+    private void consumeSources()
+    {
+        if (listValueSources != null || mapEntrySources != null)
+        {
+            checkState(!sourcesConsumed, "Streamed values can only be built once");
+            sourcesConsumed = true;
+        }
+    }
+
+    ////////////////////////////////////////
+    // MAP MODS:
+
+    private static void removeMapKeys(Multimap map, @Nullable ArrayList keysToRemove)
     {
         if (keysToRemove != null)
         {
@@ -295,6 +711,14 @@ public class ImmutableBuilder
         }
     }
 
+    private static void addStreamedMapValues(Multimap map, @Nullable Iterator<? extends Map.Entry> entries)
+    {
+        if (entries != null)
+        {
+            entries.forEachRemaining(entry -> map.put(entry.getKey(), entry.getValue()));
+        }
+    }
+
     private static void addSourceMapValues(
         Multimap destMap,
         @Nullable Multimap srcMultimap,
@@ -310,32 +734,4 @@ public class ImmutableBuilder
             srcMap.forEach(destMap::put);
         }
     }
-
-    ////////////////////////////////////////
-    // LIST MODS:
-
-    private static void removeListValues(ArrayList newList, @Nullable LinkedList listValuesToRemove)
-    {
-        if (listValuesToRemove != null)
-        {
-            newList.removeAll(listValuesToRemove);
-        }
-    }
-
-    private static void addNewListValues(ArrayList newList, @Nullable LinkedList listValuesToAdd)
-    {
-        if (listValuesToAdd != null)
-        {
-            newList.addAll(listValuesToAdd);
-        }
-    }
-
-    private static void addSourceListValues(ArrayList newList, @Nullable Collection srcList)
-    {
-        if (srcList != null)
-        {
-            newList.addAll(srcList);
-        }
-    }
-
 }
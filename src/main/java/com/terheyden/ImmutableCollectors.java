@@ -0,0 +1,288 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * Collectors for Guava immutable collections that hold up under parallel streams.
+ *
+ * Each thread accumulates into its own chunked array buffer, and combining two partial
+ * results just links their chunks together in O(1) - nothing is built or copied until the
+ * finisher, which fills the final collection in a single pass (after a single parallel sort,
+ * for sorted maps). Encounter order is kept, so parallel and sequential streams collect
+ * to the same result.
+ */
+@ParametersAreNonnullByDefault
+public enum ImmutableCollectors
+{
+    ;
+
+    ////////////////////////////////////////
+    // LIST<T>
+
+    @Nonnull
+    public static <T> Collector<T, ?, ImmutableList<T>> toImmutableList()
+    {
+        return Collector.of(
+            Chunks::new,
+            Chunks::add,
+            Chunks::append,
+            chunks -> {
+                ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(chunks.size());
+                chunks.<T>forEach(builder::add);
+                return builder.build();
+            });
+    }
+
+    ////////////////////////////////////////
+    // MAP<K, V>
+
+    @Nonnull
+    public static <K, V> Collector<Map.Entry<K, V>, ?, ImmutableMap<K, V>> toImmutableMap()
+    {
+        return toImmutableMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} on duplicate keys, like {@link ImmutableMap#toImmutableMap}.
+     */
+    @Nonnull
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
+        Function<? super T, ? extends K> keyFunction,
+        Function<? super T, ? extends V> valueFunction)
+    {
+        checkNotNull(keyFunction);
+        checkNotNull(valueFunction);
+
+        return Collector.of(
+            Chunks::new,
+            (chunks, item) -> chunks.addPair(keyFunction.apply(item), valueFunction.apply(item)),
+            Chunks::append,
+            chunks -> {
+                ImmutableMap.Builder<K, V> builder = ImmutableMap.builderWithExpectedSize(chunks.size() / 2);
+                chunks.<K, V>forEachPair(builder::put);
+                return builder.build();
+            });
+    }
+
+    ////////////////////////////////////////
+    // SORTEDMAP<K, V>
+
+    @Nonnull
+    public static <K extends Comparable<?>, V> Collector<Map.Entry<K, V>, ?, ImmutableSortedMap<K, V>> toImmutableSortedMap()
+    {
+        return toImmutableSortedMap(Ordering.<K>natural(), Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * The entries are sorted once, in parallel, after everything has been collected.
+     * Throws {@link IllegalArgumentException} on duplicate keys.
+     */
+    @Nonnull
+    public static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMap(
+        Comparator<? super K> comparator,
+        Function<? super T, ? extends K> keyFunction,
+        Function<? super T, ? extends V> valueFunction)
+    {
+        checkNotNull(comparator);
+        checkNotNull(keyFunction);
+        checkNotNull(valueFunction);
+
+        return Collector.of(
+            Chunks::new,
+            (chunks, item) -> chunks.add(Maps.immutableEntry(keyFunction.apply(item), valueFunction.apply(item))),
+            Chunks::append,
+            chunks -> {
+                Map.Entry<K, V>[] entries = chunks.toArray(new Map.Entry[chunks.size()]);
+                Arrays.parallelSort(entries, (e1, e2) -> comparator.compare(e1.getKey(), e2.getKey()));
+
+                // The builder sorts again, but that's a linear pass over already-sorted input:
+                ImmutableSortedMap.Builder<K, V> builder = new ImmutableSortedMap.Builder<>(comparator);
+                Arrays.stream(entries).forEach(builder::put);
+                return builder.build();
+            });
+    }
+
+    ////////////////////////////////////////
+    // MULTIMAPS
+
+    @Nonnull
+    public static <T, K, V> Collector<T, ?, ImmutableSetMultimap<K, V>> toImmutableSetMultimap(
+        Function<? super T, ? extends K> keyFunction,
+        Function<? super T, ? extends V> valueFunction)
+    {
+        checkNotNull(keyFunction);
+        checkNotNull(valueFunction);
+
+        return Collector.of(
+            Chunks::new,
+            (chunks, item) -> chunks.addPair(keyFunction.apply(item), valueFunction.apply(item)),
+            Chunks::append,
+            chunks -> {
+                ImmutableSetMultimap.Builder<K, V> builder = ImmutableSetMultimap.builder();
+                chunks.<K, V>forEachPair(builder::put);
+                return builder.build();
+            });
+    }
+
+    @Nonnull
+    public static <T, K, V> Collector<T, ?, ImmutableListMultimap<K, V>> toImmutableListMultimap(
+        Function<? super T, ? extends K> keyFunction,
+        Function<? super T, ? extends V> valueFunction)
+    {
+        checkNotNull(keyFunction);
+        checkNotNull(valueFunction);
+
+        return Collector.of(
+            Chunks::new,
+            (chunks, item) -> chunks.addPair(keyFunction.apply(item), valueFunction.apply(item)),
+            Chunks::append,
+            chunks -> {
+                ImmutableListMultimap.Builder<K, V> builder = ImmutableListMultimap.builder();
+                chunks.<K, V>forEachPair(builder::put);
+                return builder.build();
+            });
+    }
+
+    ////////////////////////////////////////
+    // ACCUMULATION:
+
+    /**
+     * An append-only buffer of array chunks. Chunks double in size up to a cap, so adding is
+     * amortized O(1) without ever copying, and appending another buffer just links its chunks on.
+     */
+    @SuppressWarnings("unchecked")
+    private static final class Chunks
+    {
+        private static final int FIRST_CHUNK_SIZE = 16;
+        private static final int MAX_CHUNK_SIZE = 1 << 14;
+
+        @Nullable private Chunk head;
+        @Nullable private Chunk tail;
+        private int size;
+
+        void add(@Nullable Object item)
+        {
+            if (tail == null || tail.count == tail.items.length)
+            {
+                int chunkSize = tail == null ? FIRST_CHUNK_SIZE : Math.min(tail.items.length * 2, MAX_CHUNK_SIZE);
+                Chunk chunk = new Chunk(chunkSize);
+
+                if (tail == null)
+                {
+                    head = chunk;
+                }
+                else
+                {
+                    tail.next = chunk;
+                }
+
+                tail = chunk;
+            }
+
+            tail.items[tail.count++] = item;
+            size++;
+        }
+
+        void addPair(@Nullable Object key, @Nullable Object val)
+        {
+            add(key);
+            add(val);
+        }
+
+        /**
+         * O(1) - links {@code other}'s chunks onto the end of this buffer.
+         */
+        Chunks append(Chunks other)
+        {
+            if (other.head == null)
+            {
+                return this;
+            }
+
+            if (head == null)
+            {
+                return other;
+            }
+
+            tail.next = other.head;
+            tail = other.tail;
+            size += other.size;
+            return this;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        <T> void forEach(Consumer<? super T> consumer)
+        {
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next)
+            {
+                for (int i = 0; i < chunk.count; i++)
+                {
+                    consumer.accept((T) chunk.items[i]);
+                }
+            }
+        }
+
+        /**
+         * Chunk sizes are all even and pairs are only ever added whole, so a pair never straddles two chunks.
+         */
+        <K, V> void forEachPair(BiConsumer<? super K, ? super V> consumer)
+        {
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next)
+            {
+                for (int i = 0; i < chunk.count; i += 2)
+                {
+                    consumer.accept((K) chunk.items[i], (V) chunk.items[i + 1]);
+                }
+            }
+        }
+
+        <T> T[] toArray(T[] array)
+        {
+            int i = 0;
+
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next)
+            {
+                System.arraycopy(chunk.items, 0, array, i, chunk.count);
+                i += chunk.count;
+            }
+
+            return array;
+        }
+    }
+
+    private static final class Chunk
+    {
+        private final Object[] items;
+        private int count;
+        @Nullable private Chunk next;
+
+        Chunk(int size)
+        {
+            this.items = new Object[size];
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Hash-consing for immutable collections and the values inside them: interning returns a
+ * canonical instance equal to its argument, so equal collections built independently end up
+ * as one shared instance - less retained memory, and equality checks between canonical
+ * instances that hit {@code ==} straight away.
+ *
+ * Collections are interned bottom-up: first their elements (keys and values, for maps), then the
+ * collection itself - so a canonical collection only ever holds canonical elements. Only intern
+ * immutable values: a canonical instance is shared by everyone who interned an equal one.
+ *
+ * An interned value only replaces one of the same class that iterates in the same order (and, for
+ * sorted collections, has the same comparator), so interning never changes the type or ordering of
+ * what you pass in - set and map equality ignore order, so equal values can still differ there. Both flavors
+ * are striped for concurrent use: {@link #weak()} holds canonical instances only while something
+ * else references them, {@link #bounded(long)} keeps at most a fixed number, evicting the least
+ * recently used.
+ */
+@ParametersAreNonnullByDefault
+public final class ImmutableInterner
+{
+    private static final int CONCURRENCY = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final ImmutableInterner SHARED = weak();
+
+    private final UnaryOperator<Object> canonicalizer;
+
+    private ImmutableInterner(UnaryOperator<Object> canonicalizer)
+    {
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * Canonical instances are weakly referenced, so the interner never keeps anything alive by itself.
+     */
+    @Nonnull
+    public static ImmutableInterner weak()
+    {
+        Interner<Object> interner = Interners.newBuilder().weak().concurrencyLevel(CONCURRENCY).build();
+        return new ImmutableInterner(interner::intern);
+    }
+
+    /**
+     * Keeps up to {@code maxSize} canonical instances, evicting the least recently used.
+     * Evicted instances stay valid; later equal values just aren't shared with them.
+     */
+    @Nonnull
+    public static ImmutableInterner bounded(long maxSize)
+    {
+        checkArgument(maxSize > 0, "Invalid maxSize: %s", maxSize);
+
+        ConcurrentMap<Object, Object> cache = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .concurrencyLevel(CONCURRENCY)
+            .build()
+            .asMap();
+
+        return new ImmutableInterner(value -> {
+            Object canonical = cache.putIfAbsent(value, value);
+            return canonical == null ? value : canonical;
+        });
+    }
+
+    /**
+     * The process-wide weak interner behind {@code Immutables.intern}.
+     */
+    @Nonnull
+    static ImmutableInterner shared()
+    {
+        return SHARED;
+    }
+
+    ////////////////////////////////////////
+    // INTERNING:
+
+    /**
+     * The canonical instance equal to {@code value}, for leaf values like strings or value classes.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T> T internValue(T value)
+    {
+        checkNotNull(value);
+        Object canonical = canonicalizer.apply(value);
+        return isCompatible(canonical, value) ? (T) canonical : value;
+    }
+
+    @Nonnull
+    public <E> ImmutableList<E> intern(ImmutableList<E> list)
+    {
+        ImmutableList.Builder<E> builder = null;
+
+        for (int i = 0; i < list.size(); i++)
+        {
+            E element = list.get(i);
+            E canonical = internValue(element);
+
+            // Only copy once an element actually changes:
+            if (canonical != element && builder == null)
+            {
+                builder = ImmutableList.builderWithExpectedSize(list.size());
+                builder.addAll(list.subList(0, i));
+            }
+
+            if (builder != null)
+            {
+                builder.add(canonical);
+            }
+        }
+
+        return internValue(builder == null ? list : builder.build());
+    }
+
+    /**
+     * Keeps {@code ImmutableSortedSet}s sorted the same way.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <E> ImmutableSet<E> intern(ImmutableSet<E> set)
+    {
+        boolean changed = false;
+        ImmutableList.Builder<E> elements = ImmutableList.builderWithExpectedSize(set.size());
+
+        for (E element : set)
+        {
+            E canonical = internValue(element);
+            changed |= canonical != element;
+            elements.add(canonical);
+        }
+
+        if (!changed)
+        {
+            return internValue(set);
+        }
+
+        return internValue(set instanceof ImmutableSortedSet
+            ? ImmutableSortedSet.copyOf(((ImmutableSortedSet<E>) set).comparator(), elements.build())
+            : ImmutableSet.copyOf(elements.build()));
+    }
+
+    /**
+     * Keeps {@code ImmutableSortedMap}s sorted the same way.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <K, V> ImmutableMap<K, V> intern(ImmutableMap<K, V> map)
+    {
+        boolean changed = false;
+        ImmutableList.Builder<Map.Entry<K, V>> entries = ImmutableList.builderWithExpectedSize(map.size());
+
+        for (Map.Entry<K, V> entry : map.entrySet())
+        {
+            K key = internValue(entry.getKey());
+            V val = internValue(entry.getValue());
+            changed |= key != entry.getKey() || val != entry.getValue();
+            entries.add(Maps.immutableEntry(key, val));
+        }
+
+        if (!changed)
+        {
+            return internValue(map);
+        }
+
+        return internValue(map instanceof ImmutableSortedMap
+            ? ImmutableSortedMap.copyOf(entries.build(), ((ImmutableSortedMap<K, V>) map).comparator())
+            : ImmutableMap.copyOf(entries.build()));
+    }
+
+    /**
+     * Guava builds each key's value set privately, so those can't be shared between multimaps -
+     * but their keys and values are, and so is the multimap as a whole.
+     */
+    @Nonnull
+    public <K, V> ImmutableSetMultimap<K, V> intern(ImmutableSetMultimap<K, V> multimap)
+    {
+        boolean changed = false;
+        ImmutableSetMultimap.Builder<K, V> builder = ImmutableSetMultimap.builder();
+
+        for (Map.Entry<K, V> entry : multimap.entries())
+        {
+            K key = internValue(entry.getKey());
+            V val = internValue(entry.getValue());
+            changed |= key != entry.getKey() || val != entry.getValue();
+            builder.put(key, val);
+        }
+
+        return internValue(changed ? builder.build() : multimap);
+    }
+
+    @Nonnull
+    public <K, V> ImmutableListMultimap<K, V> intern(ImmutableListMultimap<K, V> multimap)
+    {
+        boolean changed = false;
+        ImmutableListMultimap.Builder<K, V> builder = ImmutableListMultimap.builder();
+
+        for (Map.Entry<K, V> entry : multimap.entries())
+        {
+            K key = internValue(entry.getKey());
+            V val = internValue(entry.getValue());
+            changed |= key != entry.getKey() || val != entry.getValue();
+            builder.put(key, val);
+        }
+
+        return internValue(changed ? builder.build() : multimap);
+    }
+
+    private static boolean isCompatible(Object canonical, Object value)
+    {
+        if (canonical == value)
+        {
+            return true;
+        }
+
+        if (canonical.getClass() != value.getClass())
+        {
+            return false;
+        }
+
+        if (value instanceof SortedSet
+            && !Objects.equals(((SortedSet<?>) canonical).comparator(), ((SortedSet<?>) value).comparator()))
+        {
+            return false;
+        }
+
+        if (value instanceof SortedMap
+            && !Objects.equals(((SortedMap<?, ?>) canonical).comparator(), ((SortedMap<?, ?>) value).comparator()))
+        {
+            return false;
+        }
+
+        // Lists compare in order already; everything else needs an O(n) check that the order matches too:
+        if (value instanceof Collection && !(value instanceof List))
+        {
+            return Iterables.elementsEqual((Collection<?>) canonical, (Collection<?>) value);
+        }
+
+        if (value instanceof Map)
+        {
+            return Iterables.elementsEqual(((Map<?, ?>) canonical).entrySet(), ((Map<?, ?>) value).entrySet());
+        }
+
+        if (value instanceof Multimap)
+        {
+            return Iterables.elementsEqual(((Multimap<?, ?>) canonical).entries(), ((Multimap<?, ?>) value).entries());
+        }
+
+        return true;
+    }
+}
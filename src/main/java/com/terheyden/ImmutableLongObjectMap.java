@@ -0,0 +1,373 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.terheyden.ImmutableLongSet.capacityFor;
+import static com.terheyden.ImmutableLongSet.closeHole;
+import static com.terheyden.ImmutableLongSet.indexOf;
+import static com.terheyden.ImmutableLongSet.probe;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An immutable map from {@code long} keys to objects, with the keys in a flat open-addressing
+ * table (the same layout as {@link ImmutableLongSet}) and the values in a parallel array,
+ * so lookups and iteration never box the key.
+ *
+ * Like Guava's immutable collections, null values are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class ImmutableLongObjectMap<V>
+{
+    private static final ImmutableLongObjectMap<Object> EMPTY =
+        new ImmutableLongObjectMap<>(new long[capacityFor(0)], new Object[capacityFor(0)], null, 0);
+
+    // 0 marks a free slot, so the key 0 is tracked on the side:
+    private final long[] keys;
+    private final Object[] values;
+    @Nullable private final Object zeroValue;
+    private final int size;
+
+    private ImmutableLongObjectMap(long[] keys, Object[] values, @Nullable Object zeroValue, int size)
+    {
+        this.keys = keys;
+        this.values = values;
+        this.zeroValue = zeroValue;
+        this.size = size;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <V> ImmutableLongObjectMap<V> of()
+    {
+        return (ImmutableLongObjectMap<V>) EMPTY;
+    }
+
+    @Nonnull
+    public static <V> ImmutableLongObjectMap<V> of(long key, V value)
+    {
+        return ImmutableLongObjectMap.<V>builder(1).put(key, value).build();
+    }
+
+    @Nonnull
+    public static <V> Builder<V> builder()
+    {
+        return new Builder<>(0);
+    }
+
+    @Nonnull
+    public static <V> Builder<V> builder(int expectedSize)
+    {
+        checkArgument(expectedSize >= 0, "Invalid expectedSize: %s", expectedSize);
+        return new Builder<>(expectedSize);
+    }
+
+    ////////////////////////////////////////
+    // QUERIES:
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        if (key == 0)
+        {
+            return (V) zeroValue;
+        }
+
+        int i = indexOf(keys, key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Nonnull
+    public V getOrDefault(long key, V defaultValue)
+    {
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer)
+    {
+        if (zeroValue != null)
+        {
+            consumer.accept(0, (V) zeroValue);
+        }
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != 0)
+            {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    @Nonnull
+    public ImmutableLongSet keySet()
+    {
+        ImmutableLongSet.Builder builder = ImmutableLongSet.builder(size);
+        forEach((key, value) -> builder.add(key));
+        return builder.build();
+    }
+
+    ////////////////////////////////////////
+    // COPIES:
+
+    /**
+     * A copy with {@code key} mapped to {@code value}, or this map if it already is.
+     */
+    @Nonnull
+    public ImmutableLongObjectMap<V> with(long key, V value)
+    {
+        checkNotNull(value);
+        return value.equals(get(key)) ? this : toBuilder(size + 1).put(key, value).build();
+    }
+
+    /**
+     * A copy without {@code key}, or this map if it isn't present.
+     */
+    @Nonnull
+    public ImmutableLongObjectMap<V> without(long key)
+    {
+        return containsKey(key) ? toBuilder(size).remove(key).build() : this;
+    }
+
+    @Nonnull
+    public Builder<V> toBuilder()
+    {
+        return toBuilder(size);
+    }
+
+    private Builder<V> toBuilder(int expectedSize)
+    {
+        Builder<V> builder = new Builder<>(keys.clone(), values.clone(), zeroValue, size);
+        builder.ensureCapacity(expectedSize);
+        return builder;
+    }
+
+    ////////////////////////////////////////
+    // OBJECT:
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (!(obj instanceof ImmutableLongObjectMap))
+        {
+            return false;
+        }
+
+        ImmutableLongObjectMap<?> other = (ImmutableLongObjectMap<?>) obj;
+
+        if (other.size != size || !Objects.equals(other.zeroValue, zeroValue))
+        {
+            return false;
+        }
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != 0 && !values[i].equals(other.get(keys[i])))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Matches {@link java.util.Map#hashCode()} for the equivalent {@code Map<Long, V>}.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = zeroValue == null ? 0 : zeroValue.hashCode();
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != 0)
+            {
+                hash += Long.hashCode(keys[i]) ^ values[i].hashCode();
+            }
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        forEach((key, value) -> joiner.add(key + "=" + value));
+        return joiner.toString();
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V>
+    {
+        void accept(long key, V value);
+    }
+
+    ////////////////////////////////////////
+    // BUILDER:
+
+    /**
+     * Builds a map in place; {@link #build()} hands the tables over without copying them.
+     * A later {@link #put(long, Object)} of the same key replaces the earlier value.
+     */
+    public static final class Builder<V>
+    {
+        private long[] keys;
+        private Object[] values;
+        @Nullable private Object zeroValue;
+        private int size;
+        private boolean shared;
+
+        private Builder(int expectedSize)
+        {
+            this(new long[capacityFor(expectedSize)], new Object[capacityFor(expectedSize)], null, 0);
+        }
+
+        private Builder(long[] keys, Object[] values, @Nullable Object zeroValue, int size)
+        {
+            this.keys = keys;
+            this.values = values;
+            this.zeroValue = zeroValue;
+            this.size = size;
+        }
+
+        @Nonnull
+        public Builder<V> put(long key, V value)
+        {
+            checkNotNull(value);
+            writable();
+
+            if (key == 0)
+            {
+                size += zeroValue == null ? 1 : 0;
+                zeroValue = value;
+                return this;
+            }
+
+            ensureCapacity(size + 1);
+            int i = probe(keys, key);
+
+            if (keys[i] == 0)
+            {
+                keys[i] = key;
+                size++;
+            }
+
+            values[i] = value;
+            return this;
+        }
+
+        @Nonnull
+        public Builder<V> remove(long key)
+        {
+            if (key == 0)
+            {
+                if (zeroValue != null)
+                {
+                    writable();
+                    zeroValue = null;
+                    size--;
+                }
+
+                return this;
+            }
+
+            int i = indexOf(keys, key);
+
+            if (i >= 0)
+            {
+                writable();
+                keys[i] = 0;
+                values[i] = null;
+
+                closeHole(keys, i, (from, to) -> {
+                    values[to] = values[from];
+                    values[from] = null;
+                });
+
+                size--;
+            }
+
+            return this;
+        }
+
+        @Nonnull
+        public ImmutableLongObjectMap<V> build()
+        {
+            if (size == 0)
+            {
+                return of();
+            }
+
+            shared = true;
+            return new ImmutableLongObjectMap<>(keys, values, zeroValue, size);
+        }
+
+        private void ensureCapacity(int expectedSize)
+        {
+            int capacity = capacityFor(expectedSize);
+
+            if (capacity > keys.length)
+            {
+                long[] oldKeys = keys;
+                Object[] oldValues = values;
+                keys = new long[capacity];
+                values = new Object[capacity];
+                shared = false;
+
+                for (int i = 0; i < oldKeys.length; i++)
+                {
+                    if (oldKeys[i] != 0)
+                    {
+                        int slot = probe(keys, oldKeys[i]);
+                        keys[slot] = oldKeys[i];
+                        values[slot] = oldValues[i];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Copies the tables before writing to them if a built map still refers to them.
+         */
+        private void writable()
+        {
+            if (shared)
+            {
+                keys = keys.clone();
+                values = values.clone();
+                shared = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An immutable set of {@code long} values in a flat open-addressing table (linear probing, at most
+ * three-quarters full), so adding, looking up and iterating never box, and there's no object per value.
+ *
+ * Equal to, and hashing like, any other {@code ImmutableLongSet} with the same values.
+ * Iteration order is unspecified.
+ */
+@ParametersAreNonnullByDefault
+public final class ImmutableLongSet
+{
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** The most values a table of {@link #MAX_CAPACITY} holds while staying three-quarters full. */
+    private static final int MAX_SIZE = MAX_CAPACITY / 4 * 3;
+
+    private static final ImmutableLongSet EMPTY = new ImmutableLongSet(new long[MIN_CAPACITY], false, 0);
+
+    // 0 marks a free slot, so the value 0 is tracked on the side:
+    private final long[] table;
+    private final boolean hasZero;
+    private final int size;
+
+    private ImmutableLongSet(long[] table, boolean hasZero, int size)
+    {
+        this.table = table;
+        this.hasZero = hasZero;
+        this.size = size;
+    }
+
+    @Nonnull
+    public static ImmutableLongSet of()
+    {
+        return EMPTY;
+    }
+
+    @Nonnull
+    public static ImmutableLongSet of(long... values)
+    {
+        return builder(values.length).addAll(values).build();
+    }
+
+    @Nonnull
+    public static Builder builder()
+    {
+        return new Builder(0);
+    }
+
+    @Nonnull
+    public static Builder builder(int expectedSize)
+    {
+        checkArgument(expectedSize >= 0, "Invalid expectedSize: %s", expectedSize);
+        return new Builder(expectedSize);
+    }
+
+    ////////////////////////////////////////
+    // QUERIES:
+
+    public boolean contains(long value)
+    {
+        return value == 0 ? hasZero : indexOf(table, value) >= 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer consumer)
+    {
+        if (hasZero)
+        {
+            consumer.accept(0);
+        }
+
+        for (long value : table)
+        {
+            if (value != 0)
+            {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    @Nonnull
+    public LongStream stream()
+    {
+        LongStream values = Arrays.stream(table).filter(value -> value != 0);
+        return hasZero ? LongStream.concat(LongStream.of(0), values) : values;
+    }
+
+    @Nonnull
+    public long[] toArray()
+    {
+        long[] values = new long[size];
+        int i = 0;
+
+        if (hasZero)
+        {
+            values[i++] = 0;
+        }
+
+        for (long value : table)
+        {
+            if (value != 0)
+            {
+                values[i++] = value;
+            }
+        }
+
+        return values;
+    }
+
+    ////////////////////////////////////////
+    // COPIES:
+
+    /**
+     * A copy with {@code values} added, or this set if they're all present already.
+     */
+    @Nonnull
+    public ImmutableLongSet with(long... values)
+    {
+        if (Arrays.stream(values).allMatch(this::contains))
+        {
+            return this;
+        }
+
+        return toBuilder(size + values.length).addAll(values).build();
+    }
+
+    /**
+     * A copy with {@code values} removed, or this set if none of them are present.
+     */
+    @Nonnull
+    public ImmutableLongSet without(long... values)
+    {
+        if (Arrays.stream(values).noneMatch(this::contains))
+        {
+            return this;
+        }
+
+        Builder builder = toBuilder(size);
+
+        for (long value : values)
+        {
+            builder.remove(value);
+        }
+
+        return builder.build();
+    }
+
+    @Nonnull
+    public Builder toBuilder()
+    {
+        return toBuilder(size);
+    }
+
+    private Builder toBuilder(int expectedSize)
+    {
+        Builder builder = new Builder(table.clone(), hasZero, size);
+        builder.ensureCapacity(expectedSize);
+        return builder;
+    }
+
+    ////////////////////////////////////////
+    // OBJECT:
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (!(obj instanceof ImmutableLongSet))
+        {
+            return false;
+        }
+
+        ImmutableLongSet other = (ImmutableLongSet) obj;
+
+        if (other.size != size || other.hasZero != hasZero)
+        {
+            return false;
+        }
+
+        for (long value : table)
+        {
+            if (value != 0 && !other.contains(value))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Matches {@link java.util.Set#hashCode()} for the equivalent {@code Set<Long>}.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = 0;
+
+        for (long value : table)
+        {
+            hash += Long.hashCode(value);
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(toArray());
+    }
+
+    ////////////////////////////////////////
+    // TABLE:
+
+    /**
+     * The slot holding {@code value}, or -1 if it's absent. {@code value} must not be 0.
+     */
+    static int indexOf(long[] table, long value)
+    {
+        int mask = table.length - 1;
+
+        for (int i = slot(value, mask); table[i] != 0; i = (i + 1) & mask)
+        {
+            if (table[i] == value)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * The slot holding {@code value}, or the free slot it belongs in. {@code value} must not be 0.
+     */
+    static int probe(long[] table, long value)
+    {
+        int mask = table.length - 1;
+        int i = slot(value, mask);
+
+        while (table[i] != 0 && table[i] != value)
+        {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    /**
+     * Where the entry at {@code hole} has just been cleared, shifts later entries of the same probe run back
+     * so lookups never stop early. Returns the slots each entry moved from and to, via {@code mover}, so
+     * parallel arrays can follow along.
+     */
+    static void closeHole(long[] table, int hole, SlotMover mover)
+    {
+        int mask = table.length - 1;
+
+        for (int i = (hole + 1) & mask; table[i] != 0; i = (i + 1) & mask)
+        {
+            int home = slot(table[i], mask);
+
+            // Move the entry back unless its home lies cyclically in (hole, i]:
+            if (hole <= i ? (home <= hole || home > i) : (home <= hole && home > i))
+            {
+                table[hole] = table[i];
+                table[i] = 0;
+                mover.move(i, hole);
+                hole = i;
+            }
+        }
+    }
+
+    static int capacityFor(int size)
+    {
+        checkArgument(size <= MAX_SIZE, "Too many values for one table: %s", size);
+        int capacity = MIN_CAPACITY;
+
+        // Keep the table at most three-quarters full:
+        while (capacity / 4 * 3 < size)
+        {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    private static int slot(long value, int mask)
+    {
+        // Murmur3's 64-bit finalizer, so sequential ids spread out:
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value & mask;
+    }
+
+    @FunctionalInterface
+    interface SlotMover
+    {
+        void move(int from, int to);
+    }
+
+    ////////////////////////////////////////
+    // BUILDER:
+
+    /**
+     * Builds a set in place; {@link #build()} hands the table over without copying it.
+     */
+    public static final class Builder
+    {
+        private long[] table;
+        private boolean hasZero;
+        private int size;
+        private boolean shared;
+
+        private Builder(int expectedSize)
+        {
+            this(new long[capacityFor(expectedSize)], false, 0);
+        }
+
+        private Builder(long[] table, boolean hasZero, int size)
+        {
+            this.table = table;
+            this.hasZero = hasZero;
+            this.size = size;
+        }
+
+        @Nonnull
+        public Builder add(long value)
+        {
+            if (value == 0)
+            {
+                if (!hasZero)
+                {
+                    writable();
+                    hasZero = true;
+                    size++;
+                }
+
+                return this;
+            }
+
+            ensureCapacity(size + 1);
+            int i = probe(table, value);
+
+            if (table[i] == 0)
+            {
+                writable();
+                table[i] = value;
+                size++;
+            }
+
+            return this;
+        }
+
+        @Nonnull
+        public Builder addAll(long... values)
+        {
+            ensureCapacity(size + values.length);
+
+            for (long value : values)
+            {
+                add(value);
+            }
+
+            return this;
+        }
+
+        @Nonnull
+        public Builder remove(long value)
+        {
+            if (value == 0)
+            {
+                if (hasZero)
+                {
+                    writable();
+                    hasZero = false;
+                    size--;
+                }
+
+                return this;
+            }
+
+            int i = indexOf(table, value);
+
+            if (i >= 0)
+            {
+                writable();
+                table[i] = 0;
+                closeHole(table, i, (from, to) -> { });
+                size--;
+            }
+
+            return this;
+        }
+
+        @Nonnull
+        public ImmutableLongSet build()
+        {
+            if (size == 0)
+            {
+                return EMPTY;
+            }
+
+            shared = true;
+            return new ImmutableLongSet(table, hasZero, size);
+        }
+
+        private void ensureCapacity(int expectedSize)
+        {
+            int capacity = capacityFor(expectedSize);
+
+            if (capacity > table.length)
+            {
+                long[] oldTable = table;
+                table = new long[capacity];
+                shared = false;
+
+                for (long value : oldTable)
+                {
+                    if (value != 0)
+                    {
+                        table[probe(table, value)] = value;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Copies the table before writing to it if a built set still refers to it.
+         */
+        private void writable()
+        {
+            if (shared)
+            {
+                table = table.clone();
+                shared = false;
+            }
+        }
+    }
+}
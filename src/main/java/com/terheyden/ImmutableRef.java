@@ -0,0 +1,195 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A shared reference to an immutable value, updated by edits on its mutable form - e.g. an
+ * {@code ImmutableMap} updated by edits on a {@code Map}.
+ *
+ * A CAS loop around {@code Immutables.addToMap} throws away a full copy on every failed attempt, so it
+ * collapses under contention. Instead, this uses flat combining: writers queue their edits, and whichever
+ * writer holds the lock applies every queued edit in one batch - one copy in, one copy out via an
+ * {@code Immutables.editX} method - and publishes the result. The more writers pile up, the bigger
+ * (and cheaper per edit) the batches get. Reads are a single volatile load.
+ *
+ * Edits run on whichever thread is combining, so they should be quick and must not block or touch
+ * this ref. An edit that throws doesn't affect the others queued with it; its exception is rethrown
+ * to the thread that submitted it.
+ *
+ * @param <T> the immutable type
+ * @param <M> the mutable form edits work on
+ */
+@ParametersAreNonnullByDefault
+public final class ImmutableRef<T, M>
+{
+    private final BiFunction<T, Consumer<M>, T> editor;
+    private final Queue<Request<M, T>> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock combiner = new ReentrantLock();
+
+    private volatile T value;
+
+    private ImmutableRef(T value, BiFunction<T, Consumer<M>, T> editor)
+    {
+        this.value = checkNotNull(value);
+        this.editor = checkNotNull(editor);
+    }
+
+    /**
+     * @param editor applies a batch of edits to a value, returning the new value - usually one of the
+     *               {@code Immutables.editX} methods
+     */
+    @Nonnull
+    public static <T, M> ImmutableRef<T, M> of(T initialValue, BiFunction<T, Consumer<M>, T> editor)
+    {
+        return new ImmutableRef<>(initialValue, editor);
+    }
+
+    @Nonnull
+    public static <T> ImmutableRef<ImmutableList<T>, List<T>> ofList(ImmutableList<T> initialValue)
+    {
+        return new ImmutableRef<>(initialValue, Immutables::editList);
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableRef<ImmutableMap<K, V>, Map<K, V>> ofMap(ImmutableMap<K, V> initialValue)
+    {
+        return new ImmutableRef<>(initialValue, Immutables::editMap);
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableRef<PersistentHashMap<K, V>, PersistentHashMap.Transient<K, V>> ofPersistentMap(
+        PersistentHashMap<K, V> initialValue)
+    {
+        return new ImmutableRef<>(initialValue, Immutables::editMap);
+    }
+
+    /**
+     * The current value. Wait-free.
+     */
+    @Nonnull
+    public T get()
+    {
+        return value;
+    }
+
+    /**
+     * Applies {@code edit}, possibly batched with other threads' edits, and returns the
+     * value it was published in. Blocks until then.
+     */
+    @Nonnull
+    public T update(Consumer<? super M> edit)
+    {
+        Request<M, T> request = new Request<>(edit);
+        pending.add(request);
+
+        combiner.lock();
+
+        try
+        {
+            // Whoever held the lock before us may have already applied our edit:
+            if (!request.done)
+            {
+                combine();
+            }
+        }
+        finally
+        {
+            combiner.unlock();
+        }
+
+        if (request.failure != null)
+        {
+            throwIfUnchecked(request.failure);
+            throw new RuntimeException(request.failure);
+        }
+
+        return request.result;
+    }
+
+    /**
+     * Applies everything queued so far. Must hold the lock.
+     */
+    private void combine()
+    {
+        List<Request<M, T>> batch = new ArrayList<>();
+        Request<M, T> request;
+
+        while ((request = pending.poll()) != null)
+        {
+            batch.add(request);
+        }
+
+        T newValue;
+
+        try
+        {
+            newValue = editor.apply(value, mutable -> batch.forEach(req -> req.edit.accept(mutable)));
+        }
+        catch (Throwable e)
+        {
+            // Errors too, or the rest of the batch would never be completed. Part of the batch
+            // may have been applied, so start over one edit at a time to find the culprit:
+            replay(batch);
+            return;
+        }
+
+        value = newValue;
+        batch.forEach(req -> req.complete(newValue, null));
+    }
+
+    private void replay(List<Request<M, T>> batch)
+    {
+        for (Request<M, T> request : batch)
+        {
+            try
+            {
+                T newValue = editor.apply(value, request.edit::accept);
+                value = newValue;
+                request.complete(newValue, null);
+            }
+            catch (Throwable e)
+            {
+                request.complete(value, e);
+            }
+        }
+    }
+
+    private static final class Request<M, T>
+    {
+        private final Consumer<? super M> edit;
+
+        // Written and read under the combiner lock:
+        private boolean done;
+        @Nullable private T result;
+        @Nullable private Throwable failure;
+
+        private Request(Consumer<? super M> edit)
+        {
+            this.edit = checkNotNull(edit);
+        }
+
+        private void complete(T result, @Nullable Throwable failure)
+        {
+            this.result = result;
+            this.failure = failure;
+            this.done = true;
+        }
+    }
+}
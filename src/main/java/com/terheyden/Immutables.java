@@ -4,24 +4,39 @@ import static com.google.common.base.Predicates.in;
 import static com.google.common.base.Predicates.not;
 import static java.util.Arrays.asList;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.SetMultimap;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
 
 /**
  * Utility methods for working with immutable classes.
@@ -39,9 +54,15 @@ public enum Immutables
      */
     @Nonnull
     @SafeVarargs
+    @SuppressWarnings("unchecked")
     public static <T> ImmutableList<T> addToList(ImmutableList<? extends T> list, T... itemsToAdd)
     {
-        return ImmutableList.<T>builder()
+        if (itemsToAdd.length == 0)
+        {
+            return (ImmutableList<T>) list;
+        }
+
+        return ImmutableList.<T>builderWithExpectedSize(list.size() + itemsToAdd.length)
             .addAll(list)
             .addAll(asList(itemsToAdd))
             .build();
@@ -49,14 +70,87 @@ public enum Immutables
 
     /**
      * https://stackoverflow.com/questions/12937938/adding-and-removing-items-to-a-guava-immutablelist
+     *
+     * Returns {@code list} itself if none of the items are in it: a read-only scan costs far less
+     * than the copy it saves.
      */
     @Nonnull
     @SafeVarargs
+    @SuppressWarnings("unchecked")
     public static <T> ImmutableList<T> removeFromList(ImmutableList<? extends T> list, T... itemsToRemove)
     {
-        return ImmutableList.copyOf(Collections2.filter(
-            list,
-            not(in(asList(itemsToRemove)))));
+        HashSet<T> toRemove = new HashSet<>(asList(itemsToRemove));
+
+        if (Collections.disjoint(list, toRemove))
+        {
+            return (ImmutableList<T>) list;
+        }
+
+        return Immutables.<T>pipeline(list)
+            .filter(not(in(toRemove)))
+            .toImmutableList();
+    }
+
+    /**
+     * Amortized O(1) per item - the new list shares its whole tree with {@code list}.
+     */
+    @Nonnull
+    @SafeVarargs
+    public static <T> PersistentVector<T> addToList(PersistentVector<T> list, T... itemsToAdd)
+    {
+        return list.appendAll(asList(itemsToAdd));
+    }
+
+    /**
+     * One O(n) scan with hash lookups, then O(log n) per removed item: the new list is the runs
+     * between the matches, concatenated, so it shares their nodes with {@code list}.
+     * Returns {@code list} itself if nothing was removed.
+     */
+    @Nonnull
+    @SafeVarargs
+    public static <T> PersistentVector<T> removeFromList(PersistentVector<T> list, T... itemsToRemove)
+    {
+        Set<T> toRemove = new HashSet<>(asList(itemsToRemove));
+        PersistentVector<T> newList = PersistentVector.empty();
+        int runStart = 0;
+        int index = 0;
+
+        for (T item : list)
+        {
+            if (toRemove.contains(item))
+            {
+                newList = newList.concat(list.subList(runStart, index));
+                runStart = index + 1;
+            }
+
+            index++;
+        }
+
+        return runStart == 0 ? list : newList.concat(list.subList(runStart, list.size()));
+    }
+
+    /**
+     * Applies a batch of edits with one copy in and one copy out, instead of a full copy per edit.
+     */
+    @Nonnull
+    public static <T> ImmutableList<T> editList(ImmutableList<? extends T> list, Consumer<? super List<T>> editor)
+    {
+        List<T> tmpList = new ArrayList<>(list);
+        editor.accept(tmpList);
+        return ImmutableList.copyOf(tmpList);
+    }
+
+    /**
+     * Applies a batch of edits in place on a transient, then freezes it in O(1).
+     */
+    @Nonnull
+    public static <T> PersistentVector<T> editList(
+        PersistentVector<T> list,
+        Consumer<? super PersistentVector.Transient<T>> editor)
+    {
+        PersistentVector.Transient<T> tmpList = list.asTransient();
+        editor.accept(tmpList);
+        return tmpList.persistent();
     }
 
     @Nonnull
@@ -71,6 +165,12 @@ public enum Immutables
         return ImmutableList.copyOf(list);
     }
 
+    @Nonnull
+    public static <T> PersistentVector<T> toPersistentVector(Collection<? extends T> list)
+    {
+        return PersistentVector.copyOf(list);
+    }
+
     ////////////////////////////////////////
     // MAP<K, V>
 
@@ -78,29 +178,89 @@ public enum Immutables
      * https://stackoverflow.com/questions/29828829/extending-an-immutablemap-with-additional-or-new-values
      */
     @Nonnull
+    @SuppressWarnings("unchecked")
     public static <K, V> ImmutableMap<K, V> addToMap(
         ImmutableMap<? extends K, ? extends V> sourceMap,
         K key,
         V val)
     {
-        return ImmutableMap.<K, V>builder()
+        if (val.equals(sourceMap.get(key)))
+        {
+            return (ImmutableMap<K, V>) sourceMap;
+        }
+
+        return ImmutableMap.<K, V>builderWithExpectedSize(sourceMap.size() + 1)
             .putAll(sourceMap)
             .put(key, val)
             .build();
     }
 
+    /**
+     * Returns {@code sourceMap} itself if it doesn't have {@code key}.
+     */
     @Nonnull
+    @SuppressWarnings("unchecked")
     public static <K, V> ImmutableMap<K, V> removeFromMap(
         ImmutableMap<? extends K, ? extends V> sourceMap,
         K key)
     {
-        ImmutableMap.Builder<K, V> builder = ImmutableMap.<K, V>builder();
+        if (!sourceMap.containsKey(key))
+        {
+            return (ImmutableMap<K, V>) sourceMap;
+        }
+
+        return Immutables.<K, V>pipeline(sourceMap)
+            .filterKeys(sourceKey -> !sourceKey.equals(key))
+            .toImmutableMap();
+    }
 
-        sourceMap.entrySet().stream()
-            .filter(entry -> !entry.getKey().equals(key))
-            .forEach(entry -> builder.put(entry.getKey(), entry.getValue()));
+    /**
+     * O(log32 n) - the new map shares all but the path to {@code key} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> addToMap(
+        PersistentHashMap<K, V> sourceMap,
+        K key,
+        V val)
+    {
+        return sourceMap.assoc(key, val);
+    }
 
-        return builder.build();
+    /**
+     * O(log32 n) - the new map shares all but the path to {@code key} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> removeFromMap(
+        PersistentHashMap<K, V> sourceMap,
+        K key)
+    {
+        return sourceMap.dissoc(key);
+    }
+
+    /**
+     * Applies a batch of edits with one copy in and one copy out, instead of a full copy per edit.
+     */
+    @Nonnull
+    public static <K, V> ImmutableMap<K, V> editMap(
+        ImmutableMap<? extends K, ? extends V> sourceMap,
+        Consumer<? super Map<K, V>> editor)
+    {
+        Map<K, V> tmpMap = new LinkedHashMap<>(sourceMap);
+        editor.accept(tmpMap);
+        return ImmutableMap.copyOf(tmpMap);
+    }
+
+    /**
+     * Applies a batch of edits in place on a transient, then freezes it in O(1).
+     */
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> editMap(
+        PersistentHashMap<K, V> sourceMap,
+        Consumer<? super PersistentHashMap.Transient<K, V>> editor)
+    {
+        PersistentHashMap.Transient<K, V> tmpMap = sourceMap.asTransient();
+        editor.accept(tmpMap);
+        return tmpMap.persistent();
     }
 
     @Nonnull
@@ -115,27 +275,53 @@ public enum Immutables
         return ImmutableMap.copyOf(sourceMap);
     }
 
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> toPersistentHashMap(Map<? extends K, ? extends V> sourceMap)
+    {
+        return PersistentHashMap.copyOf(sourceMap);
+    }
+
 
     ////////////////////////////////////////
     // SORTEDMAP<K, V>
 
+    /**
+     * Returns {@code sourceMap} itself if it already maps {@code key} to {@code val}
+     * and is in natural order, like the maps this returns.
+     */
     @Nonnull
+    @SuppressWarnings("unchecked")
     public static <K extends Comparable<?>, V> ImmutableSortedMap<K, V> addToSortedMap(
         ImmutableSortedMap<? extends K, ? extends V> sourceMap,
         K key,
         V val)
     {
+        if (val.equals(sourceMap.get(key)) && isNaturalOrder(sourceMap))
+        {
+            return (ImmutableSortedMap<K, V>) sourceMap;
+        }
+
         return ImmutableSortedMap.<K, V>naturalOrder()
             .putAll(sourceMap)
             .put(key, val)
             .build();
     }
 
+    /**
+     * Returns {@code sourceMap} itself if it doesn't have {@code key} and is in natural order,
+     * like the maps this returns.
+     */
     @Nonnull
+    @SuppressWarnings("unchecked")
     public static <K extends Comparable<?>, V> ImmutableSortedMap<K, V> removeFromSortedMap(
         ImmutableSortedMap<? extends K, ? extends V> sourceMap,
         K key)
     {
+        if (!sourceMap.containsKey(key) && isNaturalOrder(sourceMap))
+        {
+            return (ImmutableSortedMap<K, V>) sourceMap;
+        }
+
         ImmutableSortedMap.Builder<K, V> builder = ImmutableSortedMap.<K, V>naturalOrder();
 
         sourceMap.entrySet().stream()
@@ -145,6 +331,88 @@ public enum Immutables
         return builder.build();
     }
 
+    /**
+     * Adds {@code val} to the end of the list at {@code key}, starting a new list if there isn't one.
+     * Copies the whole map and that list - for a schedule that changes often, see {@link PersistentSchedule}.
+     */
+    @Nonnull
+    public static <K extends Comparable<?>, V> ImmutableSortedMap<K, ImmutableList<V>> addToSortedMapList(
+        ImmutableSortedMap<K, ImmutableList<V>> sourceMap,
+        K key,
+        V val)
+    {
+        ImmutableList<V> oldList = sourceMap.get(key);
+        ImmutableList<V> newList = oldList == null ? ImmutableList.of(val) : addToList(oldList, val);
+
+        return ImmutableSortedMap.<K, ImmutableList<V>>naturalOrder()
+            .putAll(sourceMap.headMap(key))
+            .put(key, newList)
+            .putAll(sourceMap.tailMap(key, false))
+            .build();
+    }
+
+    /**
+     * O(log n) - appends to the vector at {@code key}, and shares everything else with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSortedMap<K, PersistentVector<V>> addToSortedMapList(
+        PersistentSortedMap<K, PersistentVector<V>> sourceMap,
+        K key,
+        V val)
+    {
+        PersistentVector<V> oldList = sourceMap.get(key);
+        return sourceMap.assoc(key, oldList == null ? PersistentVector.of(val) : oldList.append(val));
+    }
+
+    /**
+     * O(log n) - the new map shares all but the path to {@code key} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSortedMap<K, V> addToSortedMap(
+        PersistentSortedMap<K, V> sourceMap,
+        K key,
+        V val)
+    {
+        return sourceMap.assoc(key, val);
+    }
+
+    /**
+     * O(log n) - the new map shares all but the path to {@code key} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSortedMap<K, V> removeFromSortedMap(
+        PersistentSortedMap<K, V> sourceMap,
+        K key)
+    {
+        return sourceMap.dissoc(key);
+    }
+
+    /**
+     * Applies a batch of edits with one copy in and one copy out, instead of a full copy per edit.
+     */
+    @Nonnull
+    public static <K extends Comparable<?>, V> ImmutableSortedMap<K, V> editSortedMap(
+        ImmutableSortedMap<K, ? extends V> sourceMap,
+        Consumer<? super SortedMap<K, V>> editor)
+    {
+        SortedMap<K, V> tmpMap = new TreeMap<>(sourceMap);
+        editor.accept(tmpMap);
+        return ImmutableSortedMap.copyOfSorted(tmpMap);
+    }
+
+    /**
+     * Applies a batch of edits in place on a transient, then freezes it in O(1).
+     */
+    @Nonnull
+    public static <K, V> PersistentSortedMap<K, V> editSortedMap(
+        PersistentSortedMap<K, V> sourceMap,
+        Consumer<? super PersistentSortedMap.Transient<K, V>> editor)
+    {
+        PersistentSortedMap.Transient<K, V> tmpMap = sourceMap.asTransient();
+        editor.accept(tmpMap);
+        return tmpMap.persistent();
+    }
+
     @Nonnull
     public static <K extends Comparable<?>, V> SortedMap<K, V> toSortedTreeMap(ImmutableSortedMap<? extends K, ? extends V> sourceMap)
     {
@@ -158,36 +426,133 @@ public enum Immutables
         return ImmutableSortedMap.copyOf(sourceMap);
     }
 
+    @Nonnull
+    public static <K extends Comparable<?>, V> PersistentSortedMap<K, V> toPersistentSortedMap(
+        Map<? extends K, ? extends V> sourceMap)
+    {
+        return PersistentSortedMap.copyOf(sourceMap);
+    }
+
+    private static boolean isNaturalOrder(ImmutableSortedMap<?, ?> sourceMap)
+    {
+        return Ordering.natural().equals(sourceMap.comparator());
+    }
+
 
     ////////////////////////////////////////
     // SETMULTIMAP<K, V>
 
+    /**
+     * Returns {@code sourceMap} itself if it already has the entry. Otherwise copies every entry -
+     * for a multimap that changes often, see {@link PersistentSetMultimap}.
+     */
     @Nonnull
+    @SuppressWarnings("unchecked")
     public static <K extends Comparable<?>, V> ImmutableSetMultimap<K, V> addToSetMultimap(
         ImmutableSetMultimap<? extends K, ? extends V> sourceMap,
         K newKey,
         V newVal)
     {
+        if (sourceMap.containsEntry(newKey, newVal))
+        {
+            return (ImmutableSetMultimap<K, V>) sourceMap;
+        }
+
         return new ImmutableSetMultimap.Builder<K, V>()
             .putAll(sourceMap)
             .put(newKey, newVal)
             .build();
     }
 
+    /**
+     * Returns {@code sourceMap} itself if it doesn't have the entry. Otherwise copies every other
+     * entry in one pass, keeping the source's order.
+     */
     @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<?>, V> ImmutableSetMultimap<K, V> removeFromSetMultimap(
+        ImmutableSetMultimap<? extends K, ? extends V> sourceMap,
+        K oldKey,
+        V oldVal)
+    {
+        if (!sourceMap.containsEntry(oldKey, oldVal))
+        {
+            return (ImmutableSetMultimap<K, V>) sourceMap;
+        }
+
+        ImmutableSetMultimap.Builder<K, V> builder = ImmutableSetMultimap.builder();
+
+        sourceMap.forEach((key, val) -> {
+            if (!key.equals(oldKey) || !val.equals(oldVal))
+            {
+                builder.put(key, val);
+            }
+        });
+
+        return builder.build();
+    }
+
+    /**
+     * @deprecated {@code builder} is no longer needed, and the result keeps the source's order -
+     * use {@link #removeFromSetMultimap(ImmutableSetMultimap, Comparable, Object)}
+     */
+    @Nonnull
+    @Deprecated
     public static <K extends Comparable<?>, V> ImmutableSetMultimap<K, V> removeFromSetMultimap(
         ImmutableSetMultimap<? extends K, ? extends V> sourceMap,
         MultimapBuilder.SetMultimapBuilder<? super K, ? super V> builder,
         K oldKey,
         V oldVal)
     {
-        SetMultimap<? extends K, ? extends V> tmpMap = builder.build(sourceMap);
+        return removeFromSetMultimap(sourceMap, oldKey, oldVal);
+    }
 
-        tmpMap.remove(oldKey, oldVal);
+    /**
+     * O(log n) - the new multimap shares all but the path to {@code newKey} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSetMultimap<K, V> addToSetMultimap(
+        PersistentSetMultimap<K, V> sourceMap,
+        K newKey,
+        V newVal)
+    {
+        return sourceMap.assoc(newKey, newVal);
+    }
 
-        return new ImmutableSetMultimap.Builder<K, V>()
-            .putAll(tmpMap)
-            .build();
+    /**
+     * O(log n) - the new multimap shares all but the path to {@code oldKey} with {@code sourceMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSetMultimap<K, V> removeFromSetMultimap(
+        PersistentSetMultimap<K, V> sourceMap,
+        K oldKey,
+        V oldVal)
+    {
+        return sourceMap.dissoc(oldKey, oldVal);
+    }
+
+    /**
+     * O(log n) - drops every value for {@code oldKey}.
+     */
+    @Nonnull
+    public static <K, V> PersistentSetMultimap<K, V> removeKeyFromSetMultimap(
+        PersistentSetMultimap<K, V> sourceMap,
+        K oldKey)
+    {
+        return sourceMap.dissocAll(oldKey);
+    }
+
+    /**
+     * Applies a batch of edits with one copy in and one copy out, instead of a full copy per edit.
+     */
+    @Nonnull
+    public static <K, V> ImmutableSetMultimap<K, V> editSetMultimap(
+        ImmutableSetMultimap<? extends K, ? extends V> sourceMap,
+        Consumer<? super SetMultimap<K, V>> editor)
+    {
+        SetMultimap<K, V> tmpMap = LinkedHashMultimap.create(sourceMap);
+        editor.accept(tmpMap);
+        return ImmutableSetMultimap.copyOf(tmpMap);
     }
 
     @Nonnull
@@ -217,6 +582,267 @@ public enum Immutables
             .hashSetValues();
     }
 
+    ////////////////////////////////////////
+    // DIFF / PATCH
+
+    /**
+     * The added, changed and removed entries that turn {@code oldMap} into {@code newMap}. O(n + m).
+     */
+    @Nonnull
+    public static <K, V> MapPatch<K, V> diff(Map<K, ? extends V> oldMap, Map<K, ? extends V> newMap)
+    {
+        return MapPatch.between(oldMap, newMap);
+    }
+
+    /**
+     * Skips every sub-trie the two versions share, so it runs in time proportional to the change
+     * when {@code newMap} was derived from {@code oldMap}.
+     */
+    @Nonnull
+    public static <K, V> MapPatch<K, V> diff(PersistentHashMap<K, V> oldMap, PersistentHashMap<K, V> newMap)
+    {
+        return oldMap.diff(newMap);
+    }
+
+    @Nonnull
+    public static <K, V> MultimapPatch<K, V> diff(SetMultimap<K, V> oldMap, SetMultimap<K, V> newMap)
+    {
+        return MultimapPatch.between(oldMap, newMap);
+    }
+
+    /**
+     * Rebuilds the new version in one pass over {@code baseMap}, keeping its order.
+     * Removed keys that {@code baseMap} doesn't have are ignored.
+     */
+    @Nonnull
+    public static <K, V> ImmutableMap<K, V> apply(ImmutableMap<K, ? extends V> baseMap, MapPatch<K, V> patch)
+    {
+        if (patch.isEmpty())
+        {
+            return ImmutableMap.copyOf(baseMap);
+        }
+
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builderWithExpectedSize(
+            baseMap.size() + patch.added().size());
+
+        baseMap.forEach((key, val) -> {
+            if (!patch.removed().contains(key) && !patch.added().containsKey(key))
+            {
+                V changedVal = patch.changed().get(key);
+                builder.put(key, changedVal == null ? val : changedVal);
+            }
+        });
+
+        return builder
+            .putAll(patch.added())
+            .build();
+    }
+
+    /**
+     * O(p log32 n) for a patch of p entries - the result shares everything else with {@code baseMap}.
+     */
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> apply(PersistentHashMap<K, V> baseMap, MapPatch<K, V> patch)
+    {
+        PersistentHashMap.Transient<K, V> tmpMap = baseMap.asTransient();
+        patch.removed().forEach(tmpMap::remove);
+        tmpMap.putAll(patch.changed());
+        tmpMap.putAll(patch.added());
+        return tmpMap.persistent();
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableSetMultimap<K, V> apply(ImmutableSetMultimap<K, V> baseMap, MultimapPatch<K, V> patch)
+    {
+        if (patch.isEmpty())
+        {
+            return baseMap;
+        }
+
+        ImmutableSetMultimap.Builder<K, V> builder = ImmutableSetMultimap.builder();
+
+        baseMap.forEach((key, val) -> {
+            if (!patch.removed().containsEntry(key, val))
+            {
+                builder.put(key, val);
+            }
+        });
+
+        return builder
+            .putAll(patch.added())
+            .build();
+    }
+
+    ////////////////////////////////////////
+    // SNAPSHOTS
+
+    /**
+     * Writes {@code sourceMap} to a memory-mapped snapshot file and opens it. See {@link FrozenMap}.
+     */
+    @Nonnull
+    public static <K, V> FrozenMap<K, V> freezeMap(
+        Map<? extends K, ? extends V> sourceMap,
+        Path path,
+        Codec<K> keyCodec,
+        Codec<V> valueCodec) throws IOException
+    {
+        FrozenMap.write(sourceMap, path, keyCodec, valueCodec);
+        return FrozenMap.open(path, keyCodec, valueCodec);
+    }
+
+    /**
+     * Opens a snapshot written by {@link #freezeMap} - just an mmap, nothing is loaded onto the heap.
+     */
+    @Nonnull
+    public static <K, V> FrozenMap<K, V> openFrozenMap(Path path, Codec<K> keyCodec, Codec<V> valueCodec)
+        throws IOException
+    {
+        return FrozenMap.open(path, keyCodec, valueCodec);
+    }
+
+    ////////////////////////////////////////
+    // PRIMITIVES
+
+    @Nonnull
+    public static ImmutableIntArray addToList(ImmutableIntArray list, int... itemsToAdd)
+    {
+        return ImmutableIntArray.builder(list.length() + itemsToAdd.length)
+            .addAll(list)
+            .addAll(itemsToAdd)
+            .build();
+    }
+
+    /**
+     * One O(n) pass with unboxed hash lookups. Returns {@code list} itself if nothing was removed.
+     */
+    @Nonnull
+    public static ImmutableIntArray removeFromList(ImmutableIntArray list, int... itemsToRemove)
+    {
+        ImmutableLongSet toRemove = ImmutableLongSet.of(Arrays.stream(itemsToRemove).asLongStream().toArray());
+        ImmutableIntArray newList = ImmutableIntArray.copyOf(list.stream().filter(item -> !toRemove.contains(item)));
+        return newList.length() == list.length() ? list : newList;
+    }
+
+    @Nonnull
+    public static ImmutableLongArray addToList(ImmutableLongArray list, long... itemsToAdd)
+    {
+        return ImmutableLongArray.builder(list.length() + itemsToAdd.length)
+            .addAll(list)
+            .addAll(itemsToAdd)
+            .build();
+    }
+
+    /**
+     * One O(n) pass with unboxed hash lookups. Returns {@code list} itself if nothing was removed.
+     */
+    @Nonnull
+    public static ImmutableLongArray removeFromList(ImmutableLongArray list, long... itemsToRemove)
+    {
+        ImmutableLongSet toRemove = ImmutableLongSet.of(itemsToRemove);
+        ImmutableLongArray newList = ImmutableLongArray.copyOf(list.stream().filter(item -> !toRemove.contains(item)));
+        return newList.length() == list.length() ? list : newList;
+    }
+
+    @Nonnull
+    public static ImmutableDoubleArray addToList(ImmutableDoubleArray list, double... itemsToAdd)
+    {
+        return ImmutableDoubleArray.builder(list.length() + itemsToAdd.length)
+            .addAll(list)
+            .addAll(itemsToAdd)
+            .build();
+    }
+
+    /**
+     * One O(n) pass with unboxed hash lookups. Values match as {@link Double#equals(Object)} does,
+     * so {@code NaN} removes {@code NaN} and {@code 0.0} does not remove {@code -0.0}.
+     * Returns {@code list} itself if nothing was removed.
+     */
+    @Nonnull
+    public static ImmutableDoubleArray removeFromList(ImmutableDoubleArray list, double... itemsToRemove)
+    {
+        ImmutableLongSet toRemove = ImmutableLongSet.of(
+            Arrays.stream(itemsToRemove).mapToLong(Double::doubleToLongBits).toArray());
+
+        ImmutableDoubleArray newList = ImmutableDoubleArray.copyOf(list.stream()
+            .filter(item -> !toRemove.contains(Double.doubleToLongBits(item))));
+
+        return newList.length() == list.length() ? list : newList;
+    }
+
+    @Nonnull
+    public static ImmutableLongSet addToSet(ImmutableLongSet set, long... itemsToAdd)
+    {
+        return set.with(itemsToAdd);
+    }
+
+    @Nonnull
+    public static ImmutableLongSet removeFromSet(ImmutableLongSet set, long... itemsToRemove)
+    {
+        return set.without(itemsToRemove);
+    }
+
+    @Nonnull
+    public static <V> ImmutableLongObjectMap<V> addToMap(ImmutableLongObjectMap<V> sourceMap, long key, V val)
+    {
+        return sourceMap.with(key, val);
+    }
+
+    @Nonnull
+    public static <V> ImmutableLongObjectMap<V> removeFromMap(ImmutableLongObjectMap<V> sourceMap, long key)
+    {
+        return sourceMap.without(key);
+    }
+
+    ////////////////////////////////////////
+    // PIPELINES
+    // Lazy map / filter / flatMap steps, fused into one pass at the end. See Pipeline.
+
+    @Nonnull
+    public static <T> Pipeline<T> pipeline(Collection<? extends T> source)
+    {
+        return Pipeline.of(source);
+    }
+
+    @Nonnull
+    public static <K, V> MapPipeline<K, V> pipeline(Map<? extends K, ? extends V> source)
+    {
+        return MapPipeline.of(source);
+    }
+
+    ////////////////////////////////////////
+    // INTERNING
+    // Canonical instances from a process-wide weak interner. See ImmutableInterner.
+
+    @Nonnull
+    public static <T> ImmutableList<T> intern(ImmutableList<T> list)
+    {
+        return ImmutableInterner.shared().intern(list);
+    }
+
+    @Nonnull
+    public static <T> ImmutableSet<T> intern(ImmutableSet<T> set)
+    {
+        return ImmutableInterner.shared().intern(set);
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableMap<K, V> intern(ImmutableMap<K, V> map)
+    {
+        return ImmutableInterner.shared().intern(map);
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableSetMultimap<K, V> intern(ImmutableSetMultimap<K, V> map)
+    {
+        return ImmutableInterner.shared().intern(map);
+    }
+
+    @Nonnull
+    public static <K, V> ImmutableListMultimap<K, V> intern(ImmutableListMultimap<K, V> map)
+    {
+        return ImmutableInterner.shared().intern(map);
+    }
+
     ////////////////////////////////////////
 
     @Nonnull
@@ -225,9 +851,36 @@ public enum Immutables
         return new ImmutableBuilder();
     }
 
+    /**
+     * If {@code srcMap}'s keys are in natural order, like a {@code TreeMultimap}'s, sorted
+     * terminals merge the staged entries into it instead of sorting every key again.
+     *
+     * Here and in the other {@code from} methods, a terminal whose source is already the type it
+     * returns hands the source back untouched when the staged edits wouldn't change it.
+     */
     @Nonnull
     public static ImmutableBuilder from(Multimap srcMap)
     {
         return new ImmutableBuilder(srcMap);
     }
+
+    /**
+     * The map's entries go to the multimap terminals. If it's a {@code SortedMap} in natural order,
+     * sorted terminals merge the staged entries into it instead of sorting every key again.
+     */
+    @Nonnull
+    public static ImmutableBuilder from(Map srcMap)
+    {
+        return new ImmutableBuilder(srcMap);
+    }
+
+    /**
+     * If {@code srcList} is a set in natural order, like an {@code ImmutableSortedSet}, sorted
+     * terminals merge the staged values into it instead of sorting everything again.
+     */
+    @Nonnull
+    public static ImmutableBuilder from(Collection srcList)
+    {
+        return new ImmutableBuilder(srcList);
+    }
 }
@@ -0,0 +1,172 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The difference between two versions of a map: the entries only the new version has, the keys whose
+ * values changed, and the keys only the old version has. Serializable, so a patch can be shipped to
+ * subscribers instead of the whole map.
+ *
+ * Made by {@link Immutables#diff}, applied by {@link Immutables#apply}.
+ */
+@ParametersAreNonnullByDefault
+public final class MapPatch<K, V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final ImmutableMap<K, V> added;
+    private final ImmutableMap<K, V> changed;
+    private final ImmutableSet<K> removed;
+
+    private MapPatch(ImmutableMap<K, V> added, ImmutableMap<K, V> changed, ImmutableSet<K> removed)
+    {
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * One O(n + m) pass over both maps.
+     */
+    @Nonnull
+    static <K, V> MapPatch<K, V> between(Map<K, ? extends V> oldMap, Map<K, ? extends V> newMap)
+    {
+        Builder<K, V> patch = new Builder<>();
+        patch.diff(oldMap, newMap);
+        return patch.build();
+    }
+
+    /**
+     * Entries whose keys weren't in the old version.
+     */
+    @Nonnull
+    public ImmutableMap<K, V> added()
+    {
+        return added;
+    }
+
+    /**
+     * Keys in both versions, mapped to their new values.
+     */
+    @Nonnull
+    public ImmutableMap<K, V> changed()
+    {
+        return changed;
+    }
+
+    /**
+     * Keys that aren't in the new version.
+     */
+    @Nonnull
+    public ImmutableSet<K> removed()
+    {
+        return removed;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * The number of entries added, changed or removed.
+     */
+    public int size()
+    {
+        return added.size() + changed.size() + removed.size();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (!(obj instanceof MapPatch))
+        {
+            return false;
+        }
+
+        MapPatch<?, ?> other = (MapPatch<?, ?>) obj;
+        return added.equals(other.added) && changed.equals(other.changed) && removed.equals(other.removed);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(added, changed, removed);
+    }
+
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+            .add("added", added)
+            .add("changed", changed)
+            .add("removed", removed)
+            .toString();
+    }
+
+    static final class Builder<K, V>
+    {
+        private final ImmutableMap.Builder<K, V> added = ImmutableMap.builder();
+        private final ImmutableMap.Builder<K, V> changed = ImmutableMap.builder();
+        private final ImmutableSet.Builder<K> removed = ImmutableSet.builder();
+
+        /**
+         * Adds the difference between two maps, or two matching parts of larger maps, to this patch.
+         */
+        void diff(Map<K, ? extends V> oldMap, Map<K, ? extends V> newMap)
+        {
+            newMap.forEach((key, newVal) -> {
+                V oldVal = oldMap.get(key);
+
+                if (oldVal == null)
+                {
+                    added(key, newVal);
+                }
+                else if (!oldVal.equals(newVal))
+                {
+                    changed(key, newVal);
+                }
+            });
+
+            for (K key : oldMap.keySet())
+            {
+                if (!newMap.containsKey(key))
+                {
+                    removed(key);
+                }
+            }
+        }
+
+        void added(K key, V val)
+        {
+            added.put(checkNotNull(key), checkNotNull(val));
+        }
+
+        void changed(K key, V val)
+        {
+            changed.put(checkNotNull(key), checkNotNull(val));
+        }
+
+        void removed(K key)
+        {
+            removed.add(checkNotNull(key));
+        }
+
+        MapPatch<K, V> build()
+        {
+            return new MapPatch<>(added.build(), changed.build(), removed.build());
+        }
+    }
+}
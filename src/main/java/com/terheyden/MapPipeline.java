@@ -0,0 +1,303 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+/**
+ * A lazy chain of steps over a map's entries - the fused, single-copy version of chaining
+ * {@code Maps.transformValues} / {@code transformEntries} / {@code filterEntries} and copying the result:
+ * <pre>
+ *   ImmutableMap&lt;String, String&gt; descriptions = Immutables.pipeline(users)
+ *       .filterValues(user -&gt; user.getAge() &gt; 10)
+ *       .mapEntries((name, user) -&gt; name + ", age " + user.getAge())
+ *       .toImmutableMap();
+ * </pre>
+ *
+ * Works like {@link Pipeline}: nothing runs until a terminal method, which walks the source once
+ * straight into a presized result, and {@link #memoize()} gives a view that computes each value at most once.
+ * Steps that produce duplicate keys make {@link #toImmutableMap()} throw, as Guava's builder does.
+ */
+@ParametersAreNonnullByDefault
+public final class MapPipeline<K, V>
+{
+    private final Map<?, ?> source;
+
+    /** Wires a downstream consumer of entries into a consumer of source entries, fusing every step. */
+    private final Function<BiConsumer<? super K, ? super V>, BiConsumer<Object, Object>> fuse;
+
+    /** The composed value function while every step only transforms values, so keys are the source's own. */
+    @Nullable private final BiFunction<Object, Object, ? extends V> mapper;
+
+    private MapPipeline(
+        Map<?, ?> source,
+        Function<BiConsumer<? super K, ? super V>, BiConsumer<Object, Object>> fuse,
+        @Nullable BiFunction<Object, Object, ? extends V> mapper)
+    {
+        this.source = source;
+        this.fuse = fuse;
+        this.mapper = mapper;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <K, V> MapPipeline<K, V> of(Map<? extends K, ? extends V> source)
+    {
+        return new MapPipeline<>(
+            checkNotNull(source),
+            downstream -> (BiConsumer<Object, Object>) downstream,
+            (key, val) -> (V) val);
+    }
+
+    ////////////////////////////////////////
+    // STEPS:
+
+    @Nonnull
+    public <V2> MapPipeline<K, V2> mapValues(Function<? super V, ? extends V2> function)
+    {
+        checkNotNull(function);
+        return mapEntries((key, val) -> function.apply(val));
+    }
+
+    /**
+     * Transforms each value based on both its key and value.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <V2> MapPipeline<K, V2> mapEntries(BiFunction<? super K, ? super V, ? extends V2> function)
+    {
+        checkNotNull(function);
+
+        return new MapPipeline<>(
+            source,
+            downstream -> fuse.apply((key, val) -> downstream.accept(key, function.apply(key, val))),
+            mapper == null ? null : (key, val) -> function.apply((K) key, mapper.apply(key, val)));
+    }
+
+    @Nonnull
+    public <K2> MapPipeline<K2, V> mapKeys(Function<? super K, ? extends K2> function)
+    {
+        checkNotNull(function);
+
+        return new MapPipeline<>(
+            source,
+            downstream -> fuse.apply((key, val) -> downstream.accept(function.apply(key), val)),
+            null);
+    }
+
+    @Nonnull
+    public MapPipeline<K, V> filter(BiPredicate<? super K, ? super V> predicate)
+    {
+        checkNotNull(predicate);
+
+        return new MapPipeline<>(
+            source,
+            downstream -> fuse.apply((key, val) -> {
+                if (predicate.test(key, val))
+                {
+                    downstream.accept(key, val);
+                }
+            }),
+            null);
+    }
+
+    @Nonnull
+    public MapPipeline<K, V> filterKeys(Predicate<? super K> predicate)
+    {
+        checkNotNull(predicate);
+        return filter((key, val) -> predicate.test(key));
+    }
+
+    @Nonnull
+    public MapPipeline<K, V> filterValues(Predicate<? super V> predicate)
+    {
+        checkNotNull(predicate);
+        return filter((key, val) -> predicate.test(val));
+    }
+
+    /**
+     * Replaces each entry with every entry of the map {@code function} returns for it.
+     */
+    @Nonnull
+    public <K2, V2> MapPipeline<K2, V2> flatMap(
+        BiFunction<? super K, ? super V, ? extends Map<? extends K2, ? extends V2>> function)
+    {
+        checkNotNull(function);
+
+        return new MapPipeline<>(
+            source,
+            downstream -> fuse.apply((key, val) -> function.apply(key, val).forEach(downstream)),
+            null);
+    }
+
+    ////////////////////////////////////////
+    // TERMINALS:
+
+    /**
+     * Runs the pipeline once, handing each resulting entry to {@code action}.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        ((Map<Object, Object>) source).forEach(fuse.apply(checkNotNull(action)));
+    }
+
+    /**
+     * Presized to the source, and keeps the source's iteration order.
+     */
+    @Nonnull
+    public ImmutableMap<K, V> toImmutableMap()
+    {
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builderWithExpectedSize(source.size());
+        forEach(builder::put);
+        return builder.build();
+    }
+
+    /**
+     * Later entries replace earlier ones with the same key.
+     */
+    @Nonnull
+    public PersistentHashMap<K, V> toPersistentHashMap()
+    {
+        PersistentHashMap.Transient<K, V> map = PersistentHashMap.<K, V>empty().asTransient();
+        forEach(map::put);
+        return map.persistent();
+    }
+
+    /**
+     * A read-only view that computes each value at most once, for pipelines that are expensive to rerun.
+     *
+     * If every step only transforms values, each value is computed as it's first read, and lookups go
+     * straight to the source. Otherwise the first read runs the whole pipeline into an {@code ImmutableMap},
+     * which later reads share. Either way the view is thread-safe.
+     */
+    @Nonnull
+    public Map<K, V> memoize()
+    {
+        if (mapper != null)
+        {
+            return new MemoizedMap<>(source, mapper);
+        }
+
+        return new LazyMap<>(Suppliers.memoize(this::toImmutableMap));
+    }
+
+    ////////////////////////////////////////
+    // VIEWS:
+
+    private static final class MemoizedMap<K, V> extends AbstractMap<K, V>
+    {
+        private final Map<?, ?> source;
+        private final BiFunction<Object, Object, ? extends V> mapper;
+        private final Map<Object, V> computed = new ConcurrentHashMap<>();
+
+        private MemoizedMap(Map<?, ?> source, BiFunction<Object, Object, ? extends V> mapper)
+        {
+            this.source = source;
+            this.mapper = mapper;
+        }
+
+        @Nullable
+        @Override
+        public V get(@Nullable Object key)
+        {
+            if (key == null || !source.containsKey(key))
+            {
+                return null;
+            }
+
+            return computed.computeIfAbsent(key, k -> checkNotNull(mapper.apply(k, source.get(k))));
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key)
+        {
+            return key != null && source.containsKey(key);
+        }
+
+        @Override
+        public int size()
+        {
+            return source.size();
+        }
+
+        @Nonnull
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<K, V>>()
+            {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator()
+                {
+                    return Iterators.transform(
+                        source.keySet().iterator(),
+                        key -> Maps.immutableEntry((K) key, get(key)));
+                }
+
+                @Override
+                public int size()
+                {
+                    return source.size();
+                }
+            };
+        }
+    }
+
+    private static final class LazyMap<K, V> extends AbstractMap<K, V>
+    {
+        private final Supplier<ImmutableMap<K, V>> result;
+
+        private LazyMap(Supplier<ImmutableMap<K, V>> result)
+        {
+            this.result = result;
+        }
+
+        @Nullable
+        @Override
+        public V get(@Nullable Object key)
+        {
+            return result.get().get(key);
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key)
+        {
+            return result.get().containsKey(key);
+        }
+
+        @Override
+        public int size()
+        {
+            return result.get().size();
+        }
+
+        @Nonnull
+        @Override
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return result.get().entrySet();
+        }
+    }
+}
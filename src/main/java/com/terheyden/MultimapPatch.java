@@ -0,0 +1,118 @@
+package com.terheyden;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+/**
+ * The difference between two versions of a set multimap: the key / value pairs only the new
+ * version has, and the pairs only the old version has. Serializable, so a patch can be shipped to
+ * subscribers instead of the whole multimap.
+ *
+ * Made by {@link Immutables#diff}, applied by {@link Immutables#apply}.
+ */
+@ParametersAreNonnullByDefault
+public final class MultimapPatch<K, V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final ImmutableSetMultimap<K, V> added;
+    private final ImmutableSetMultimap<K, V> removed;
+
+    private MultimapPatch(ImmutableSetMultimap<K, V> added, ImmutableSetMultimap<K, V> removed)
+    {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * One O(n + m) pass over both multimaps, skipping keys whose value sets are the same instance.
+     */
+    @Nonnull
+    static <K, V> MultimapPatch<K, V> between(SetMultimap<K, V> oldMap, SetMultimap<K, V> newMap)
+    {
+        ImmutableSetMultimap.Builder<K, V> added = ImmutableSetMultimap.builder();
+        ImmutableSetMultimap.Builder<K, V> removed = ImmutableSetMultimap.builder();
+
+        for (K key : Sets.union(oldMap.keySet(), newMap.keySet()))
+        {
+            Set<V> oldVals = oldMap.get(key);
+            Set<V> newVals = newMap.get(key);
+
+            if (oldVals != newVals)
+            {
+                added.putAll(key, Sets.difference(newVals, oldVals));
+                removed.putAll(key, Sets.difference(oldVals, newVals));
+            }
+        }
+
+        return new MultimapPatch<>(added.build(), removed.build());
+    }
+
+    /**
+     * Pairs that weren't in the old version.
+     */
+    @Nonnull
+    public ImmutableSetMultimap<K, V> added()
+    {
+        return added;
+    }
+
+    /**
+     * Pairs that aren't in the new version.
+     */
+    @Nonnull
+    public ImmutableSetMultimap<K, V> removed()
+    {
+        return removed;
+    }
+
+    public boolean isEmpty()
+    {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * The number of pairs added or removed.
+     */
+    public int size()
+    {
+        return added.size() + removed.size();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (!(obj instanceof MultimapPatch))
+        {
+            return false;
+        }
+
+        MultimapPatch<?, ?> other = (MultimapPatch<?, ?>) obj;
+        return added.equals(other.added) && removed.equals(other.removed);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(added, removed);
+    }
+
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+            .add("added", added)
+            .add("removed", removed)
+            .toString();
+    }
+}
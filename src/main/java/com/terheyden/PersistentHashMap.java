@@ -0,0 +1,1006 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable hash map backed by a hash array mapped trie (the compressed CHAMP variant).
+ * {@link #assoc(Object, Object)} and {@link #dissoc(Object)} copy only the path down
+ * to the affected key - at most 7 nodes of up to 32 slots - so they run in O(log32 n)
+ * and the new version shares every other node with the old one.
+ *
+ * Every node also caches the {@link Map#hashCode()} of the entries under it, adjusted by each
+ * edit on its way back up the path, so {@link #hashCode()} is O(1) and {@link #equals(Object)}
+ * between two of these maps rejects a mismatch in O(1), then skips every sub-trie the two share
+ * or whose cached hashes already differ.
+ *
+ * Like Guava's immutable collections, null keys and values are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V>
+{
+    private static final int BITS = 5;
+    private static final int HASH_BITS = 32;
+
+    private static final PersistentHashMap<Object, Object> EMPTY =
+        new PersistentHashMap<>(Node.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty()
+    {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @Nonnull
+    public static <K, V> PersistentHashMap<K, V> of(K key, V val)
+    {
+        return PersistentHashMap.<K, V>empty().assoc(key, val);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> sourceMap)
+    {
+        if (sourceMap instanceof PersistentHashMap)
+        {
+            return (PersistentHashMap<K, V>) sourceMap;
+        }
+
+        Transient<K, V> map = PersistentHashMap.<K, V>empty().asTransient();
+        map.putAll(sourceMap);
+        return map.persistent();
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Returns a map that also maps {@code key} to {@code val}, replacing any previous mapping.
+     * Returns this same instance if the key is already mapped to an equal value.
+     */
+    @Nonnull
+    public PersistentHashMap<K, V> assoc(K key, V val)
+    {
+        checkNotNull(key);
+        checkNotNull(val);
+
+        Change change = new Change();
+        Node newRoot = root.assoc(null, key, val, key.hashCode(), 0, change);
+
+        if (!change.modified)
+        {
+            return this;
+        }
+
+        return new PersistentHashMap<>(newRoot, change.oldValue == null ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without a mapping for {@code key}.
+     * Returns this same instance if the key isn't present.
+     */
+    @Nonnull
+    public PersistentHashMap<K, V> dissoc(Object key)
+    {
+        checkNotNull(key);
+
+        Change change = new Change();
+        Node newRoot = root.dissoc(null, key, key.hashCode(), 0, change);
+
+        if (!change.modified)
+        {
+            return this;
+        }
+
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * The patch that turns this map into {@code newer}. Sub-tries the two versions share are skipped
+     * by reference, so diffing two versions of the same lineage costs time proportional to the change
+     * rather than to the size of the maps.
+     */
+    @Nonnull
+    public MapPatch<K, V> diff(PersistentHashMap<K, V> newer)
+    {
+        MapPatch.Builder<K, V> patch = new MapPatch.Builder<>();
+        diff(root, newer.root, 0, patch);
+        return patch.build();
+    }
+
+    /**
+     * Starts a batch of in-place edits on top of this map. O(1).
+     */
+    @Nonnull
+    public Transient<K, V> asTransient()
+    {
+        return new Transient<>(this);
+    }
+
+    ////////////////////////////////////////
+    // MAP:
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return get(key) != null;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(@Nullable Object key)
+    {
+        return key == null ? null : (V) root.find(key, key.hashCode(), 0);
+    }
+
+    @Nonnull
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * O(1): every node keeps its entries' hash up to date.
+     */
+    @Override
+    public int hashCode()
+    {
+        return root.hash;
+    }
+
+    /**
+     * Against another {@code PersistentHashMap}, a size or hash mismatch is O(1), and the tries are then
+     * walked in step, skipping shared sub-tries and stopping at the first pair of sub-tries whose hashes differ.
+     */
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (obj instanceof PersistentHashMap)
+        {
+            PersistentHashMap<?, ?> other = (PersistentHashMap<?, ?>) obj;
+            return size == other.size && equal(root, other.root, 0);
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    @Deprecated
+    public V put(K key, V value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public V remove(Object key)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void putAll(Map<? extends K, ? extends V> map)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    ////////////////////////////////////////
+    // TRANSIENT:
+
+    /**
+     * A single-owner mutable session on top of a {@link PersistentHashMap}.
+     *
+     * The first edit to a node copies it and tags the copy with this transient's edit token;
+     * later edits to the same node happen in place, at mutable-map speed. {@link #persistent()}
+     * freezes the result in O(1) by retiring the token, after which this transient can't be used.
+     *
+     * Not thread-safe, and iterators don't survive later edits.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class Transient<K, V> extends AbstractMap<K, V>
+    {
+        private final PersistentHashMap<K, V> source;
+        private final Change change = new Change();
+
+        @Nullable private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Transient(PersistentHashMap<K, V> source)
+        {
+            this.source = source;
+            this.root = source.root;
+            this.size = source.size;
+        }
+
+        private Object edit()
+        {
+            if (edit == null)
+            {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+
+            return edit;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V put(K key, V val)
+        {
+            Object token = edit();
+            checkNotNull(key);
+            checkNotNull(val);
+
+            root = root.assoc(token, key, val, key.hashCode(), 0, change.reset());
+
+            if (change.oldValue == null)
+            {
+                size++;
+            }
+
+            return (V) change.oldValue;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(@Nullable Object key)
+        {
+            Object token = edit();
+
+            if (key == null)
+            {
+                return null;
+            }
+
+            root = root.dissoc(token, key, key.hashCode(), 0, change.reset());
+
+            if (change.modified)
+            {
+                size--;
+            }
+
+            return (V) change.oldValue;
+        }
+
+        @Override
+        public void clear()
+        {
+            edit();
+            root = Node.EMPTY;
+            size = 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(@Nullable Object key)
+        {
+            return key == null ? null : (V) root.find(key, key.hashCode(), 0);
+        }
+
+        @Nonnull
+        @Override
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<K, V>>()
+            {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator()
+                {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size()
+                {
+                    return size;
+                }
+            };
+        }
+
+        /**
+         * Freezes this transient into an immutable map in O(1).
+         * Returns the original map if nothing changed.
+         */
+        @Nonnull
+        public PersistentHashMap<K, V> persistent()
+        {
+            edit();
+            edit = null;
+
+            if (root == source.root)
+            {
+                return source;
+            }
+
+            return size == 0 ? empty() : new PersistentHashMap<>(root, size);
+        }
+    }
+
+    ////////////////////////////////////////
+    // TRIE:
+
+    private static int mask(int hash, int shift)
+    {
+        return (hash >>> shift) & 0x1f;
+    }
+
+    private static int bitpos(int hash, int shift)
+    {
+        return 1 << mask(hash, shift);
+    }
+
+    /**
+     * Walks both tries in step. Identical nodes are skipped; where the two only differ in shape
+     * at a bit position (a pair on one side, a sub-node on the other) the entries under it are compared directly.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> void diff(Node oldNode, Node newNode, int shift, MapPatch.Builder<K, V> patch)
+    {
+        if (oldNode == newNode)
+        {
+            return;
+        }
+
+        if (shift >= HASH_BITS)
+        {
+            patch.diff((Map<K, V>) entriesOf(oldNode), (Map<K, V>) entriesOf(newNode));
+            return;
+        }
+
+        for (int bits = oldNode.dataMap | oldNode.nodeMap | newNode.dataMap | newNode.nodeMap; bits != 0; bits &= bits - 1)
+        {
+            int bit = Integer.lowestOneBit(bits);
+
+            if ((oldNode.nodeMap & bit) != 0 && (newNode.nodeMap & bit) != 0)
+            {
+                diff(oldNode.nodeAt(bit), newNode.nodeAt(bit), shift + BITS, patch);
+            }
+            else
+            {
+                patch.diff((Map<K, V>) oldNode.entriesAt(bit), (Map<K, V>) newNode.entriesAt(bit));
+            }
+        }
+    }
+
+    /**
+     * Relies on the trie being canonical: equal contents always give the same bitmaps at every level.
+     */
+    private static boolean equal(Node node, Node other, int shift)
+    {
+        if (node == other)
+        {
+            return true;
+        }
+
+        if (node.hash != other.hash)
+        {
+            return false;
+        }
+
+        if (shift >= HASH_BITS)
+        {
+            // Collision nodes keep their pairs in insertion order:
+            return entriesOf(node).equals(entriesOf(other));
+        }
+
+        if (node.dataMap != other.dataMap || node.nodeMap != other.nodeMap)
+        {
+            return false;
+        }
+
+        int payload = 2 * node.payloadArity();
+
+        for (int i = 0; i < payload; i++)
+        {
+            if (!node.slots[i].equals(other.slots[i]))
+            {
+                return false;
+            }
+        }
+
+        for (int i = payload; i < node.slots.length; i++)
+        {
+            if (!equal((Node) node.slots[i], (Node) other.slots[i], shift + BITS))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Map<Object, Object> entriesOf(Node node)
+    {
+        Map<Object, Object> entries = new HashMap<>();
+        new EntryIterator<>(node).forEachRemaining(entry -> entries.put(entry.getKey(), entry.getValue()));
+        return entries;
+    }
+
+    /**
+     * Reports what an assoc / dissoc did on the way back up the trie.
+     * Transient edits modify nodes in place, so callers can't just compare node references.
+     */
+    private static final class Change
+    {
+        boolean modified;
+        @Nullable Object oldValue;
+        int hashDelta;
+
+        Change reset()
+        {
+            modified = false;
+            oldValue = null;
+            hashDelta = 0;
+            return this;
+        }
+    }
+
+    /**
+     * A trie node. {@code slots} holds the inline key / value pairs first, followed by the
+     * sub-nodes, each group ordered by bit position. Nodes past the last hash bit
+     * ({@code shift >= 32}) are collision nodes: both bitmaps are zero and every slot pair
+     * holds a key with the same full hash code.
+     *
+     * Removal keeps the trie canonical: a sub-node left with a single pair is always
+     * pulled back up into its parent, so two maps with the same contents have the same shape.
+     *
+     * A node created by a {@link Transient} remembers that transient's edit token, and only
+     * that transient may change it in place. Every other node is never modified.
+     */
+    private static final class Node
+    {
+        static final Node EMPTY = new Node(null, 0, 0, new Object[0], 0);
+
+        @Nullable final Object edit;
+        int dataMap;
+        int nodeMap;
+        Object[] slots;
+
+        /** The sum of {@code key.hashCode() ^ value.hashCode()} over every entry at or under this node. */
+        int hash;
+
+        Node(@Nullable Object edit, int dataMap, int nodeMap, Object[] slots, int hash)
+        {
+            this.edit = edit;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.slots = slots;
+            this.hash = hash;
+        }
+
+        int payloadArity()
+        {
+            return (slots.length - Integer.bitCount(nodeMap)) / 2;
+        }
+
+        boolean hasSinglePayload()
+        {
+            return nodeMap == 0 && slots.length == 2;
+        }
+
+        int nodeIndex(int bit)
+        {
+            return 2 * Integer.bitCount(dataMap) + Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        Node nodeAt(int bit)
+        {
+            return (Node) slots[nodeIndex(bit)];
+        }
+
+        /**
+         * Every entry at or under {@code bit}.
+         */
+        Map<Object, Object> entriesAt(int bit)
+        {
+            if ((dataMap & bit) != 0)
+            {
+                int idx = 2 * Integer.bitCount(dataMap & (bit - 1));
+                return Collections.singletonMap(slots[idx], slots[idx + 1]);
+            }
+
+            return (nodeMap & bit) != 0 ? entriesOf(nodeAt(bit)) : Collections.emptyMap();
+        }
+
+        @Nullable
+        Object find(Object key, int hash, int shift)
+        {
+            Node node = this;
+
+            while (shift < HASH_BITS)
+            {
+                int bit = bitpos(hash, shift);
+
+                if ((node.dataMap & bit) != 0)
+                {
+                    int idx = 2 * Integer.bitCount(node.dataMap & (bit - 1));
+                    return key.equals(node.slots[idx]) ? node.slots[idx + 1] : null;
+                }
+
+                if ((node.nodeMap & bit) == 0)
+                {
+                    return null;
+                }
+
+                node = node.nodeAt(bit);
+                shift += BITS;
+            }
+
+            int idx = node.collisionIndex(key);
+            return idx < 0 ? null : node.slots[idx + 1];
+        }
+
+        /**
+         * Every node on the edited path gets the entry's hash change, so no node is ever rehashed.
+         */
+        Node assoc(@Nullable Object edit, Object key, Object val, int hash, int shift, Change change)
+        {
+            int oldHash = this.hash;
+            Node node = doAssoc(edit, key, val, hash, shift, change);
+
+            if (change.modified)
+            {
+                node.hash = oldHash + change.hashDelta;
+            }
+
+            return node;
+        }
+
+        Node dissoc(@Nullable Object edit, Object key, int hash, int shift, Change change)
+        {
+            int oldHash = this.hash;
+            Node node = doDissoc(edit, key, hash, shift, change);
+
+            if (change.modified)
+            {
+                node.hash = oldHash + change.hashDelta;
+            }
+
+            return node;
+        }
+
+        private Node doAssoc(@Nullable Object edit, Object key, Object val, int hash, int shift, Change change)
+        {
+            if (shift >= HASH_BITS)
+            {
+                return collisionAssoc(edit, key, val, hash, change);
+            }
+
+            int bit = bitpos(hash, shift);
+
+            if ((dataMap & bit) != 0)
+            {
+                int idx = 2 * Integer.bitCount(dataMap & (bit - 1));
+                Object curKey = slots[idx];
+
+                if (key.equals(curKey))
+                {
+                    change.oldValue = slots[idx + 1];
+
+                    if (val.equals(slots[idx + 1]))
+                    {
+                        return this;
+                    }
+
+                    change.modified = true;
+                    change.hashDelta = (hash ^ val.hashCode()) - (hash ^ slots[idx + 1].hashCode());
+                    Node node = editable(edit);
+                    node.slots[idx + 1] = val;
+                    return node;
+                }
+
+                int curHash = curKey.hashCode();
+                change.hashDelta = hash ^ val.hashCode();
+
+                Node sub = mergeTwo(
+                    edit,
+                    curKey, slots[idx + 1], curHash,
+                    key, val, hash,
+                    shift + BITS,
+                    (curHash ^ slots[idx + 1].hashCode()) + change.hashDelta);
+
+                change.modified = true;
+                return copyAndMigrateToNode(edit, bit, idx, sub);
+            }
+
+            if ((nodeMap & bit) != 0)
+            {
+                Node sub = nodeAt(bit);
+                Node newSub = sub.assoc(edit, key, val, hash, shift + BITS, change);
+                return newSub == sub ? this : copyAndSetNode(edit, bit, newSub);
+            }
+
+            change.modified = true;
+            change.hashDelta = hash ^ val.hashCode();
+            return copyAndInsertValue(edit, bit, key, val);
+        }
+
+        private Node doDissoc(@Nullable Object edit, Object key, int hash, int shift, Change change)
+        {
+            if (shift >= HASH_BITS)
+            {
+                return collisionDissoc(edit, key, hash, change);
+            }
+
+            int bit = bitpos(hash, shift);
+
+            if ((dataMap & bit) != 0)
+            {
+                int idx = 2 * Integer.bitCount(dataMap & (bit - 1));
+
+                if (!key.equals(slots[idx]))
+                {
+                    return this;
+                }
+
+                change.modified = true;
+                change.oldValue = slots[idx + 1];
+                change.hashDelta = -(hash ^ slots[idx + 1].hashCode());
+
+                if (shift > 0 && nodeMap == 0 && slots.length == 4)
+                {
+                    // Only one pair will be left; re-home it at the root level bitmap
+                    // so our parent can inline it (or use it as the new root).
+                    int keep = idx == 0 ? 2 : 0;
+                    return new Node(edit, bitpos(hash, 0), 0, new Object[] { slots[keep], slots[keep + 1] }, 0);
+                }
+
+                return copyAndRemoveValue(edit, bit, idx);
+            }
+
+            if ((nodeMap & bit) != 0)
+            {
+                Node sub = nodeAt(bit);
+                Node newSub = sub.dissoc(edit, key, hash, shift + BITS, change);
+
+                if (!change.modified)
+                {
+                    return this;
+                }
+
+                if (newSub.hasSinglePayload())
+                {
+                    if (slots.length == 1)
+                    {
+                        // We'd be left with just that one pair, so pass it further up.
+                        return newSub;
+                    }
+
+                    return copyAndMigrateToInline(edit, bit, newSub);
+                }
+
+                return newSub == sub ? this : copyAndSetNode(edit, bit, newSub);
+            }
+
+            return this;
+        }
+
+        ////////////////////////////////////////
+        // COLLISIONS:
+
+        int collisionIndex(Object key)
+        {
+            for (int i = 0; i < slots.length; i += 2)
+            {
+                if (key.equals(slots[i]))
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        Node collisionAssoc(@Nullable Object edit, Object key, Object val, int hash, Change change)
+        {
+            int idx = collisionIndex(key);
+
+            if (idx >= 0)
+            {
+                change.oldValue = slots[idx + 1];
+
+                if (val.equals(slots[idx + 1]))
+                {
+                    return this;
+                }
+
+                change.modified = true;
+                change.hashDelta = (hash ^ val.hashCode()) - (hash ^ slots[idx + 1].hashCode());
+                Node node = editable(edit);
+                node.slots[idx + 1] = val;
+                return node;
+            }
+
+            Object[] newSlots = new Object[slots.length + 2];
+            System.arraycopy(slots, 0, newSlots, 0, slots.length);
+            newSlots[slots.length] = key;
+            newSlots[slots.length + 1] = val;
+
+            change.modified = true;
+            change.hashDelta = hash ^ val.hashCode();
+            return withSlots(edit, 0, 0, newSlots);
+        }
+
+        Node collisionDissoc(@Nullable Object edit, Object key, int hash, Change change)
+        {
+            int idx = collisionIndex(key);
+
+            if (idx < 0)
+            {
+                return this;
+            }
+
+            change.modified = true;
+            change.oldValue = slots[idx + 1];
+            change.hashDelta = -(hash ^ slots[idx + 1].hashCode());
+
+            if (slots.length == 4)
+            {
+                int keep = idx == 0 ? 2 : 0;
+                return new Node(edit, bitpos(hash, 0), 0, new Object[] { slots[keep], slots[keep + 1] }, 0);
+            }
+
+            Object[] newSlots = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, newSlots, 0, idx);
+            System.arraycopy(slots, idx + 2, newSlots, idx, slots.length - idx - 2);
+            return withSlots(edit, 0, 0, newSlots);
+        }
+
+        ////////////////////////////////////////
+        // COPYING:
+
+        /**
+         * Returns this node if the given transient owns it, otherwise a copy that it owns.
+         */
+        Node editable(@Nullable Object edit)
+        {
+            return edit != null && this.edit == edit ? this : new Node(edit, dataMap, nodeMap, slots.clone(), hash);
+        }
+
+        /**
+         * Updates this node in place if the given transient owns it, otherwise makes a new one.
+         */
+        Node withSlots(@Nullable Object edit, int newDataMap, int newNodeMap, Object[] newSlots)
+        {
+            if (edit == null || this.edit != edit)
+            {
+                return new Node(edit, newDataMap, newNodeMap, newSlots, hash);
+            }
+
+            dataMap = newDataMap;
+            nodeMap = newNodeMap;
+            slots = newSlots;
+            return this;
+        }
+
+        /**
+         * {@code pairHash} is the two entries' combined hash, which every node made here holds.
+         */
+        static Node mergeTwo(
+            @Nullable Object edit,
+            Object key0, Object val0, int hash0,
+            Object key1, Object val1, int hash1,
+            int shift,
+            int pairHash)
+        {
+            if (shift >= HASH_BITS)
+            {
+                return new Node(edit, 0, 0, new Object[] { key0, val0, key1, val1 }, pairHash);
+            }
+
+            int mask0 = mask(hash0, shift);
+            int mask1 = mask(hash1, shift);
+
+            if (mask0 != mask1)
+            {
+                int dataMap = (1 << mask0) | (1 << mask1);
+
+                return mask0 < mask1
+                    ? new Node(edit, dataMap, 0, new Object[] { key0, val0, key1, val1 }, pairHash)
+                    : new Node(edit, dataMap, 0, new Object[] { key1, val1, key0, val0 }, pairHash);
+            }
+
+            Node sub = mergeTwo(edit, key0, val0, hash0, key1, val1, hash1, shift + BITS, pairHash);
+            return new Node(edit, 0, 1 << mask0, new Object[] { sub }, pairHash);
+        }
+
+        Node copyAndSetNode(@Nullable Object edit, int bit, Node newSub)
+        {
+            Node node = editable(edit);
+            node.slots[nodeIndex(bit)] = newSub;
+            return node;
+        }
+
+        Node copyAndInsertValue(@Nullable Object edit, int bit, Object key, Object val)
+        {
+            int idx = 2 * Integer.bitCount(dataMap & (bit - 1));
+            Object[] newSlots = new Object[slots.length + 2];
+
+            System.arraycopy(slots, 0, newSlots, 0, idx);
+            newSlots[idx] = key;
+            newSlots[idx + 1] = val;
+            System.arraycopy(slots, idx, newSlots, idx + 2, slots.length - idx);
+
+            return withSlots(edit, dataMap | bit, nodeMap, newSlots);
+        }
+
+        Node copyAndRemoveValue(@Nullable Object edit, int bit, int idx)
+        {
+            Object[] newSlots = new Object[slots.length - 2];
+
+            System.arraycopy(slots, 0, newSlots, 0, idx);
+            System.arraycopy(slots, idx + 2, newSlots, idx, slots.length - idx - 2);
+
+            return withSlots(edit, dataMap ^ bit, nodeMap, newSlots);
+        }
+
+        /**
+         * Replaces the inline pair at {@code idx} with a sub-node.
+         */
+        Node copyAndMigrateToNode(@Nullable Object edit, int bit, int idx, Node sub)
+        {
+            int oldNodeIdx = nodeIndex(bit);
+            int newNodeIdx = oldNodeIdx - 2;
+            Object[] newSlots = new Object[slots.length - 1];
+
+            System.arraycopy(slots, 0, newSlots, 0, idx);
+            System.arraycopy(slots, idx + 2, newSlots, idx, newNodeIdx - idx);
+            newSlots[newNodeIdx] = sub;
+            System.arraycopy(slots, oldNodeIdx, newSlots, newNodeIdx + 1, slots.length - oldNodeIdx);
+
+            return withSlots(edit, dataMap ^ bit, nodeMap | bit, newSlots);
+        }
+
+        /**
+         * Replaces a sub-node with the single pair it holds.
+         */
+        Node copyAndMigrateToInline(@Nullable Object edit, int bit, Node sub)
+        {
+            int oldNodeIdx = nodeIndex(bit);
+            int newIdx = 2 * Integer.bitCount(dataMap & (bit - 1));
+            Object[] newSlots = new Object[slots.length + 1];
+
+            System.arraycopy(slots, 0, newSlots, 0, newIdx);
+            newSlots[newIdx] = sub.slots[0];
+            newSlots[newIdx + 1] = sub.slots[1];
+            System.arraycopy(slots, newIdx, newSlots, newIdx + 2, oldNodeIdx - newIdx);
+            System.arraycopy(slots, oldNodeIdx + 1, newSlots, oldNodeIdx + 2, slots.length - oldNodeIdx - 1);
+
+            return withSlots(edit, dataMap | bit, nodeMap ^ bit, newSlots);
+        }
+    }
+
+    ////////////////////////////////////////
+    // ITERATION:
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>>
+    {
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+
+        @Nullable private Node node;
+        private int pos;
+        private int end;
+
+        EntryIterator(Node root)
+        {
+            pending.push(root);
+            advance();
+        }
+
+        private void advance()
+        {
+            while (pos >= end && !pending.isEmpty())
+            {
+                node = pending.pop();
+                pos = 0;
+                end = 2 * node.payloadArity();
+
+                for (int i = end; i < node.slots.length; i++)
+                {
+                    pending.push((Node) node.slots[i]);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return pos < end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<K, V> entry = Maps.immutableEntry((K) node.slots[pos], (V) node.slots[pos + 1]);
+            pos += 2;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An immutable hash set backed by a {@link PersistentHashMap}, so {@link #with(Object)} and
+ * {@link #without(Object)} are O(log32 n) path copies that share the rest of the trie.
+ *
+ * The set's {@link Set#hashCode()} is kept up to date by every edit, so it's O(1) - cheap enough to
+ * use these sets as values in other persistent collections, which hash their values as they go.
+ *
+ * Like Guava's immutable collections, null elements are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentHashSet<E> extends AbstractSet<E>
+{
+    private static final PersistentHashSet<Object> EMPTY = new PersistentHashSet<>(PersistentHashMap.empty(), 0);
+
+    private final PersistentHashMap<E, Boolean> map;
+    private final int hash;
+
+    private PersistentHashSet(PersistentHashMap<E, Boolean> map, int hash)
+    {
+        this.map = map;
+        this.hash = hash;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentHashSet<E> empty()
+    {
+        return (PersistentHashSet<E>) EMPTY;
+    }
+
+    @Nonnull
+    @SafeVarargs
+    public static <E> PersistentHashSet<E> of(E... elements)
+    {
+        return copyOf(Arrays.asList(elements));
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentHashSet<E> copyOf(Iterable<? extends E> elements)
+    {
+        if (elements instanceof PersistentHashSet)
+        {
+            return (PersistentHashSet<E>) elements;
+        }
+
+        PersistentHashMap.Transient<E, Boolean> map = PersistentHashMap.<E, Boolean>empty().asTransient();
+        int hash = 0;
+
+        for (E element : elements)
+        {
+            if (map.put(element, Boolean.TRUE) == null)
+            {
+                hash += element.hashCode();
+            }
+        }
+
+        return new PersistentHashSet<>(map.persistent(), hash);
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Returns this same instance if {@code element} is already present.
+     */
+    @Nonnull
+    public PersistentHashSet<E> with(E element)
+    {
+        PersistentHashMap<E, Boolean> newMap = map.assoc(checkNotNull(element), Boolean.TRUE);
+        return newMap == map ? this : new PersistentHashSet<>(newMap, hash + element.hashCode());
+    }
+
+    /**
+     * Returns this same instance if {@code element} isn't present.
+     */
+    @Nonnull
+    public PersistentHashSet<E> without(Object element)
+    {
+        PersistentHashMap<E, Boolean> newMap = map.dissoc(checkNotNull(element));
+
+        if (newMap == map)
+        {
+            return this;
+        }
+
+        return newMap.isEmpty() ? empty() : new PersistentHashSet<>(newMap, hash - element.hashCode());
+    }
+
+    ////////////////////////////////////////
+    // SET:
+
+    @Override
+    public int size()
+    {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element)
+    {
+        return map.containsKey(element);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<E> iterator()
+    {
+        return map.keySet().iterator();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    /**
+     * Against another {@code PersistentHashSet}, compares the two tries directly.
+     */
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj instanceof PersistentHashSet)
+        {
+            return map.equals(((PersistentHashSet<?>) obj).map);
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    @Deprecated
+    public boolean add(E element)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean remove(Object element)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean addAll(Collection<? extends E> elements)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean removeAll(Collection<?> elements)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
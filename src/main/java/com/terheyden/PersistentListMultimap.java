@@ -0,0 +1,159 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * An immutable list multimap: a {@link PersistentHashMap} from each key to a {@link PersistentVector}
+ * of its values, in the order they were added. {@link #assoc(Object, Object)} and
+ * {@link #dissocAll(Object)} are O(log32 n) path copies that share everything else with the version
+ * they came from; {@link #dissoc(Object, Object)} also scans that key's values for the one to drop.
+ *
+ * The total size is kept alongside, and each key's count is its vector's own size, so both are O(1).
+ * {@link #asMap()} is the backing map itself. Key order is unspecified, and like Guava's
+ * immutable collections, null keys and values are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentListMultimap<K, V>
+    extends AbstractPersistentMultimap<K, V, PersistentVector<V>>
+    implements ListMultimap<K, V>
+{
+    private static final PersistentListMultimap<Object, Object> EMPTY =
+        new PersistentListMultimap<>(PersistentHashMap.empty(), 0);
+
+    private PersistentListMultimap(PersistentHashMap<K, PersistentVector<V>> map, int size)
+    {
+        super(map, size);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentListMultimap<K, V> empty()
+    {
+        return (PersistentListMultimap<K, V>) EMPTY;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentListMultimap<K, V> copyOf(Multimap<? extends K, ? extends V> sourceMap)
+    {
+        if (sourceMap instanceof PersistentListMultimap)
+        {
+            return (PersistentListMultimap<K, V>) sourceMap;
+        }
+
+        return fromEntries(sourceMap.entries());
+    }
+
+    /**
+     * Builds the whole key trie in place, then freezes it.
+     */
+    @Nonnull
+    static <K, V> PersistentListMultimap<K, V> fromEntries(Iterable<? extends Map.Entry<? extends K, ? extends V>> entries)
+    {
+        PersistentHashMap.Transient<K, PersistentVector<V>> map =
+            PersistentHashMap.<K, PersistentVector<V>>empty().asTransient();
+        int size = 0;
+
+        for (Map.Entry<? extends K, ? extends V> entry : entries)
+        {
+            PersistentVector<V> values = map.get(entry.getKey());
+            map.put(entry.getKey(), (values == null ? PersistentVector.<V>empty() : values).append(entry.getValue()));
+            size++;
+        }
+
+        return new PersistentListMultimap<>(map.persistent(), size);
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Adds {@code value} after the key's other values.
+     */
+    @Nonnull
+    public PersistentListMultimap<K, V> assoc(K key, V value)
+    {
+        checkNotNull(key);
+        checkNotNull(value);
+
+        PersistentVector<V> values = map.get(key);
+        PersistentVector<V> newValues = (values == null ? PersistentVector.<V>empty() : values).append(value);
+
+        return new PersistentListMultimap<>(map.assoc(key, newValues), size + 1);
+    }
+
+    /**
+     * Removes the first occurrence of the entry, like {@link ListMultimap#remove(Object, Object)}.
+     * Returns this same instance if it isn't present.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public PersistentListMultimap<K, V> dissoc(Object key, Object value)
+    {
+        checkNotNull(value);
+
+        PersistentVector<V> values = map.get(checkNotNull(key));
+        int index = values == null ? -1 : values.indexOf(value);
+
+        if (index < 0)
+        {
+            return this;
+        }
+
+        if (values.size() == 1)
+        {
+            return new PersistentListMultimap<>(map.dissoc(key), size - 1);
+        }
+
+        PersistentVector<V> newValues = values.subList(0, index).concat(values.subList(index + 1, values.size()));
+        return new PersistentListMultimap<>(map.assoc((K) key, newValues), size - 1);
+    }
+
+    /**
+     * Removes every value for {@code key}. Returns this same instance if it has none.
+     */
+    @Nonnull
+    public PersistentListMultimap<K, V> dissocAll(Object key)
+    {
+        PersistentVector<V> values = map.get(checkNotNull(key));
+        return values == null ? this : new PersistentListMultimap<>(map.dissoc(key), size - values.size());
+    }
+
+    ////////////////////////////////////////
+    // LISTMULTIMAP:
+
+    /**
+     * The key's values themselves - O(log32 n), no copy.
+     */
+    @Nonnull
+    @Override
+    public PersistentVector<V> get(@Nullable K key)
+    {
+        PersistentVector<V> values = map.get(key);
+        return values == null ? PersistentVector.empty() : values;
+    }
+
+    @Override
+    @Deprecated
+    public List<V> removeAll(@Nullable Object key)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public List<V> replaceValues(K key, Iterable<? extends V> values)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
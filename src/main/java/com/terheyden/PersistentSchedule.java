@@ -0,0 +1,275 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * An immutable timeline of items, each scheduled at an {@link Instant}: the ledger from the README,
+ * without rebuilding a sorted map and a list on every insert.
+ * <pre>
+ *   PersistentSchedule&lt;LedgerItem&gt; ledger = PersistentSchedule.&lt;LedgerItem&gt;empty()
+ *       .schedule(hourAhead, item1)
+ *       .schedule(hourAhead, item2);
+ *   ...
+ *   PersistentSchedule.Poll&lt;LedgerItem&gt; poll = ledger.pollDue(Instant.now());
+ *   poll.due().forEach(LedgerItem::fire);
+ *   ledger = poll.remaining();
+ * </pre>
+ *
+ * Items at the same instant share a bucket - a {@link PersistentVector}, in the order they were
+ * scheduled - and the buckets live in a {@link PersistentSortedMap}. So {@link #schedule} is O(log n)
+ * in the number of distinct instants, and {@link #pollDue} and {@link #between} are O(log n) splits
+ * plus one pass over the buckets they hand back, to count their items. Every version shares all but
+ * those paths with the one it came from, and being immutable, any version can be read from any thread.
+ *
+ * Iteration is in time order, then scheduling order. Like Guava's immutable collections, null items
+ * are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentSchedule<T> implements Iterable<T>
+{
+    private static final PersistentSchedule<Object> EMPTY =
+        new PersistentSchedule<>(PersistentSortedMap.naturalOrder(), 0);
+
+    private final PersistentSortedMap<Instant, PersistentVector<T>> timeline;
+    private final int size;
+
+    private PersistentSchedule(PersistentSortedMap<Instant, PersistentVector<T>> timeline, int size)
+    {
+        this.timeline = timeline;
+        this.size = size;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentSchedule<T> empty()
+    {
+        return (PersistentSchedule<T>) EMPTY;
+    }
+
+    /**
+     * The items are taken in each bucket's order.
+     */
+    @Nonnull
+    public static <T> PersistentSchedule<T> copyOf(Map<Instant, ? extends Iterable<? extends T>> timeline)
+    {
+        PersistentSchedule<T> schedule = empty();
+
+        for (Map.Entry<Instant, ? extends Iterable<? extends T>> bucket : timeline.entrySet())
+        {
+            for (T item : bucket.getValue())
+            {
+                schedule = schedule.schedule(bucket.getKey(), item);
+            }
+        }
+
+        return schedule;
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Adds {@code item} at {@code when}, after any items already there. O(log n).
+     */
+    @Nonnull
+    public PersistentSchedule<T> schedule(Instant when, T item)
+    {
+        checkNotNull(when);
+        checkNotNull(item);
+
+        return new PersistentSchedule<>(Immutables.addToSortedMapList(timeline, when, item), size + 1);
+    }
+
+    /**
+     * Removes the first occurrence of {@code item} at {@code when}. O(log n) plus the size of that bucket.
+     * Returns this same instance if it isn't there.
+     */
+    @Nonnull
+    public PersistentSchedule<T> unschedule(Instant when, T item)
+    {
+        checkNotNull(item);
+
+        PersistentVector<T> bucket = timeline.get(checkNotNull(when));
+        int index = bucket == null ? -1 : bucket.indexOf(item);
+
+        if (index < 0)
+        {
+            return this;
+        }
+
+        if (bucket.size() == 1)
+        {
+            return new PersistentSchedule<>(timeline.dissoc(when), size - 1);
+        }
+
+        PersistentVector<T> newBucket = bucket.subList(0, index).concat(bucket.subList(index + 1, bucket.size()));
+        return new PersistentSchedule<>(timeline.assoc(when, newBucket), size - 1);
+    }
+
+    /**
+     * Splits off everything due by {@code now}, inclusive. Returns this same instance as the
+     * remainder if nothing is due.
+     */
+    @Nonnull
+    public Poll<T> pollDue(Instant now)
+    {
+        checkNotNull(now);
+
+        if (isEmpty() || timeline.firstKey().isAfter(now))
+        {
+            return new Poll<>(empty(), this);
+        }
+
+        PersistentSortedMap.Split<Instant, PersistentVector<T>> split = timeline.split(now);
+        PersistentSortedMap<Instant, PersistentVector<T>> due = split.match() == null
+            ? split.lower()
+            : split.lower().assoc(now, split.match().getValue());
+
+        PersistentSchedule<T> dueSchedule = counted(due);
+        return new Poll<>(dueSchedule, new PersistentSchedule<>(split.higher(), size - dueSchedule.size));
+    }
+
+    /**
+     * The result of {@link #pollDue(Instant)}.
+     */
+    public static final class Poll<T>
+    {
+        private final PersistentSchedule<T> due;
+        private final PersistentSchedule<T> remaining;
+
+        private Poll(PersistentSchedule<T> due, PersistentSchedule<T> remaining)
+        {
+            this.due = due;
+            this.remaining = remaining;
+        }
+
+        /**
+         * Everything scheduled at or before the poll time, in time order.
+         */
+        @Nonnull
+        public PersistentSchedule<T> due()
+        {
+            return due;
+        }
+
+        /**
+         * Everything scheduled after the poll time.
+         */
+        @Nonnull
+        public PersistentSchedule<T> remaining()
+        {
+            return remaining;
+        }
+    }
+
+    ////////////////////////////////////////
+    // QUERIES:
+
+    /**
+     * Everything scheduled from {@code from}, inclusive, to {@code to}, exclusive.
+     */
+    @Nonnull
+    public PersistentSchedule<T> between(Instant from, Instant to)
+    {
+        checkArgument(!to.isBefore(from), "%s is before %s", to, from);
+        return counted(timeline.subMap(from, to));
+    }
+
+    /**
+     * The items scheduled at exactly {@code when}, in the order they were scheduled.
+     */
+    @Nonnull
+    public PersistentVector<T> itemsAt(Instant when)
+    {
+        PersistentVector<T> bucket = timeline.get(checkNotNull(when));
+        return bucket == null ? PersistentVector.empty() : bucket;
+    }
+
+    /**
+     * When the earliest item is due, or null if nothing is scheduled.
+     */
+    @Nullable
+    public Instant nextTime()
+    {
+        return isEmpty() ? null : timeline.firstKey();
+    }
+
+    /**
+     * When the latest item is due, or null if nothing is scheduled.
+     */
+    @Nullable
+    public Instant lastTime()
+    {
+        return isEmpty() ? null : timeline.lastKey();
+    }
+
+    /**
+     * The number of items. O(1).
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * The buckets behind this schedule, keyed by time.
+     */
+    @Nonnull
+    public PersistentSortedMap<Instant, PersistentVector<T>> asSortedMap()
+    {
+        return timeline;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<T> iterator()
+    {
+        return Iterators.concat(Iterators.transform(timeline.values().iterator(), PersistentVector::iterator));
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        return obj instanceof PersistentSchedule && timeline.equals(((PersistentSchedule<?>) obj).timeline);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return timeline.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return timeline.toString();
+    }
+
+    private static <T> PersistentSchedule<T> counted(PersistentSortedMap<Instant, PersistentVector<T>> timeline)
+    {
+        int size = 0;
+
+        for (PersistentVector<T> bucket : timeline.values())
+        {
+            size += bucket.size();
+        }
+
+        return new PersistentSchedule<>(timeline, size);
+    }
+}
@@ -0,0 +1,190 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * An immutable set multimap: a {@link PersistentHashMap} from each key to a {@link PersistentHashSet}
+ * of its values. {@link #assoc(Object, Object)}, {@link #dissoc(Object, Object)} and
+ * {@link #dissocAll(Object)} each copy one path through the key trie, plus one through that key's
+ * value set, so they're O(log32 n) and share everything else with the version they came from.
+ *
+ * The total size is kept alongside, and each key's count is its value set's own size, so both are O(1).
+ * {@link #asMap()} is the backing map itself. Iteration order is unspecified, and like Guava's
+ * immutable collections, null keys and values are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentSetMultimap<K, V>
+    extends AbstractPersistentMultimap<K, V, PersistentHashSet<V>>
+    implements SetMultimap<K, V>
+{
+    private static final PersistentSetMultimap<Object, Object> EMPTY =
+        new PersistentSetMultimap<>(PersistentHashMap.empty(), 0);
+
+    private PersistentSetMultimap(PersistentHashMap<K, PersistentHashSet<V>> map, int size)
+    {
+        super(map, size);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentSetMultimap<K, V> empty()
+    {
+        return (PersistentSetMultimap<K, V>) EMPTY;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentSetMultimap<K, V> copyOf(Multimap<? extends K, ? extends V> sourceMap)
+    {
+        if (sourceMap instanceof PersistentSetMultimap)
+        {
+            return (PersistentSetMultimap<K, V>) sourceMap;
+        }
+
+        return fromEntries(sourceMap.entries());
+    }
+
+    /**
+     * Builds the whole key trie in place, then freezes it. Duplicate entries are dropped.
+     */
+    @Nonnull
+    static <K, V> PersistentSetMultimap<K, V> fromEntries(Iterable<? extends Map.Entry<? extends K, ? extends V>> entries)
+    {
+        PersistentHashMap.Transient<K, PersistentHashSet<V>> map =
+            PersistentHashMap.<K, PersistentHashSet<V>>empty().asTransient();
+        int size = 0;
+
+        for (Map.Entry<? extends K, ? extends V> entry : entries)
+        {
+            PersistentHashSet<V> values = map.get(entry.getKey());
+            PersistentHashSet<V> newValues = values == null
+                ? PersistentHashSet.of(entry.getValue())
+                : values.with(entry.getValue());
+
+            if (newValues != values)
+            {
+                map.put(entry.getKey(), newValues);
+                size++;
+            }
+        }
+
+        return new PersistentSetMultimap<>(map.persistent(), size);
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Returns this same instance if the entry is already present.
+     */
+    @Nonnull
+    public PersistentSetMultimap<K, V> assoc(K key, V value)
+    {
+        checkNotNull(key);
+        checkNotNull(value);
+
+        PersistentHashSet<V> values = map.get(key);
+        PersistentHashSet<V> newValues = values == null ? PersistentHashSet.of(value) : values.with(value);
+
+        return newValues == values ? this : new PersistentSetMultimap<>(map.assoc(key, newValues), size + 1);
+    }
+
+    /**
+     * Returns this same instance if the entry isn't present.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public PersistentSetMultimap<K, V> dissoc(Object key, Object value)
+    {
+        checkNotNull(value);
+
+        PersistentHashSet<V> values = map.get(checkNotNull(key));
+        PersistentHashSet<V> newValues = values == null ? null : values.without(value);
+
+        if (newValues == values)
+        {
+            return this;
+        }
+
+        return new PersistentSetMultimap<>(
+            newValues.isEmpty() ? map.dissoc(key) : map.assoc((K) key, newValues),
+            size - 1);
+    }
+
+    /**
+     * Removes every value for {@code key}. Returns this same instance if it has none.
+     */
+    @Nonnull
+    public PersistentSetMultimap<K, V> dissocAll(Object key)
+    {
+        PersistentHashSet<V> values = map.get(checkNotNull(key));
+        return values == null ? this : new PersistentSetMultimap<>(map.dissoc(key), size - values.size());
+    }
+
+    ////////////////////////////////////////
+    // SETMULTIMAP:
+
+    /**
+     * The key's value set itself - O(log32 n), no copy.
+     */
+    @Nonnull
+    @Override
+    public PersistentHashSet<V> get(@Nullable K key)
+    {
+        PersistentHashSet<V> values = map.get(key);
+        return values == null ? PersistentHashSet.empty() : values;
+    }
+
+    @Nonnull
+    @Override
+    public Set<Map.Entry<K, V>> entries()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return entryIterator();
+            }
+
+            @Override
+            public boolean contains(@Nullable Object obj)
+            {
+                return obj instanceof Map.Entry
+                    && containsEntry(((Map.Entry<?, ?>) obj).getKey(), ((Map.Entry<?, ?>) obj).getValue());
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    @Deprecated
+    public Set<V> removeAll(@Nullable Object key)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public Set<V> replaceValues(K key, Iterable<? extends V> values)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,1108 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * An immutable sorted map backed by a persistent AVL tree.
+ *
+ * Every operation is built on one primitive, {@code join(left, entry, right)}, which glues
+ * two trees and a middle entry together in O(|height difference|). That makes
+ * {@link #assoc(Object, Object)}, {@link #dissoc(Object)}, {@link #split(Object)},
+ * {@link #join(PersistentSortedMap)} and the {@code subMap} / {@code headMap} / {@code tailMap}
+ * slices all O(log n) path copies that share the untouched subtrees. Nodes also track their
+ * subtree size, so {@link #size()} of a slice is O(1), and their subtree's {@link Map#hashCode()},
+ * so {@link #hashCode()} is O(1) and {@link #equals(Object)} between two of these maps can skip
+ * shared subtrees and reject mismatched ones without visiting their entries.
+ *
+ * Like Guava's immutable collections, null keys and values are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentSortedMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V>
+{
+    private static final PersistentSortedMap<Comparable, Object> NATURAL_EMPTY =
+        new PersistentSortedMap<>(Ordering.natural(), null);
+
+    private final Comparator<? super K> comparator;
+    @Nullable private final Node<K, V> root;
+
+    private PersistentSortedMap(Comparator<? super K> comparator, @Nullable Node<K, V> root)
+    {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<?>, V> PersistentSortedMap<K, V> naturalOrder()
+    {
+        return (PersistentSortedMap<K, V>) (PersistentSortedMap) NATURAL_EMPTY;
+    }
+
+    @Nonnull
+    public static <K, V> PersistentSortedMap<K, V> orderedBy(Comparator<? super K> comparator)
+    {
+        return new PersistentSortedMap<>(checkNotNull(comparator), null);
+    }
+
+    /**
+     * Copies a map into a natural-order map in O(n), or O(n log n) if it isn't already sorted that way.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<?>, V> PersistentSortedMap<K, V> copyOf(Map<? extends K, ? extends V> sourceMap)
+    {
+        return copyOf(sourceMap, (Comparator<? super K>) Ordering.natural());
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentSortedMap<K, V> copyOf(
+        Map<? extends K, ? extends V> sourceMap,
+        Comparator<? super K> comparator)
+    {
+        if (sourceMap instanceof PersistentSortedMap
+            && comparator.equals(((PersistentSortedMap) sourceMap).comparator))
+        {
+            return (PersistentSortedMap<K, V>) sourceMap;
+        }
+
+        Map.Entry<K, V>[] entries = sourceMap.entrySet().toArray(new Map.Entry[0]);
+
+        if (!hasSameOrder(sourceMap, comparator))
+        {
+            Arrays.sort(entries, (e1, e2) -> comparator.compare(e1.getKey(), e2.getKey()));
+        }
+
+        for (int i = 1; i < entries.length; i++)
+        {
+            checkArgument(
+                comparator.compare(entries[i - 1].getKey(), entries[i].getKey()) != 0,
+                "Duplicate keys: %s and %s", entries[i - 1].getKey(), entries[i].getKey());
+        }
+
+        return new PersistentSortedMap<>(comparator, fromSorted(entries, 0, entries.length));
+    }
+
+    private static boolean hasSameOrder(Map<?, ?> sourceMap, Comparator<?> comparator)
+    {
+        if (!(sourceMap instanceof SortedMap))
+        {
+            return false;
+        }
+
+        Comparator<?> sourceOrder = ((SortedMap<?, ?>) sourceMap).comparator();
+
+        return sourceOrder == null
+            ? comparator.equals(Ordering.natural())
+            : sourceOrder.equals(comparator);
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Returns a map that also maps {@code key} to {@code val}. O(log n).
+     * Returns this same instance if the key is already mapped to an equal value.
+     */
+    @Nonnull
+    public PersistentSortedMap<K, V> assoc(K key, V val)
+    {
+        checkNotNull(key);
+        checkNotNull(val);
+
+        return withRoot(insert(null, root, key, val, comparator, new Change()));
+    }
+
+    /**
+     * Returns a map without a mapping for {@code key}. O(log n).
+     * Returns this same instance if the key isn't present.
+     */
+    @Nonnull
+    public PersistentSortedMap<K, V> dissoc(K key)
+    {
+        checkNotNull(key);
+
+        return withRoot(delete(null, root, key, comparator, new Change()));
+    }
+
+    /**
+     * Starts a batch of in-place edits on top of this map. O(1).
+     */
+    @Nonnull
+    public Transient<K, V> asTransient()
+    {
+        return new Transient<>(this);
+    }
+
+    /**
+     * Splits this map around {@code key} in O(log n).
+     */
+    @Nonnull
+    public Split<K, V> split(K key)
+    {
+        checkNotNull(key);
+
+        Split<K, V> split = new Split<>();
+        split(root, key, comparator, split);
+
+        split.lowerMap = withRoot(split.lower);
+        split.higherMap = withRoot(split.higher);
+
+        return split;
+    }
+
+    /**
+     * Appends a map whose keys all sort after this map's keys, in O(log n).
+     * The result uses this map's comparator.
+     */
+    @Nonnull
+    public PersistentSortedMap<K, V> join(PersistentSortedMap<K, ? extends V> higher)
+    {
+        if (higher.isEmpty())
+        {
+            return this;
+        }
+
+        if (isEmpty())
+        {
+            return withRoot(cast(higher.root));
+        }
+
+        checkArgument(
+            comparator.compare(lastKey(), higher.firstKey()) < 0,
+            "Keys overlap: %s is not before %s", lastKey(), higher.firstKey());
+
+        return withRoot(join2(null, root, cast(higher.root)));
+    }
+
+    /**
+     * The result of {@link #split(Object)}: the mappings before, at, and after the split key.
+     */
+    public static final class Split<K, V>
+    {
+        @Nullable private Node<K, V> lower;
+        @Nullable private Node<K, V> match;
+        @Nullable private Node<K, V> higher;
+
+        private PersistentSortedMap<K, V> lowerMap;
+        private PersistentSortedMap<K, V> higherMap;
+
+        private Split()
+        {
+        }
+
+        /**
+         * Everything with a key less than the split key.
+         */
+        @Nonnull
+        public PersistentSortedMap<K, V> lower()
+        {
+            return lowerMap;
+        }
+
+        /**
+         * The mapping for the split key, if there was one.
+         */
+        @Nullable
+        public Map.Entry<K, V> match()
+        {
+            return match == null ? null : Maps.immutableEntry(match.key, match.value);
+        }
+
+        /**
+         * Everything with a key greater than the split key.
+         */
+        @Nonnull
+        public PersistentSortedMap<K, V> higher()
+        {
+            return higherMap;
+        }
+    }
+
+    ////////////////////////////////////////
+    // SORTEDMAP:
+
+    @Override
+    public Comparator<? super K> comparator()
+    {
+        return comparator;
+    }
+
+    @Nonnull
+    @Override
+    public PersistentSortedMap<K, V> subMap(K fromKey, K toKey)
+    {
+        checkArgument(comparator.compare(fromKey, toKey) <= 0, "fromKey (%s) is after toKey (%s)", fromKey, toKey);
+        return tailMap(fromKey).headMap(toKey);
+    }
+
+    @Nonnull
+    @Override
+    public PersistentSortedMap<K, V> headMap(K toKey)
+    {
+        return split(toKey).lower();
+    }
+
+    @Nonnull
+    @Override
+    public PersistentSortedMap<K, V> tailMap(K fromKey)
+    {
+        Split<K, V> split = split(fromKey);
+
+        return split.match == null
+            ? split.higher()
+            : withRoot(join(null, split.match, null, split.match.key, split.match.value, split.higher));
+    }
+
+    @Override
+    public K firstKey()
+    {
+        if (root == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        Node<K, V> node = root;
+
+        while (node.left != null)
+        {
+            node = node.left;
+        }
+
+        return node.key;
+    }
+
+    @Override
+    public K lastKey()
+    {
+        if (root == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        Node<K, V> node = root;
+
+        while (node.right != null)
+        {
+            node = node.right;
+        }
+
+        return node.key;
+    }
+
+    ////////////////////////////////////////
+    // MAP:
+
+    @Override
+    public int size()
+    {
+        return size(root);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return get(key) != null;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(@Nullable Object key)
+    {
+        return key == null ? null : find(root, (K) key, comparator);
+    }
+
+    @Nonnull
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size()
+            {
+                return PersistentSortedMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * O(1): every node keeps its subtree's hash up to date.
+     */
+    @Override
+    public int hashCode()
+    {
+        return hash(root);
+    }
+
+    /**
+     * Against another {@code PersistentSortedMap} with the same comparator, a size or hash mismatch is O(1),
+     * and the two trees are then walked in step, skipping subtrees they share and stopping at the first
+     * pair of subtrees that cover the same positions but have different hashes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (obj instanceof PersistentSortedMap && comparator.equals(((PersistentSortedMap<?, ?>) obj).comparator))
+        {
+            PersistentSortedMap<K, V> other = (PersistentSortedMap<K, V>) obj;
+
+            return size() == other.size()
+                && hashCode() == other.hashCode()
+                && equal(root, other.root, comparator);
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    @Deprecated
+    public V put(K key, V value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public V remove(Object key)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void putAll(Map<? extends K, ? extends V> map)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    ////////////////////////////////////////
+    // TRANSIENT:
+
+    /**
+     * A single-owner mutable session on top of a {@link PersistentSortedMap}.
+     *
+     * The first edit along a path copies its nodes and tags them with this transient's edit
+     * token; later edits rebalance those nodes in place instead of copying them again.
+     * {@link #persistent()} freezes the result in O(1) by retiring the token, after which
+     * this transient can't be used.
+     *
+     * Not thread-safe, and iterators don't survive later edits.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class Transient<K, V> extends AbstractMap<K, V>
+    {
+        private final PersistentSortedMap<K, V> source;
+        private final Comparator<? super K> comparator;
+        private final Change change = new Change();
+
+        @Nullable private Object edit = new Object();
+        @Nullable private Node<K, V> root;
+
+        private Transient(PersistentSortedMap<K, V> source)
+        {
+            this.source = source;
+            this.comparator = source.comparator;
+            this.root = source.root;
+        }
+
+        private Object edit()
+        {
+            if (edit == null)
+            {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+
+            return edit;
+        }
+
+        public Comparator<? super K> comparator()
+        {
+            return comparator;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V put(K key, V val)
+        {
+            Object token = edit();
+            checkNotNull(key);
+            checkNotNull(val);
+
+            root = insert(token, root, key, val, comparator, change.reset());
+            return (V) change.oldValue;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(@Nullable Object key)
+        {
+            Object token = edit();
+
+            if (key == null)
+            {
+                return null;
+            }
+
+            root = delete(token, root, (K) key, comparator, change.reset());
+            return (V) change.oldValue;
+        }
+
+        @Override
+        public void clear()
+        {
+            edit();
+            root = null;
+        }
+
+        @Override
+        public int size()
+        {
+            return PersistentSortedMap.size(root);
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(@Nullable Object key)
+        {
+            return key == null ? null : find(root, (K) key, comparator);
+        }
+
+        @Nonnull
+        @Override
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<K, V>>()
+            {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator()
+                {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size()
+                {
+                    return Transient.this.size();
+                }
+            };
+        }
+
+        /**
+         * Freezes this transient into an immutable map in O(1).
+         * Returns the original map if nothing changed.
+         */
+        @Nonnull
+        public PersistentSortedMap<K, V> persistent()
+        {
+            edit();
+            edit = null;
+            return source.withRoot(root);
+        }
+    }
+
+    ////////////////////////////////////////
+    // TREE:
+
+    private PersistentSortedMap<K, V> withRoot(@Nullable Node<K, V> newRoot)
+    {
+        return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> cast(@Nullable Node<K, ? extends V> node)
+    {
+        return (Node<K, V>) node;
+    }
+
+    /**
+     * Reports what an insert / delete did on the way back up the tree.
+     * Transient edits modify nodes in place, so callers can't just compare node references.
+     */
+    private static final class Change
+    {
+        boolean modified;
+        @Nullable Object oldValue;
+
+        Change reset()
+        {
+            modified = false;
+            oldValue = null;
+            return this;
+        }
+    }
+
+    /**
+     * A tree node. A node created by a {@link Transient} remembers that transient's edit token,
+     * and only that transient may change it in place. Every other node is never modified.
+     */
+    private static final class Node<K, V>
+    {
+        @Nullable final Object edit;
+        final K key;
+        V value;
+        @Nullable Node<K, V> left;
+        @Nullable Node<K, V> right;
+        int height;
+        int size;
+
+        /** {@code key.hashCode() ^ value.hashCode()}, carried over whenever a node is remade for the same entry. */
+        int entryHash;
+
+        /** The sum of the entry hashes in this subtree. */
+        int hash;
+
+        Node(@Nullable Object edit, @Nullable Node<K, V> left, K key, V value, @Nullable Node<K, V> right, int entryHash)
+        {
+            this.edit = edit;
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.entryHash = entryHash;
+            update();
+        }
+
+        void update()
+        {
+            height = Math.max(height(left), height(right)) + 1;
+            size = size(left) + size(right) + 1;
+            hash = hash(left) + hash(right) + entryHash;
+        }
+    }
+
+    private static int height(@Nullable Node<?, ?> node)
+    {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(@Nullable Node<?, ?> node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int hash(@Nullable Node<?, ?> node)
+    {
+        return node == null ? 0 : node.hash;
+    }
+
+    /**
+     * The entry hash for {@code key} and {@code value}, taken from {@code node} if it holds that same entry.
+     */
+    private static int entryHash(@Nullable Node<?, ?> node, Object key, Object value)
+    {
+        return node != null && node.key == key && node.value == value
+            ? node.entryHash
+            : key.hashCode() ^ value.hashCode();
+    }
+
+    /**
+     * Makes a node, reusing {@code reuse} in place if the given transient owns it.
+     */
+    private static <K, V> Node<K, V> make(
+        @Nullable Object edit,
+        @Nullable Node<K, V> reuse,
+        @Nullable Node<K, V> left,
+        K key,
+        V value,
+        @Nullable Node<K, V> right)
+    {
+        int entryHash = entryHash(reuse, key, value);
+
+        if (edit == null || reuse == null || reuse.edit != edit || reuse.key != key)
+        {
+            return new Node<>(edit, left, key, value, right, entryHash);
+        }
+
+        reuse.left = left;
+        reuse.value = value;
+        reuse.right = right;
+        reuse.entryHash = entryHash;
+        reuse.update();
+        return reuse;
+    }
+
+    @Nullable
+    private static <K, V> V find(@Nullable Node<K, V> node, K key, Comparator<? super K> comparator)
+    {
+        while (node != null)
+        {
+            int cmp = comparator.compare(key, node.key);
+
+            if (cmp == 0)
+            {
+                return node.value;
+            }
+
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static <K, V> Node<K, V> fromSorted(Map.Entry<K, V>[] entries, int from, int to)
+    {
+        if (from >= to)
+        {
+            return null;
+        }
+
+        int mid = (from + to) >>> 1;
+        K key = checkNotNull(entries[mid].getKey());
+        V value = checkNotNull(entries[mid].getValue());
+
+        return new Node<>(
+            null,
+            fromSorted(entries, from, mid),
+            key,
+            value,
+            fromSorted(entries, mid + 1, to),
+            key.hashCode() ^ value.hashCode());
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(@Nullable Object edit, Node<K, V> node)
+    {
+        Node<K, V> right = node.right;
+
+        return make(edit, right,
+            make(edit, node, node.left, node.key, node.value, right.left),
+            right.key, right.value, right.right);
+    }
+
+    private static <K, V> Node<K, V> rotateRight(@Nullable Object edit, Node<K, V> node)
+    {
+        Node<K, V> left = node.left;
+
+        return make(edit, left,
+            left.left, left.key, left.value,
+            make(edit, node, left.right, node.key, node.value, node.right));
+    }
+
+    /**
+     * Joins two trees with a middle entry, where every key in {@code left} is less than
+     * {@code key} and every key in {@code right} is greater. {@code reuse}, if given, is the
+     * node the entry came from.
+     */
+    private static <K, V> Node<K, V> join(
+        @Nullable Object edit,
+        @Nullable Node<K, V> reuse,
+        @Nullable Node<K, V> left,
+        K key,
+        V value,
+        @Nullable Node<K, V> right)
+    {
+        if (height(left) > height(right) + 1)
+        {
+            return joinRight(edit, left, key, value, entryHash(reuse, key, value), right);
+        }
+
+        if (height(right) > height(left) + 1)
+        {
+            return joinLeft(edit, left, key, value, entryHash(reuse, key, value), right);
+        }
+
+        return make(edit, reuse, left, key, value, right);
+    }
+
+    private static <K, V> Node<K, V> joinRight(
+        @Nullable Object edit,
+        Node<K, V> left,
+        K key,
+        V value,
+        int entryHash,
+        @Nullable Node<K, V> right)
+    {
+        Node<K, V> spine = left.right;
+
+        if (height(spine) <= height(right) + 1)
+        {
+            Node<K, V> joined = new Node<>(edit, spine, key, value, right, entryHash);
+
+            return height(joined) <= height(left.left) + 1
+                ? make(edit, left, left.left, left.key, left.value, joined)
+                : rotateLeft(edit, make(edit, left, left.left, left.key, left.value, rotateRight(edit, joined)));
+        }
+
+        Node<K, V> joined = joinRight(edit, spine, key, value, entryHash, right);
+        Node<K, V> node = make(edit, left, left.left, left.key, left.value, joined);
+
+        return height(joined) <= height(node.left) + 1 ? node : rotateLeft(edit, node);
+    }
+
+    private static <K, V> Node<K, V> joinLeft(
+        @Nullable Object edit,
+        @Nullable Node<K, V> left,
+        K key,
+        V value,
+        int entryHash,
+        Node<K, V> right)
+    {
+        Node<K, V> spine = right.left;
+
+        if (height(spine) <= height(left) + 1)
+        {
+            Node<K, V> joined = new Node<>(edit, left, key, value, spine, entryHash);
+
+            return height(joined) <= height(right.right) + 1
+                ? make(edit, right, joined, right.key, right.value, right.right)
+                : rotateRight(edit, make(edit, right, rotateLeft(edit, joined), right.key, right.value, right.right));
+        }
+
+        Node<K, V> joined = joinLeft(edit, left, key, value, entryHash, spine);
+        Node<K, V> node = make(edit, right, joined, right.key, right.value, right.right);
+
+        return height(joined) <= height(node.right) + 1 ? node : rotateRight(edit, node);
+    }
+
+    /**
+     * Joins two trees without a middle entry, by borrowing the last entry of {@code left}.
+     */
+    @Nullable
+    private static <K, V> Node<K, V> join2(@Nullable Object edit, @Nullable Node<K, V> left, @Nullable Node<K, V> right)
+    {
+        if (left == null)
+        {
+            return right;
+        }
+
+        if (right == null)
+        {
+            return left;
+        }
+
+        Node<K, V> last = left;
+
+        while (last.right != null)
+        {
+            last = last.right;
+        }
+
+        return join(edit, last, withoutLast(edit, left), last.key, last.value, right);
+    }
+
+    @Nullable
+    private static <K, V> Node<K, V> withoutLast(@Nullable Object edit, Node<K, V> node)
+    {
+        return node.right == null
+            ? node.left
+            : join(edit, node, node.left, node.key, node.value, withoutLast(edit, node.right));
+    }
+
+    private static <K, V> Node<K, V> insert(
+        @Nullable Object edit,
+        @Nullable Node<K, V> node,
+        K key,
+        V value,
+        Comparator<? super K> comparator,
+        Change change)
+    {
+        if (node == null)
+        {
+            change.modified = true;
+            return new Node<>(edit, null, key, value, null, key.hashCode() ^ value.hashCode());
+        }
+
+        int cmp = comparator.compare(key, node.key);
+
+        if (cmp == 0)
+        {
+            change.oldValue = node.value;
+
+            if (value.equals(node.value))
+            {
+                return node;
+            }
+
+            change.modified = true;
+            return make(edit, node, node.left, node.key, value, node.right);
+        }
+
+        if (cmp < 0)
+        {
+            Node<K, V> left = insert(edit, node.left, key, value, comparator, change);
+            return change.modified ? join(edit, node, left, node.key, node.value, node.right) : node;
+        }
+
+        Node<K, V> right = insert(edit, node.right, key, value, comparator, change);
+        return change.modified ? join(edit, node, node.left, node.key, node.value, right) : node;
+    }
+
+    @Nullable
+    private static <K, V> Node<K, V> delete(
+        @Nullable Object edit,
+        @Nullable Node<K, V> node,
+        K key,
+        Comparator<? super K> comparator,
+        Change change)
+    {
+        if (node == null)
+        {
+            return null;
+        }
+
+        int cmp = comparator.compare(key, node.key);
+
+        if (cmp == 0)
+        {
+            change.modified = true;
+            change.oldValue = node.value;
+            return join2(edit, node.left, node.right);
+        }
+
+        if (cmp < 0)
+        {
+            Node<K, V> left = delete(edit, node.left, key, comparator, change);
+            return change.modified ? join(edit, node, left, node.key, node.value, node.right) : node;
+        }
+
+        Node<K, V> right = delete(edit, node.right, key, comparator, change);
+        return change.modified ? join(edit, node, node.left, node.key, node.value, right) : node;
+    }
+
+    private static <K, V> void split(@Nullable Node<K, V> node, K key, Comparator<? super K> comparator, Split<K, V> split)
+    {
+        if (node == null)
+        {
+            split.lower = null;
+            split.match = null;
+            split.higher = null;
+            return;
+        }
+
+        int cmp = comparator.compare(key, node.key);
+
+        if (cmp == 0)
+        {
+            split.lower = node.left;
+            split.match = node;
+            split.higher = node.right;
+        }
+        else if (cmp < 0)
+        {
+            split(node.left, key, comparator, split);
+            split.higher = join(null, node, split.higher, node.key, node.value, node.right);
+        }
+        else
+        {
+            split(node.right, key, comparator, split);
+            split.lower = join(null, node, node.left, node.key, node.value, split.lower);
+        }
+    }
+
+    ////////////////////////////////////////
+    // ITERATION:
+
+    /**
+     * Compares two trees of the same size entry by entry, in order. Both cursors always sit at the same
+     * position, so two subtrees of the same size at the front cover the same entries: if they're the same
+     * node they're skipped, and if their hashes differ the maps can't be equal.
+     */
+    private static <K, V> boolean equal(
+        @Nullable Node<K, V> node,
+        @Nullable Node<K, V> other,
+        Comparator<? super K> comparator)
+    {
+        Cursor<K, V> left = new Cursor<>(node);
+        Cursor<K, V> right = new Cursor<>(other);
+
+        while (left.hasNext())
+        {
+            Node<K, V> a = left.peek();
+            Node<K, V> b = right.peek();
+
+            if (left.atSubtree() && right.atSubtree())
+            {
+                if (a == b)
+                {
+                    left.pop();
+                    right.pop();
+                    continue;
+                }
+
+                if (a.size == b.size && a.hash != b.hash)
+                {
+                    return false;
+                }
+
+                // Open up the bigger subtree until the two line up:
+                if (a.size >= b.size)
+                {
+                    left.expand();
+                }
+
+                if (b.size >= a.size)
+                {
+                    right.expand();
+                }
+            }
+            else if (left.atSubtree())
+            {
+                left.expand();
+            }
+            else if (right.atSubtree())
+            {
+                right.expand();
+            }
+            else
+            {
+                if (a.entryHash != b.entryHash
+                    || comparator.compare(a.key, b.key) != 0
+                    || !a.value.equals(b.value))
+                {
+                    return false;
+                }
+
+                left.pop();
+                right.pop();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * What's left of an in-order walk: whole subtrees still to visit, and single entries whose
+     * left subtree has already been opened up.
+     */
+    private static final class Cursor<K, V>
+    {
+        private final ArrayDeque<Node<K, V>> pending = new ArrayDeque<>();
+        private final ArrayDeque<Boolean> subtree = new ArrayDeque<>();
+
+        Cursor(@Nullable Node<K, V> root)
+        {
+            push(root, true);
+        }
+
+        private void push(@Nullable Node<K, V> node, boolean whole)
+        {
+            if (node != null)
+            {
+                pending.push(node);
+                subtree.push(whole);
+            }
+        }
+
+        boolean hasNext()
+        {
+            return !pending.isEmpty();
+        }
+
+        Node<K, V> peek()
+        {
+            return pending.peek();
+        }
+
+        boolean atSubtree()
+        {
+            return subtree.peek();
+        }
+
+        Node<K, V> pop()
+        {
+            subtree.pop();
+            return pending.pop();
+        }
+
+        void expand()
+        {
+            Node<K, V> node = pop();
+            push(node.right, true);
+            push(node, false);
+            push(node.left, true);
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>>
+    {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+
+        EntryIterator(@Nullable Node<K, V> root)
+        {
+            pushLeft(root);
+        }
+
+        private void pushLeft(@Nullable Node<K, V> node)
+        {
+            while (node != null)
+            {
+                stack.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            if (stack.isEmpty())
+            {
+                throw new NoSuchElementException();
+            }
+
+            Node<K, V> node = stack.pop();
+            pushLeft(node.right);
+            return Maps.immutableEntry(node.key, node.value);
+        }
+    }
+}
@@ -0,0 +1,1167 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An immutable list backed by a relaxed radix balanced (RRB) tree of 32-wide nodes,
+ * plus a tail buffer of up to 32 elements.
+ *
+ * {@link #append(Object)} only touches the tail, and every 32nd append pushes the full tail
+ * into the tree, so appends are amortized O(1). {@link #get(int)} and {@link #assoc(int, Object)}
+ * are O(log32 n). {@link #concat(PersistentVector)} and {@link #subList(int, int)} are O(log n):
+ * they only rebuild the nodes along the seam / cut, which may leave those nodes "relaxed"
+ * (not completely full). Relaxed nodes carry a table of cumulative child sizes so indexing
+ * still works; strict nodes don't need one.
+ *
+ * {@link List#hashCode()} is a polynomial in 31, so the hash of two runs of elements joined
+ * together is {@code hash(a) * 31^|b| + hash(b)}. Every node caches its elements' polynomial and
+ * {@code 31^size}, and the tail's polynomial is kept up to date as it fills, so edits only ever
+ * recombine the cached values along the path they copy: {@link #hashCode()} is O(1), and
+ * {@link #equals(Object)} between two of these vectors rejects a mismatch in O(1), then skips
+ * every subtree the two share or whose cached hashes already differ.
+ *
+ * Like Guava's immutable collections, null elements are not allowed.
+ */
+@ParametersAreNonnullByDefault
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+
+    /** {@code POWERS[n] == 31^n}, for up to a leaf's worth of elements. */
+    private static final int[] POWERS = new int[WIDTH + 1];
+
+    static
+    {
+        POWERS[0] = 1;
+
+        for (int i = 1; i <= WIDTH; i++)
+        {
+            POWERS[i] = POWERS[i - 1] * 31;
+        }
+    }
+
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+    private static final Node EMPTY_NODE = Node.branch(null, EMPTY_ARRAY, null);
+
+    private static final PersistentVector<Object> EMPTY =
+        new PersistentVector<>(0, BITS, EMPTY_NODE, EMPTY_ARRAY, 0);
+
+    private final int size;
+
+    /** The root's level. Leaves are at shift 0, so the root is always a branch. */
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+
+    /** The polynomial hash of the tail's elements. */
+    private final int tailHash;
+
+    private PersistentVector(int size, int shift, Node root, Object[] tail, int tailHash)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.tailHash = tailHash;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty()
+    {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    @Nonnull
+    @SafeVarargs
+    public static <E> PersistentVector<E> of(E... elements)
+    {
+        return PersistentVector.<E>empty().appendAll(Arrays.asList(elements));
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> copyOf(Iterable<? extends E> elements)
+    {
+        if (elements instanceof PersistentVector)
+        {
+            return (PersistentVector<E>) elements;
+        }
+
+        return PersistentVector.<E>empty().appendAll(elements);
+    }
+
+    ////////////////////////////////////////
+    // PERSISTENT OPS:
+
+    /**
+     * Amortized O(1).
+     */
+    @Nonnull
+    public PersistentVector<E> append(E element)
+    {
+        checkNotNull(element);
+
+        if (tail.length < WIDTH)
+        {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail, tailHash * 31 + element.hashCode());
+        }
+
+        Tree tree = pushTail();
+        return new PersistentVector<>(size + 1, tree.shift, tree.root, new Object[] { element }, element.hashCode());
+    }
+
+    /**
+     * O(m) for m new elements - they're packed straight into full leaves.
+     */
+    @Nonnull
+    public PersistentVector<E> appendAll(Iterable<? extends E> elements)
+    {
+        Iterator<? extends E> iter = elements.iterator();
+
+        if (!iter.hasNext())
+        {
+            return this;
+        }
+
+        Object[] buffer = Arrays.copyOf(tail, WIDTH);
+        int bufferLen = tail.length;
+        int bufferHash = tailHash;
+        Node newRoot = root;
+        int newShift = shift;
+        int newSize = size;
+
+        while (iter.hasNext())
+        {
+            if (bufferLen == WIDTH)
+            {
+                Tree tree = pushLeaf(newRoot, newShift, Node.leaf(null, buffer, bufferHash), null);
+                newRoot = tree.root;
+                newShift = tree.shift;
+                buffer = new Object[WIDTH];
+                bufferLen = 0;
+                bufferHash = 0;
+            }
+
+            E element = checkNotNull(iter.next());
+            buffer[bufferLen++] = element;
+            bufferHash = bufferHash * 31 + element.hashCode();
+            newSize++;
+        }
+
+        return new PersistentVector<>(newSize, newShift, newRoot, Arrays.copyOf(buffer, bufferLen), bufferHash);
+    }
+
+    /**
+     * O(log n) - only the nodes along the seam between the two trees are rebuilt.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public PersistentVector<E> concat(PersistentVector<? extends E> other)
+    {
+        if (other.isEmpty())
+        {
+            return this;
+        }
+
+        if (isEmpty())
+        {
+            return (PersistentVector<E>) other;
+        }
+
+        if (other.size <= WIDTH)
+        {
+            return appendAll(other);
+        }
+
+        Tree left = pushTail();
+        Node[] merged = merge(left.root, left.shift, other.root, other.shift);
+        int newShift = Math.max(left.shift, other.shift);
+
+        if (merged.length == 1)
+        {
+            return new PersistentVector<>(size + other.size, newShift, merged[0], other.tail, other.tailHash);
+        }
+
+        newShift += BITS;
+        return new PersistentVector<>(size + other.size, newShift, branch(merged, newShift), other.tail, other.tailHash);
+    }
+
+    /**
+     * Returns a vector with the element at {@code index} replaced. O(log32 n).
+     */
+    @Nonnull
+    public PersistentVector<E> assoc(int index, E element)
+    {
+        checkElementIndex(index, size);
+        checkNotNull(element);
+
+        int treeSize = treeSize();
+
+        if (index >= treeSize)
+        {
+            int pos = index - treeSize;
+            Object[] newTail = tail.clone();
+            newTail[pos] = element;
+            return new PersistentVector<>(size, shift, root, newTail, rehash(tailHash, tail[pos], element, tail.length - 1 - pos));
+        }
+
+        return new PersistentVector<>(size, shift, assoc(null, root, shift, index, element), tail, tailHash);
+    }
+
+    /**
+     * O(log n) - the returned vector shares every node that lies entirely inside the range.
+     */
+    @Nonnull
+    @Override
+    public PersistentVector<E> subList(int fromIndex, int toIndex)
+    {
+        checkPositionIndexes(fromIndex, toIndex, size);
+
+        if (fromIndex == 0 && toIndex == size)
+        {
+            return this;
+        }
+
+        int newSize = toIndex - fromIndex;
+
+        if (newSize <= WIDTH)
+        {
+            Object[] newTail = new Object[newSize];
+
+            for (int i = 0; i < newSize; i++)
+            {
+                newTail[i] = get(fromIndex + i);
+            }
+
+            return new PersistentVector<>(newSize, BITS, EMPTY_NODE, newTail, hash(newTail, 0, newSize));
+        }
+
+        Tree tree = pushTail();
+        int newShift = tree.shift;
+        Node newRoot = drop(take(tree.root, newShift, toIndex), newShift, fromIndex);
+
+        while (newShift > BITS && newRoot.array.length == 1)
+        {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= BITS;
+        }
+
+        return new PersistentVector<>(newSize, newShift, newRoot, EMPTY_ARRAY, 0);
+    }
+
+    ////////////////////////////////////////
+    // LIST:
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index)
+    {
+        checkElementIndex(index, size);
+
+        int treeSize = treeSize();
+
+        if (index >= treeSize)
+        {
+            return (E) tail[index - treeSize];
+        }
+
+        return (E) lookup(root, shift, index);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<E> iterator()
+    {
+        return new Itr();
+    }
+
+    /**
+     * O(1), from the root's and the tail's cached hashes.
+     */
+    @Override
+    public int hashCode()
+    {
+        return (root.power + root.hash) * POWERS[tail.length] + tailHash;
+    }
+
+    /**
+     * Against another {@code PersistentVector}, a size or hash mismatch is O(1), and the two are then
+     * walked in step, skipping subtrees they share and stopping at the first pair of subtrees that
+     * cover the same positions but have different hashes.
+     */
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if (obj instanceof PersistentVector)
+        {
+            PersistentVector<?> other = (PersistentVector<?>) obj;
+            return size == other.size && hashCode() == other.hashCode() && equal(this, other);
+        }
+
+        return super.equals(obj);
+    }
+
+    /**
+     * Starts a batch of in-place edits on top of this vector. O(1).
+     */
+    @Nonnull
+    public Transient<E> asTransient()
+    {
+        return new Transient<>(this);
+    }
+
+    ////////////////////////////////////////
+    // TRANSIENT:
+
+    /**
+     * A single-owner mutable session on top of a {@link PersistentVector}.
+     *
+     * Appends fill a private tail buffer in place, and nodes this transient has already copied
+     * (tagged with its edit token) are updated in place by {@link #set(int, Object)}.
+     * {@link #persistent()} freezes the result in O(1) by retiring the token, after which
+     * this transient can't be used. Removals rebuild the vector in one O(n) pass.
+     *
+     * Not thread-safe.
+     */
+    @ParametersAreNonnullByDefault
+    public static final class Transient<E> extends AbstractList<E> implements RandomAccess
+    {
+        private final PersistentVector<E> source;
+
+        @Nullable private Object edit = new Object();
+        private boolean modified;
+        private int size;
+        private int shift;
+        private Node root;
+        private Object[] tail;
+        private int tailLen;
+        private int tailHash;
+
+        private Transient(PersistentVector<E> source)
+        {
+            this.source = source;
+            this.size = source.size;
+            this.shift = source.shift;
+            this.root = source.root;
+            this.tail = Arrays.copyOf(source.tail, WIDTH);
+            this.tailLen = source.tail.length;
+            this.tailHash = source.tailHash;
+        }
+
+        private Object edit()
+        {
+            if (edit == null)
+            {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+
+            return edit;
+        }
+
+        @Override
+        public boolean add(E element)
+        {
+            Object token = edit();
+            checkNotNull(element);
+
+            if (tailLen == WIDTH)
+            {
+                Tree tree = pushLeaf(root, shift, Node.leaf(token, tail, tailHash), token);
+                root = tree.root;
+                shift = tree.shift;
+                tail = new Object[WIDTH];
+                tailLen = 0;
+                tailHash = 0;
+            }
+
+            tail[tailLen++] = element;
+            tailHash = tailHash * 31 + element.hashCode();
+            size++;
+            modified = true;
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public E set(int index, E element)
+        {
+            Object token = edit();
+            checkNotNull(element);
+
+            E oldElement = get(index);
+            int treeSize = size - tailLen;
+
+            if (index >= treeSize)
+            {
+                int pos = index - treeSize;
+                tailHash = rehash(tailHash, tail[pos], element, tailLen - 1 - pos);
+                tail[pos] = element;
+            }
+            else
+            {
+                root = assoc(token, root, shift, index, element);
+            }
+
+            modified = true;
+            return oldElement;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index)
+        {
+            checkElementIndex(index, size);
+
+            int treeSize = size - tailLen;
+
+            return index >= treeSize
+                ? (E) tail[index - treeSize]
+                : (E) lookup(root, shift, index);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> elements)
+        {
+            Set<?> toRemove = elements instanceof Set ? (Set<?>) elements : new HashSet<>(elements);
+            return removeIf(toRemove::contains);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean removeIf(Predicate<? super E> filter)
+        {
+            edit();
+
+            Object[] kept = stream().filter(filter.negate()).toArray();
+
+            if (kept.length == size)
+            {
+                return false;
+            }
+
+            clear();
+            Collections.addAll(this, (E[]) kept);
+            return true;
+        }
+
+        @Override
+        public void clear()
+        {
+            edit();
+            root = EMPTY_NODE;
+            shift = BITS;
+            size = 0;
+            tail = new Object[WIDTH];
+            tailLen = 0;
+            tailHash = 0;
+            modified = true;
+            modCount++;
+        }
+
+        /**
+         * Freezes this transient into an immutable vector in O(1).
+         * Returns the original vector if nothing changed.
+         */
+        @Nonnull
+        public PersistentVector<E> persistent()
+        {
+            edit();
+            edit = null;
+
+            if (!modified)
+            {
+                return source;
+            }
+
+            return size == 0 ? empty() : new PersistentVector<>(size, shift, root, Arrays.copyOf(tail, tailLen), tailHash);
+        }
+    }
+
+    ////////////////////////////////////////
+    // TREE:
+
+    private static Object lookup(Node root, int shift, int index)
+    {
+        Node node = root;
+
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            int idx = index >>> level;
+
+            if (node.sizes == null)
+            {
+                index -= idx << level;
+            }
+            else
+            {
+                while (node.sizes[idx] <= index)
+                {
+                    idx++;
+                }
+
+                index -= idx == 0 ? 0 : node.sizes[idx - 1];
+            }
+
+            node = (Node) node.array[idx];
+        }
+
+        return node.array[index];
+    }
+
+    private int treeSize()
+    {
+        return size - tail.length;
+    }
+
+    /**
+     * The polynomial hash of {@code array[from..to)}.
+     */
+    private static int hash(Object[] array, int from, int to)
+    {
+        int hash = 0;
+
+        for (int i = from; i < to; i++)
+        {
+            hash = hash * 31 + array[i].hashCode();
+        }
+
+        return hash;
+    }
+
+    /**
+     * {@code hash} with one element replaced, where {@code after} elements follow it.
+     */
+    private static int rehash(int hash, Object oldElement, Object newElement, int after)
+    {
+        return hash + (newElement.hashCode() - oldElement.hashCode()) * POWERS[after];
+    }
+
+    /**
+     * A tree node. Leaves hold elements, branches hold child nodes.
+     * {@code sizes} is null for strict branches, where every child but the last is full and
+     * children can be found by radix; relaxed branches keep cumulative child sizes instead.
+     *
+     * {@code hash} is the polynomial hash of the elements under this node and {@code power} is
+     * {@code 31^size}, so a branch's pair is a fold of its children's, with no element hashed again.
+     */
+    private static final class Node
+    {
+        /** The transient that may update this node in place, or null. */
+        @Nullable final Object edit;
+        final Object[] array;
+        @Nullable final int[] sizes;
+        int hash;
+        int power;
+
+        private Node(@Nullable Object edit, Object[] array, @Nullable int[] sizes, int hash, int power)
+        {
+            this.edit = edit;
+            this.array = array;
+            this.sizes = sizes;
+            this.hash = hash;
+            this.power = power;
+        }
+
+        static Node leaf(@Nullable Object edit, Object[] elements)
+        {
+            return leaf(edit, elements, PersistentVector.hash(elements, 0, elements.length));
+        }
+
+        /**
+         * A leaf whose elements' hash is already known.
+         */
+        static Node leaf(@Nullable Object edit, Object[] elements, int hash)
+        {
+            return new Node(edit, elements, null, hash, POWERS[elements.length]);
+        }
+
+        static Node branch(@Nullable Object edit, Object[] children, @Nullable int[] sizes)
+        {
+            Node node = new Node(edit, children, sizes, 0, 1);
+            node.rehash();
+            return node;
+        }
+
+        /**
+         * Refolds a branch's hash from its children, after one of them changed.
+         */
+        void rehash()
+        {
+            hash = 0;
+            power = 1;
+
+            for (Object child : array)
+            {
+                Node node = (Node) child;
+                hash = hash * node.power + node.hash;
+                power *= node.power;
+            }
+        }
+
+        /**
+         * Returns this node if the given transient owns it, otherwise a copy that it owns.
+         */
+        Node editable(@Nullable Object edit)
+        {
+            if (edit != null && this.edit == edit)
+            {
+                return this;
+            }
+
+            return new Node(edit, array.clone(), sizes == null ? null : sizes.clone(), hash, power);
+        }
+    }
+
+    /**
+     * A root node along with its level.
+     */
+    private static final class Tree
+    {
+        final Node root;
+        final int shift;
+
+        Tree(Node root, int shift)
+        {
+            this.root = root;
+            this.shift = shift;
+        }
+    }
+
+    private static int size(Node node, int shift)
+    {
+        if (shift == 0)
+        {
+            return node.array.length;
+        }
+
+        int len = node.array.length;
+
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (node.sizes != null)
+        {
+            return node.sizes[len - 1];
+        }
+
+        return ((len - 1) << shift) + size((Node) node.array[len - 1], shift - BITS);
+    }
+
+    /**
+     * Makes a branch at level {@code shift}, adding a size table only if it's needed.
+     */
+    private static Node branch(Object[] children, int shift)
+    {
+        return branch(null, children, shift);
+    }
+
+    private static Node branch(@Nullable Object edit, Object[] children, int shift)
+    {
+        int full = 1 << shift;
+        int[] sizes = new int[children.length];
+        boolean strict = true;
+        int total = 0;
+
+        for (int i = 0; i < children.length; i++)
+        {
+            int childSize = size((Node) children[i], shift - BITS);
+            strict &= i == children.length - 1 || childSize == full;
+            total += childSize;
+            sizes[i] = total;
+        }
+
+        return Node.branch(edit, children, strict ? null : sizes);
+    }
+
+    /**
+     * Moves the tail into the tree, so the whole vector lives in the returned tree.
+     */
+    private Tree pushTail()
+    {
+        return tail.length == 0
+            ? new Tree(root, shift)
+            : pushLeaf(root, shift, Node.leaf(null, tail, tailHash), null);
+    }
+
+    private static Tree pushLeaf(Node root, int shift, Node leaf, @Nullable Object edit)
+    {
+        Node newRoot = pushLeaf(root, shift, leaf, leaf.array.length, edit);
+
+        if (newRoot != null)
+        {
+            return new Tree(newRoot, shift);
+        }
+
+        int newShift = shift + BITS;
+        return new Tree(branch(edit, new Object[] { root, newPath(shift, leaf, edit) }, newShift), newShift);
+    }
+
+    /**
+     * Appends a leaf along the rightmost path, or returns null if that path is full.
+     */
+    @Nullable
+    private static Node pushLeaf(Node node, int shift, Node leaf, int leafSize, @Nullable Object edit)
+    {
+        int len = node.array.length;
+
+        if (shift > BITS && len > 0)
+        {
+            Node newLast = pushLeaf((Node) node.array[len - 1], shift - BITS, leaf, leafSize, edit);
+
+            if (newLast != null)
+            {
+                Node newNode = node.editable(edit);
+                newNode.array[len - 1] = newLast;
+                newNode.rehash();
+
+                if (newNode.sizes != null)
+                {
+                    newNode.sizes[len - 1] += leafSize;
+                }
+
+                return newNode;
+            }
+        }
+
+        if (len == WIDTH)
+        {
+            return null;
+        }
+
+        Object[] newArray = Arrays.copyOf(node.array, len + 1);
+        newArray[len] = newPath(shift - BITS, leaf, edit);
+
+        if (node.sizes != null)
+        {
+            int[] newSizes = Arrays.copyOf(node.sizes, len + 1);
+            newSizes[len] = (len == 0 ? 0 : newSizes[len - 1]) + leafSize;
+            return Node.branch(edit, newArray, newSizes);
+        }
+
+        if (len == 0 || size((Node) node.array[len - 1], shift - BITS) == 1 << shift)
+        {
+            return Node.branch(edit, newArray, null);
+        }
+
+        return branch(edit, newArray, shift);
+    }
+
+    private static Node newPath(int shift, Node leaf, @Nullable Object edit)
+    {
+        return shift == 0 ? leaf : Node.branch(edit, new Object[] { newPath(shift - BITS, leaf, edit) }, null);
+    }
+
+    private static Node assoc(@Nullable Object edit, Node node, int shift, int index, Object element)
+    {
+        Node newNode = node.editable(edit);
+
+        if (shift == 0)
+        {
+            newNode.hash = rehash(node.hash, node.array[index], element, node.array.length - 1 - index);
+            newNode.array[index] = element;
+            return newNode;
+        }
+
+        int idx = childIndex(node, shift, index);
+        int start = childStart(node, shift, idx);
+        newNode.array[idx] = assoc(edit, (Node) node.array[idx], shift - BITS, index - start, element);
+        newNode.rehash();
+
+        return newNode;
+    }
+
+    private static int childIndex(Node node, int shift, int index)
+    {
+        int idx = index >>> shift;
+
+        if (node.sizes != null)
+        {
+            while (node.sizes[idx] <= index)
+            {
+                idx++;
+            }
+        }
+
+        return idx;
+    }
+
+    private static int childStart(Node node, int shift, int idx)
+    {
+        if (node.sizes == null)
+        {
+            return idx << shift;
+        }
+
+        return idx == 0 ? 0 : node.sizes[idx - 1];
+    }
+
+    /**
+     * Keeps the first {@code count} elements, {@code 0 < count <= size(node)}.
+     */
+    private static Node take(Node node, int shift, int count)
+    {
+        if (shift == 0)
+        {
+            return count == node.array.length ? node : Node.leaf(null, Arrays.copyOf(node.array, count));
+        }
+
+        int idx = childIndex(node, shift, count - 1);
+        int start = childStart(node, shift, idx);
+        Node child = (Node) node.array[idx];
+        Node newChild = take(child, shift - BITS, count - start);
+
+        if (newChild == child && idx == node.array.length - 1)
+        {
+            return node;
+        }
+
+        Object[] newArray = Arrays.copyOf(node.array, idx + 1);
+        newArray[idx] = newChild;
+        return branch(newArray, shift);
+    }
+
+    /**
+     * Drops the first {@code count} elements, {@code 0 <= count < size(node)}.
+     */
+    private static Node drop(Node node, int shift, int count)
+    {
+        if (count == 0)
+        {
+            return node;
+        }
+
+        if (shift == 0)
+        {
+            return Node.leaf(null, Arrays.copyOfRange(node.array, count, node.array.length));
+        }
+
+        int idx = childIndex(node, shift, count);
+        int start = childStart(node, shift, idx);
+        Object[] newArray = Arrays.copyOfRange(node.array, idx, node.array.length);
+        newArray[0] = drop((Node) node.array[idx], shift - BITS, count - start);
+        return branch(newArray, shift);
+    }
+
+    /**
+     * Concatenates two trees, returning one or two nodes at the higher of the two levels.
+     */
+    private static Node[] merge(Node left, int leftShift, Node right, int rightShift)
+    {
+        if (leftShift == 0 && rightShift == 0)
+        {
+            return mergeLeaves(left, right);
+        }
+
+        Object[] leftKids = left.array;
+        Object[] rightKids = right.array;
+        int shift = Math.max(leftShift, rightShift);
+        Node[] seam;
+
+        if (leftShift > rightShift)
+        {
+            seam = merge((Node) leftKids[leftKids.length - 1], leftShift - BITS, right, rightShift);
+            rightKids = EMPTY_ARRAY;
+        }
+        else if (leftShift < rightShift)
+        {
+            seam = merge(left, leftShift, (Node) rightKids[0], rightShift - BITS);
+            leftKids = EMPTY_ARRAY;
+        }
+        else
+        {
+            seam = merge((Node) leftKids[leftKids.length - 1], leftShift - BITS, (Node) rightKids[0], rightShift - BITS);
+        }
+
+        // Everything but the nodes we merged across the seam:
+        int leftLen = Math.max(leftKids.length - 1, 0);
+        int rightLen = Math.max(rightKids.length - 1, 0);
+        Object[] children = new Object[leftLen + seam.length + rightLen];
+
+        System.arraycopy(leftKids, 0, children, 0, leftLen);
+        System.arraycopy(seam, 0, children, leftLen, seam.length);
+        System.arraycopy(rightKids, rightKids.length - rightLen, children, leftLen + seam.length, rightLen);
+
+        if (children.length <= WIDTH)
+        {
+            return new Node[] { branch(children, shift) };
+        }
+
+        return new Node[] {
+            branch(Arrays.copyOfRange(children, 0, WIDTH), shift),
+            branch(Arrays.copyOfRange(children, WIDTH, children.length), shift)
+        };
+    }
+
+    /**
+     * Packs two leaves into one if they fit, otherwise fills up the left one first.
+     */
+    private static Node[] mergeLeaves(Node left, Node right)
+    {
+        int leftLen = left.array.length;
+        int total = leftLen + right.array.length;
+
+        if (total <= WIDTH)
+        {
+            Object[] array = Arrays.copyOf(left.array, total);
+            System.arraycopy(right.array, 0, array, leftLen, right.array.length);
+            return new Node[] { Node.leaf(null, array, left.hash * right.power + right.hash) };
+        }
+
+        if (leftLen == WIDTH)
+        {
+            return new Node[] { left, right };
+        }
+
+        int moved = WIDTH - leftLen;
+        Object[] newLeft = Arrays.copyOf(left.array, WIDTH);
+        System.arraycopy(right.array, 0, newLeft, leftLen, moved);
+        Object[] newRight = Arrays.copyOfRange(right.array, moved, right.array.length);
+
+        int newLeftHash = left.hash * POWERS[moved] + hash(right.array, 0, moved);
+        return new Node[] { Node.leaf(null, newLeft, newLeftHash), Node.leaf(null, newRight) };
+    }
+
+    ////////////////////////////////////////
+    // ITERATION:
+
+    /**
+     * Compares two vectors of the same size element by element, in order. Both cursors always sit at the
+     * same position, so two whole subtrees of the same size at the front cover the same elements: if they're
+     * the same node they're skipped, and if their hashes differ the vectors can't be equal.
+     */
+    private static boolean equal(PersistentVector<?> vector, PersistentVector<?> other)
+    {
+        Cursor left = new Cursor(vector);
+        Cursor right = new Cursor(other);
+
+        while (left.hasNext())
+        {
+            Node a = left.peek();
+            Node b = right.peek();
+
+            if (left.leafPos == 0 && right.leafPos == 0)
+            {
+                if (a == b && left.peekShift() == right.peekShift())
+                {
+                    left.pop();
+                    right.pop();
+                    continue;
+                }
+
+                int aSize = size(a, left.peekShift());
+                int bSize = size(b, right.peekShift());
+
+                if (aSize == bSize && a.hash != b.hash)
+                {
+                    return false;
+                }
+
+                // Open up the bigger subtree until the two line up:
+                if (left.peekShift() > 0 && (aSize >= bSize || right.peekShift() == 0))
+                {
+                    left.expand();
+                    continue;
+                }
+
+                if (right.peekShift() > 0)
+                {
+                    right.expand();
+                    continue;
+                }
+            }
+            else if (left.peekShift() > 0)
+            {
+                left.expand();
+                continue;
+            }
+            else if (right.peekShift() > 0)
+            {
+                right.expand();
+                continue;
+            }
+
+            if (!left.next().equals(right.next()))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * What's left of a walk over a vector: whole subtrees still to visit, with their levels,
+     * and a position inside the leaf at the front.
+     */
+    private static final class Cursor
+    {
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+        private final ArrayDeque<Integer> shifts = new ArrayDeque<>();
+        private int leafPos;
+
+        Cursor(PersistentVector<?> vector)
+        {
+            push(Node.leaf(null, vector.tail, vector.tailHash), 0);
+            push(vector.root, vector.shift);
+        }
+
+        private void push(Node node, int shift)
+        {
+            if (node.array.length > 0)
+            {
+                pending.push(node);
+                shifts.push(shift);
+            }
+        }
+
+        boolean hasNext()
+        {
+            return !pending.isEmpty();
+        }
+
+        Node peek()
+        {
+            return pending.peek();
+        }
+
+        int peekShift()
+        {
+            return shifts.peek();
+        }
+
+        void pop()
+        {
+            pending.pop();
+            shifts.pop();
+        }
+
+        void expand()
+        {
+            Node node = pending.pop();
+            int shift = shifts.pop();
+
+            for (int i = node.array.length - 1; i >= 0; i--)
+            {
+                push((Node) node.array[i], shift - BITS);
+            }
+        }
+
+        /**
+         * The next element of the leaf at the front.
+         */
+        Object next()
+        {
+            Object[] leaf = pending.peek().array;
+            Object element = leaf[leafPos++];
+
+            if (leafPos == leaf.length)
+            {
+                pop();
+                leafPos = 0;
+            }
+
+            return element;
+        }
+    }
+
+    /**
+     * Walks the leaves directly, so iteration only descends the tree once per leaf.
+     */
+    private final class Itr implements Iterator<E>
+    {
+        private int index;
+        private Object[] leaf = EMPTY_ARRAY;
+        private int leafPos;
+
+        @Override
+        public boolean hasNext()
+        {
+            return index < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            if (leafPos >= leaf.length)
+            {
+                loadLeaf();
+            }
+
+            index++;
+            return (E) leaf[leafPos++];
+        }
+
+        private void loadLeaf()
+        {
+            int treeSize = treeSize();
+
+            if (index >= treeSize)
+            {
+                leaf = tail;
+                leafPos = index - treeSize;
+                return;
+            }
+
+            Node node = root;
+            int rel = index;
+
+            for (int level = shift; level > 0; level -= BITS)
+            {
+                int idx = childIndex(node, level, rel);
+                rel -= childStart(node, level, idx);
+                node = (Node) node.array[idx];
+            }
+
+            leaf = node.array;
+            leafPos = rel;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A lazy chain of {@code map} / {@code filter} / {@code flatMap} steps over a collection:
+ * <pre>
+ *   ImmutableList&lt;String&gt; names = Immutables.pipeline(users)
+ *       .filter(user -&gt; user.getAge() &gt; 10)
+ *       .map(User::getName)
+ *       .toImmutableList();
+ * </pre>
+ *
+ * Nothing runs until a terminal method. The steps are then fused into one function per element,
+ * and the source is walked once, straight into a result presized to the source - no intermediate
+ * collections, unlike chaining Guava's {@code transform} / {@code filter} views and copying the result.
+ *
+ * Pipelines are immutable: each step returns a new one, so a pipeline can be branched or rerun.
+ * {@link #memoize()} gives a view that computes each element at most once instead.
+ */
+@ParametersAreNonnullByDefault
+public final class Pipeline<T>
+{
+    private final Collection<?> source;
+
+    /** Wires a downstream consumer of T into a consumer of source elements, fusing every step. */
+    private final Function<Consumer<? super T>, Consumer<Object>> fuse;
+
+    /** The composed per-element function while every step is a map, so output i comes from source element i. */
+    @Nullable private final Function<Object, ? extends T> mapper;
+
+    private Pipeline(
+        Collection<?> source,
+        Function<Consumer<? super T>, Consumer<Object>> fuse,
+        @Nullable Function<Object, ? extends T> mapper)
+    {
+        this.source = source;
+        this.fuse = fuse;
+        this.mapper = mapper;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <T> Pipeline<T> of(Collection<? extends T> source)
+    {
+        return new Pipeline<>(checkNotNull(source), downstream -> (Consumer<Object>) downstream, element -> (T) element);
+    }
+
+    ////////////////////////////////////////
+    // STEPS:
+
+    @Nonnull
+    public <R> Pipeline<R> map(Function<? super T, ? extends R> function)
+    {
+        checkNotNull(function);
+
+        return new Pipeline<>(
+            source,
+            downstream -> fuse.apply(element -> downstream.accept(function.apply(element))),
+            mapper == null ? null : mapper.andThen(function));
+    }
+
+    @Nonnull
+    public Pipeline<T> filter(Predicate<? super T> predicate)
+    {
+        checkNotNull(predicate);
+
+        return new Pipeline<>(
+            source,
+            downstream -> fuse.apply(element -> {
+                if (predicate.test(element))
+                {
+                    downstream.accept(element);
+                }
+            }),
+            null);
+    }
+
+    @Nonnull
+    public <R> Pipeline<R> flatMap(Function<? super T, ? extends Iterable<? extends R>> function)
+    {
+        checkNotNull(function);
+
+        return new Pipeline<>(
+            source,
+            downstream -> fuse.apply(element -> function.apply(element).forEach(downstream)),
+            null);
+    }
+
+    ////////////////////////////////////////
+    // TERMINALS:
+
+    /**
+     * Runs the pipeline once, handing each result to {@code action}.
+     */
+    public void forEach(Consumer<? super T> action)
+    {
+        source.forEach(fuse.apply(checkNotNull(action)));
+    }
+
+    /**
+     * Presized to the source, so a pipeline of maps alone fills the list's backing array exactly, with no copy.
+     */
+    @Nonnull
+    public ImmutableList<T> toImmutableList()
+    {
+        ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(source.size());
+        forEach(builder::add);
+        return builder.build();
+    }
+
+    @Nonnull
+    public ImmutableSet<T> toImmutableSet()
+    {
+        ImmutableSet.Builder<T> builder = ImmutableSet.builderWithExpectedSize(source.size());
+        forEach(builder::add);
+        return builder.build();
+    }
+
+    @Nonnull
+    public PersistentVector<T> toPersistentVector()
+    {
+        PersistentVector.Transient<T> vector = PersistentVector.<T>empty().asTransient();
+        forEach(vector::add);
+        return vector.persistent();
+    }
+
+    /**
+     * A read-only view that computes each element at most once, for pipelines that are expensive to rerun.
+     *
+     * If every step is a {@link #map} and the source is a random access list, elements are computed one
+     * at a time, as they're first read. Otherwise the first read runs the whole pipeline into an
+     * {@code ImmutableList}, which later reads share. Either way the view is thread-safe, and only
+     * reflects the source as it was when each element was computed.
+     */
+    @Nonnull
+    public List<T> memoize()
+    {
+        if (mapper != null && source instanceof List && source instanceof RandomAccess)
+        {
+            return new MemoizedList<>((List<?>) source, mapper);
+        }
+
+        return new LazyList<>(Suppliers.memoize(this::toImmutableList));
+    }
+
+    ////////////////////////////////////////
+    // VIEWS:
+
+    private static final class MemoizedList<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final List<?> source;
+        private final Function<Object, ? extends T> mapper;
+        private final AtomicReferenceArray<T> computed;
+
+        private MemoizedList(List<?> source, Function<Object, ? extends T> mapper)
+        {
+            this.source = source;
+            this.mapper = mapper;
+            this.computed = new AtomicReferenceArray<>(source.size());
+        }
+
+        @Override
+        public T get(int index)
+        {
+            T element = computed.get(index);
+
+            if (element == null)
+            {
+                // Racing readers may both compute it, but only one result is ever published:
+                computed.compareAndSet(index, null, checkNotNull(mapper.apply(source.get(index))));
+                element = computed.get(index);
+            }
+
+            return element;
+        }
+
+        @Override
+        public int size()
+        {
+            return computed.length();
+        }
+    }
+
+    private static final class LazyList<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final Supplier<ImmutableList<T>> result;
+
+        private LazyList(Supplier<ImmutableList<T>> result)
+        {
+            this.result = result;
+        }
+
+        @Override
+        public T get(int index)
+        {
+            return result.get().get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return result.get().size();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * One version of an immutable value. Versions start at 0 and count up by one per change.
+ */
+@ParametersAreNonnullByDefault
+public final class Snapshot<T>
+{
+    private final long version;
+    private final T value;
+
+    Snapshot(long version, T value)
+    {
+        this.version = version;
+        this.value = checkNotNull(value);
+    }
+
+    public long version()
+    {
+        return version;
+    }
+
+    @Nonnull
+    public T value()
+    {
+        return value;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (!(obj instanceof Snapshot))
+        {
+            return false;
+        }
+
+        Snapshot<?> other = (Snapshot<?>) obj;
+        return version == other.version && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(version, value);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "v" + version + ": " + value;
+    }
+}
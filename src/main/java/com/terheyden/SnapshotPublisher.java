@@ -0,0 +1,289 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Holds an immutable value and publishes each new version of it to {@link Flow.Subscriber}s.
+ * Change it with {@link #update} and the usual {@code Immutables} operations:
+ * <pre>
+ *   publisher.update(map -&gt; Immutables.addToMap(map, key, val));
+ * </pre>
+ *
+ * Subscribers never queue up old versions. Each one gets the current snapshot as soon as it has
+ * demand, then the latest snapshot whenever a newer one exists and it has demand again - so a slow
+ * subscriber skips straight past the versions it missed. Signals to each subscriber run on the
+ * executor, one at a time.
+ *
+ * {@link #deltas} turns this into a stream of differences, e.g. {@code Immutables::diff} patches,
+ * where each delta spans everything the subscriber skipped.
+ */
+@ParametersAreNonnullByDefault
+public final class SnapshotPublisher<T> implements Flow.Publisher<Snapshot<T>>, AutoCloseable
+{
+    private final Executor executor;
+    private final CopyOnWriteArrayList<SnapshotSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile Snapshot<T> current;
+    private volatile boolean closed;
+
+    /**
+     * Signals subscribers on the common fork-join pool.
+     */
+    public SnapshotPublisher(T initialValue)
+    {
+        this(initialValue, ForkJoinPool.commonPool());
+    }
+
+    public SnapshotPublisher(T initialValue, Executor executor)
+    {
+        this.current = new Snapshot<>(0, initialValue);
+        this.executor = checkNotNull(executor);
+    }
+
+    /**
+     * The latest snapshot.
+     */
+    @Nonnull
+    public Snapshot<T> current()
+    {
+        return current;
+    }
+
+    /**
+     * Replaces the value with {@code update(value)}. Returning the same instance is a no-op:
+     * no new version, nothing published.
+     *
+     * @return the resulting snapshot
+     * @throws IllegalStateException if this publisher is closed
+     */
+    @Nonnull
+    public synchronized Snapshot<T> update(UnaryOperator<T> update)
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Publisher is closed");
+        }
+
+        Snapshot<T> oldSnapshot = current;
+        T newValue = checkNotNull(update.apply(oldSnapshot.value()));
+
+        if (newValue == oldSnapshot.value())
+        {
+            return oldSnapshot;
+        }
+
+        current = new Snapshot<>(oldSnapshot.version() + 1, newValue);
+        subscriptions.forEach(SnapshotSubscription::signal);
+        return current;
+    }
+
+    @Nonnull
+    public Snapshot<T> set(T newValue)
+    {
+        checkNotNull(newValue);
+        return update(value -> newValue);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Snapshot<T>> subscriber)
+    {
+        SnapshotSubscription subscription = new SnapshotSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.start();
+    }
+
+    /**
+     * A publisher of the differences between the snapshots a subscriber receives. A subscriber's
+     * first delta is {@code differ(base, current value)}, so pass an empty collection as {@code base}
+     * for the first delta to carry everything.
+     */
+    @Nonnull
+    public <D> Flow.Publisher<D> deltas(T base, BiFunction<? super T, ? super T, ? extends D> differ)
+    {
+        checkNotNull(base);
+        checkNotNull(differ);
+
+        return subscriber -> subscribe(new Flow.Subscriber<Snapshot<T>>()
+        {
+            // Only touched from onNext, which is never called concurrently:
+            private T last = base;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription)
+            {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(Snapshot<T> snapshot)
+            {
+                D delta = differ.apply(last, snapshot.value());
+                last = snapshot.value();
+                subscriber.onNext(delta);
+            }
+
+            @Override
+            public void onError(Throwable throwable)
+            {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete()
+            {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Stops accepting updates. Each subscriber gets the latest snapshot if it hasn't yet,
+     * once it has demand for it, then {@code onComplete}.
+     */
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        subscriptions.forEach(SnapshotSubscription::signal);
+    }
+
+    /**
+     * Per-subscriber state. Every signal goes through {@link #drain()}, which the {@code wip}
+     * counter keeps to one executor task at a time.
+     */
+    private final class SnapshotSubscription implements Flow.Subscription
+    {
+        private final Flow.Subscriber<? super Snapshot<T>> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Only touched inside drain():
+        private boolean subscribed;
+        private long lastVersion = -1;
+
+        private volatile long requested;
+        private volatile boolean cancelled;
+        @Nullable private volatile IllegalArgumentException badRequest;
+
+        private SnapshotSubscription(Flow.Subscriber<? super Snapshot<T>> subscriber)
+        {
+            this.subscriber = checkNotNull(subscriber);
+        }
+
+        private void start()
+        {
+            signal();
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                badRequest = new IllegalArgumentException("Non-positive request: " + n);
+            }
+            else
+            {
+                synchronized (this)
+                {
+                    // Saturate at Long.MAX_VALUE, meaning unbounded:
+                    long sum = requested + n;
+                    requested = sum < 0 ? Long.MAX_VALUE : sum;
+                }
+            }
+
+            signal();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal()
+        {
+            if (wip.getAndIncrement() == 0)
+            {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain()
+        {
+            int missed = 1;
+
+            do
+            {
+                if (!subscribed)
+                {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+
+                if (cancelled)
+                {
+                    return;
+                }
+
+                if (badRequest != null)
+                {
+                    cancel();
+                    subscriber.onError(badRequest);
+                    return;
+                }
+
+                // Read closed first: a snapshot published before close() is then sure to be seen below.
+                boolean done = closed;
+                Snapshot<T> snapshot = current;
+
+                if (snapshot.version() > lastVersion && requested > 0)
+                {
+                    lastVersion = snapshot.version();
+                    consumeOne();
+
+                    try
+                    {
+                        subscriber.onNext(snapshot);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // A subscriber isn't allowed to throw; stop talking to it:
+                        cancel();
+                        return;
+                    }
+                }
+
+                if (done && snapshot.version() == lastVersion)
+                {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        private synchronized void consumeOne()
+        {
+            if (requested != Long.MAX_VALUE)
+            {
+                requested--;
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Sorts more values than fit on the heap. Values are buffered until the buffer holds
+ * {@code maxInMemory} of them; the full buffer is then sorted and written to a temp file as a run.
+ * {@link #sorted()} does a k-way merge of the runs and the last, partial buffer, reading each run
+ * front to back, so at most {@code maxInMemory} values plus one per run are on the heap at a time.
+ * To keep open files (and their read buffers) bounded, no more than {@code maxFanIn} runs are
+ * merged at once: past that, groups of runs are first merged into longer runs on disk.
+ *
+ * Run files hold each value as an int length followed by its {@link Codec} encoding.
+ * They're deleted once the merge runs dry, or on {@link #close()}.
+ */
+@ParametersAreNonnullByDefault
+final class SpillingSorter<T> implements Closeable
+{
+    /** Well under the usual limit of 1024 open files. */
+    static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private final Codec<T> codec;
+    private final Comparator<? super T> comparator;
+    private final int maxInMemory;
+    private final int maxFanIn;
+    private final Path dir;
+
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Closeable> readers = new ArrayList<>();
+    private List<T> buffer = new ArrayList<>();
+    private long size;
+    private boolean merged;
+
+    SpillingSorter(Codec<T> codec, Comparator<? super T> comparator, int maxInMemory, Path dir)
+    {
+        this(codec, comparator, maxInMemory, DEFAULT_MAX_FAN_IN, dir);
+    }
+
+    SpillingSorter(Codec<T> codec, Comparator<? super T> comparator, int maxInMemory, int maxFanIn, Path dir)
+    {
+        checkArgument(maxInMemory > 0, "maxInMemory must be positive: %s", maxInMemory);
+        checkArgument(maxFanIn > 1, "maxFanIn must be at least 2: %s", maxFanIn);
+
+        this.codec = checkNotNull(codec);
+        this.comparator = checkNotNull(comparator);
+        this.maxInMemory = maxInMemory;
+        this.maxFanIn = maxFanIn;
+        this.dir = checkNotNull(dir);
+    }
+
+    void add(T value)
+    {
+        checkState(!merged, "Spilled values can only be built once");
+        buffer.add(checkNotNull(value));
+        size++;
+
+        if (buffer.size() >= maxInMemory)
+        {
+            spill();
+        }
+    }
+
+    /**
+     * How many values have been added, on disk and off.
+     */
+    long size()
+    {
+        return size;
+    }
+
+    /**
+     * How many runs have been written to disk.
+     */
+    int runCount()
+    {
+        return runs.size();
+    }
+
+    /**
+     * Every value added, sorted. Equal values come out in the order they were added, as a stable sort
+     * would leave them. Single use: the run files are deleted once it runs dry.
+     */
+    Iterator<T> sorted()
+    {
+        checkState(!merged, "Spilled values can only be built once");
+        merged = true;
+
+        // The buffer makes one more input to the final merge:
+        while (runs.size() > maxFanIn - 1)
+        {
+            mergePass();
+        }
+
+        // A stable sort, so the in-memory run keeps its equal values in order too:
+        buffer.sort(comparator);
+
+        List<PeekingIterator<T>> inputs = new ArrayList<>(runs.size() + 1);
+
+        for (Path run : runs)
+        {
+            inputs.add(Iterators.peekingIterator(read(run)));
+        }
+
+        inputs.add(Iterators.peekingIterator(buffer.iterator()));
+        buffer = new ArrayList<>();
+
+        Iterator<T> merged = merge(inputs);
+
+        return new AbstractIterator<T>()
+        {
+            @Override
+            protected T computeNext()
+            {
+                if (merged.hasNext())
+                {
+                    return merged.next();
+                }
+
+                SpillingSorter.this.close();
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * Deletes the run files, including any the merge is still reading.
+     */
+    @Override
+    public void close()
+    {
+        merged = true;
+        buffer = new ArrayList<>();
+
+        try
+        {
+            for (Closeable reader : readers)
+            {
+                reader.close();
+            }
+
+            for (Path run : runs)
+            {
+                Files.deleteIfExists(run);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        finally
+        {
+            readers.clear();
+            runs.clear();
+        }
+    }
+
+    ////////////////////////////////////////
+    // RUNS:
+
+    private void spill()
+    {
+        buffer.sort(comparator);
+        writeRun(buffer.iterator());
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Merges each consecutive group of {@code maxFanIn} runs into one longer run. Keeping the groups
+     * in order keeps the merge stable: earlier runs still hold the earlier-added values.
+     */
+    private void mergePass()
+    {
+        List<Path> nextRuns = new ArrayList<>();
+
+        for (List<Path> group : Lists.partition(new ArrayList<>(runs), maxFanIn))
+        {
+            if (group.size() == 1)
+            {
+                nextRuns.add(group.get(0));
+                continue;
+            }
+
+            List<PeekingIterator<T>> inputs = new ArrayList<>(group.size());
+
+            for (Path run : group)
+            {
+                inputs.add(Iterators.peekingIterator(read(run)));
+            }
+
+            // writeRun() tracks the new run, so close() can still clean up if this fails partway:
+            nextRuns.add(writeRun(merge(inputs)));
+
+            try
+            {
+                for (Closeable reader : readers)
+                {
+                    reader.close();
+                }
+
+                for (Path run : group)
+                {
+                    Files.delete(run);
+                    runs.remove(run);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            finally
+            {
+                readers.clear();
+            }
+        }
+
+        runs.clear();
+        runs.addAll(nextRuns);
+    }
+
+    private Path writeRun(Iterator<T> values)
+    {
+        try
+        {
+            Path run = Files.createTempFile(dir, "spill", ".run");
+            runs.add(run);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run))))
+            {
+                while (values.hasNext())
+                {
+                    byte[] bytes = codec.encode(values.next());
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+
+            return run;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Iterator<T> read(Path run)
+    {
+        DataInputStream in;
+
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        readers.add(in);
+
+        return new AbstractIterator<T>()
+        {
+            @Override
+            protected T computeNext()
+            {
+                try
+                {
+                    int length;
+
+                    try
+                    {
+                        length = in.readInt();
+                    }
+                    catch (EOFException e)
+                    {
+                        in.close();
+                        return endOfData();
+                    }
+
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    return codec.decode(ByteBuffer.wrap(bytes));
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Repeatedly takes the smallest head. Ties go to the earliest input, which holds
+     * the earliest-added values.
+     */
+    private Iterator<T> merge(List<PeekingIterator<T>> inputs)
+    {
+        Comparator<Integer> byHead = (left, right) -> {
+            int cmp = comparator.compare(inputs.get(left).peek(), inputs.get(right).peek());
+            return cmp != 0 ? cmp : Integer.compare(left, right);
+        };
+
+        PriorityQueue<Integer> queue = new PriorityQueue<>(inputs.size(), byHead);
+
+        for (int i = 0; i < inputs.size(); i++)
+        {
+            if (inputs.get(i).hasNext())
+            {
+                queue.add(i);
+            }
+        }
+
+        return new AbstractIterator<T>()
+        {
+            @Override
+            protected T computeNext()
+            {
+                Integer next = queue.poll();
+
+                if (next == null)
+                {
+                    return endOfData();
+                }
+
+                PeekingIterator<T> input = inputs.get(next);
+                T value = input.next();
+
+                if (input.hasNext())
+                {
+                    queue.add(next);
+                }
+
+                return value;
+            }
+        };
+    }
+}
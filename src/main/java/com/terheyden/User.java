@@ -1,25 +1,40 @@
 package com.terheyden;
 
 import java.io.Serializable;
-import java.util.Objects;
 import java.util.UUID;
 
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 
+/**
+ * An immutable user, laid out the way {@code @ImmutableValue} (in the processor module) generates
+ * value classes: final fields, {@code withX} copies, and a hash computed once.
+ */
 @ParametersAreNonnullByDefault
-public class User implements Serializable {
+public final class User implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     private final UUID id;
-    private String name;
-    private int age;
+    private final String name;
+    private final int age;
+    private final int hashCode;
 
     public User(String name, int age) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), name, age);
+    }
+
+    private User(UUID id, String name, int age) {
+        this.id = id;
         this.name = name;
         this.age = age;
+
+        // Same as Objects.hash(id, name, age), without the varargs array or the boxing:
+        int hashCode = 1;
+        hashCode = 31 * hashCode + id.hashCode();
+        hashCode = 31 * hashCode + name.hashCode();
+        hashCode = 31 * hashCode + age;
+        this.hashCode = hashCode;
     }
 
     @Nonnull
@@ -32,20 +47,24 @@ public class User implements Serializable {
         return name;
     }
 
+    /**
+     * A copy of this user (same id) with the new name, or this user if it's unchanged.
+     */
     @Nonnull
-    public User setName(String name) {
-        this.name = name;
-        return this;
+    public User withName(String name) {
+        return this.name.equals(name) ? this : new User(id, name, age);
     }
 
     public int getAge() {
         return age;
     }
 
+    /**
+     * A copy of this user (same id) with the new age, or this user if it's unchanged.
+     */
     @Nonnull
-    public User setAge(int age) {
-        this.age = age;
-        return this;
+    public User withAge(int age) {
+        return this.age == age ? this : new User(id, name, age);
     }
 
     @Override
@@ -60,20 +79,21 @@ public class User implements Serializable {
             return true;
         }
 
-        if (obj == null || getClass() != obj.getClass()) {
+        if (!(obj instanceof User)) {
             return false;
         }
 
         User user = (User) obj;
 
-        return age == user.age &&
+        return hashCode == user.hashCode &&
+            age == user.age &&
             id.equals(user.id) &&
             name.equals(user.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, age);
+        return hashCode;
     }
 }
 
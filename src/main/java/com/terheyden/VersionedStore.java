@@ -0,0 +1,357 @@
+package com.terheyden;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongBiFunction;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Holds an immutable value along with a window of its past versions, for reads "as of" an
+ * earlier version:
+ * <pre>
+ *   VersionedStore&lt;PersistentSortedMap&lt;Instant, ImmutableList&lt;LedgerItem&gt;&gt;&gt; ledger = VersionedStore
+ *       .&lt;PersistentSortedMap&lt;Instant, ImmutableList&lt;LedgerItem&gt;&gt;&gt;builder()
+ *       .retainVersions(1000)
+ *       .retainFor(Duration.ofDays(7))
+ *       .build(PersistentSortedMap.naturalOrder());
+ *
+ *   long version = ledger.update(map -&gt; map.assoc(when, items)).version();
+ *   ...
+ *   ledger.get(version);
+ * </pre>
+ *
+ * The store only keeps references, so old versions cost whatever they don't share with newer ones.
+ * With a persistent type ({@link PersistentSortedMap}, {@link PersistentHashMap}, {@link PersistentVector})
+ * each version shares everything but the O(log n) path it changed, so history grows with the changes made
+ * rather than with versions &times; size. A Guava immutable collection shares nothing, so each version
+ * is a full copy.
+ *
+ * History is itself a {@link PersistentSortedMap} from version number to value, so reads are lock-free
+ * and dropping old versions is an O(log n) split. The current version is always retained. Count and
+ * weight limits are enforced as each update lands; the age limit is enforced by {@link #reclaim()},
+ * which runs in the background if the store was built with {@link Builder#reclaimEvery}.
+ */
+@ParametersAreNonnullByDefault
+public final class VersionedStore<T> implements AutoCloseable
+{
+    private final int maxVersions;
+    @Nullable private final Duration maxAge;
+    private final long maxWeight;
+    private final ToLongBiFunction<? super T, ? super T> weigher;
+    private final Clock clock;
+    @Nullable private final ScheduledFuture<?> reclaimer;
+
+    private volatile PersistentSortedMap<Long, Version<T>> history;
+    private volatile Snapshot<T> current;
+
+    // Guarded by this - the sum of the retained versions' weights, not counting the oldest:
+    private long weight;
+
+    private VersionedStore(Builder<T> builder, T initialValue)
+    {
+        this.maxVersions = builder.maxVersions;
+        this.maxAge = builder.maxAge;
+        this.maxWeight = builder.maxWeight;
+        this.weigher = builder.weigher;
+        this.clock = builder.clock;
+
+        this.current = new Snapshot<>(0, initialValue);
+        this.history = PersistentSortedMap.<Long, Version<T>>naturalOrder()
+            .assoc(0L, new Version<>(initialValue, clock.instant(), 0));
+
+        long period = builder.reclaimPeriod.toNanos();
+        this.reclaimer = builder.reclaimExecutor == null
+            ? null
+            : builder.reclaimExecutor.scheduleWithFixedDelay(this::reclaim, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Nonnull
+    public static <T> Builder<T> builder()
+    {
+        return new Builder<>();
+    }
+
+    ////////////////////////////////////////
+    // READS:
+
+    /**
+     * The latest version.
+     */
+    @Nonnull
+    public Snapshot<T> current()
+    {
+        return current;
+    }
+
+    /**
+     * The value as of {@code version}, or null if that version was reclaimed or doesn't exist yet.
+     */
+    @Nullable
+    public T get(long version)
+    {
+        Version<T> entry = history.get(version);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * The oldest version still retained. Every version from here to {@code current().version()} can be read.
+     */
+    public long oldestVersion()
+    {
+        return history.firstKey();
+    }
+
+    /**
+     * How many versions are retained, including the current one.
+     */
+    public int retainedVersions()
+    {
+        return history.size();
+    }
+
+    ////////////////////////////////////////
+    // WRITES:
+
+    /**
+     * Replaces the value with {@code update(value)} as a new version. Returning the same instance
+     * is a no-op: no new version is recorded.
+     *
+     * @return the resulting snapshot
+     */
+    @Nonnull
+    public synchronized Snapshot<T> update(UnaryOperator<T> update)
+    {
+        Snapshot<T> oldSnapshot = current;
+        T newValue = checkNotNull(update.apply(oldSnapshot.value()));
+
+        if (newValue == oldSnapshot.value())
+        {
+            return oldSnapshot;
+        }
+
+        long changeWeight = weigher.applyAsLong(oldSnapshot.value(), newValue);
+        checkState(changeWeight >= 0, "Negative weight %s", changeWeight);
+
+        Instant lastRecorded = history.get(oldSnapshot.version()).recordedAt;
+        Instant now = clock.instant();
+        Instant recordedAt = now.isBefore(lastRecorded) ? lastRecorded : now;
+
+        Snapshot<T> newSnapshot = new Snapshot<>(oldSnapshot.version() + 1, newValue);
+        history = history.assoc(newSnapshot.version(), new Version<>(newValue, recordedAt, changeWeight));
+        current = newSnapshot;
+        weight += changeWeight;
+
+        trimToSize();
+        return newSnapshot;
+    }
+
+    @Nonnull
+    public Snapshot<T> set(T newValue)
+    {
+        checkNotNull(newValue);
+        return update(value -> newValue);
+    }
+
+    /**
+     * Drops every version outside the retention limits, leaving it for the garbage collector.
+     * Runs on a schedule if the store was built with {@link Builder#reclaimEvery}.
+     */
+    public synchronized void reclaim()
+    {
+        trimToSize();
+
+        if (maxAge == null)
+        {
+            return;
+        }
+
+        Instant cutoff = clock.instant().minus(maxAge);
+        PersistentSortedMap<Long, Version<T>> retained = history;
+        long oldest = retained.firstKey();
+        long newest = current.version();
+
+        // Timestamps never go backwards, so binary search for the first version not superseded before the cutoff:
+        while (oldest < newest)
+        {
+            long mid = (oldest + newest) >>> 1;
+
+            if (retained.get(mid + 1).recordedAt.isBefore(cutoff))
+            {
+                oldest = mid + 1;
+            }
+            else
+            {
+                newest = mid;
+            }
+        }
+
+        dropBefore(oldest);
+    }
+
+    /**
+     * Stops background reclamation, if any. The store stays usable.
+     */
+    @Override
+    public void close()
+    {
+        if (reclaimer != null)
+        {
+            reclaimer.cancel(false);
+        }
+    }
+
+    /**
+     * Enforces the count and weight limits. Must hold the lock.
+     */
+    private void trimToSize()
+    {
+        long oldest = Math.max(history.firstKey(), current.version() - maxVersions + 1);
+        long dropWeight = weight;
+
+        // Dropping a version makes the next one the base, whose change no longer counts:
+        for (long version = history.firstKey() + 1; version <= oldest; version++)
+        {
+            dropWeight -= history.get(version).weight;
+        }
+
+        while (dropWeight > maxWeight && oldest < current.version())
+        {
+            oldest++;
+            dropWeight -= history.get(oldest).weight;
+        }
+
+        dropBefore(oldest);
+    }
+
+    private void dropBefore(long oldest)
+    {
+        long first = history.firstKey();
+
+        if (oldest <= first)
+        {
+            return;
+        }
+
+        for (long version = first + 1; version <= oldest; version++)
+        {
+            weight -= history.get(version).weight;
+        }
+
+        history = history.tailMap(oldest);
+    }
+
+    private static final class Version<T>
+    {
+        private final T value;
+        private final Instant recordedAt;
+        private final long weight;
+
+        private Version(T value, Instant recordedAt, long weight)
+        {
+            this.value = value;
+            this.recordedAt = recordedAt;
+            this.weight = weight;
+        }
+    }
+
+    ////////////////////////////////////////
+    // BUILDER:
+
+    /**
+     * Retention limits combine: a version is dropped as soon as any limit says so. With none set,
+     * every version is kept.
+     */
+    public static final class Builder<T>
+    {
+        private int maxVersions = Integer.MAX_VALUE;
+        @Nullable private Duration maxAge;
+        private long maxWeight = Long.MAX_VALUE;
+        private ToLongBiFunction<? super T, ? super T> weigher = (older, newer) -> 0;
+        private Clock clock = Clock.systemUTC();
+        @Nullable private ScheduledExecutorService reclaimExecutor;
+        private Duration reclaimPeriod = Duration.ZERO;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Keep at most {@code maxVersions} versions, counting the current one.
+         */
+        @Nonnull
+        public Builder<T> retainVersions(int maxVersions)
+        {
+            checkArgument(maxVersions > 0, "Invalid maxVersions: %s", maxVersions);
+            this.maxVersions = maxVersions;
+            return this;
+        }
+
+        /**
+         * Drop versions that were superseded more than {@code maxAge} ago, on each {@link VersionedStore#reclaim()}.
+         */
+        @Nonnull
+        public Builder<T> retainFor(Duration maxAge)
+        {
+            checkArgument(!maxAge.isNegative(), "Invalid maxAge: %s", maxAge);
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Keep the history's memory within a budget. {@code changeWeigher} estimates what a new version costs
+         * on top of the one before it - with persistent types, roughly the size of the change, e.g.
+         * {@code (older, newer) -> Immutables.diff(older, newer).size()}. Old versions are dropped while the
+         * weights of the versions after the oldest add up to more than {@code maxWeight}.
+         */
+        @Nonnull
+        public Builder<T> retainWeight(long maxWeight, ToLongBiFunction<? super T, ? super T> changeWeigher)
+        {
+            checkArgument(maxWeight >= 0, "Invalid maxWeight: %s", maxWeight);
+            this.maxWeight = maxWeight;
+            this.weigher = checkNotNull(changeWeigher);
+            return this;
+        }
+
+        /**
+         * Where version timestamps come from; the system UTC clock by default.
+         */
+        @Nonnull
+        public Builder<T> clock(Clock clock)
+        {
+            this.clock = checkNotNull(clock);
+            return this;
+        }
+
+        /**
+         * Run {@link VersionedStore#reclaim()} on {@code executor} every {@code period},
+         * until {@link VersionedStore#close()}.
+         */
+        @Nonnull
+        public Builder<T> reclaimEvery(Duration period, ScheduledExecutorService executor)
+        {
+            checkArgument(!period.isNegative() && !period.isZero(), "Invalid period: %s", period);
+            this.reclaimPeriod = period;
+            this.reclaimExecutor = checkNotNull(executor);
+            return this;
+        }
+
+        @Nonnull
+        public VersionedStore<T> build(T initialValue)
+        {
+            checkNotNull(initialValue);
+            return new VersionedStore<>(this, initialValue);
+        }
+    }
+}
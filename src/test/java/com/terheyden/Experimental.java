@@ -93,7 +93,7 @@ public class Experimental
         // Collectors.collectingAndThen() - collect and then make immutable.
 
         ImmutableMap<String, User> map2 = users.entrySet().stream()
-            .collect(ImmutableCollectors.toThing());
+            .collect(ImmutableCollectors.toImmutableSortedMap());
     }
 
     @SafeVarargs
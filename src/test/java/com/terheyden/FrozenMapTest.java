@@ -0,0 +1,90 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrozenMapTest
+{
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFreezeAndReopen() throws IOException
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        ImmutableMap<String, User> users = ImmutableMap.of(
+            "Tashi", user2,
+            "Cora", user1,
+            "Mika", user3);
+
+        Path path = tempDir.resolve("users.frozen");
+        FrozenMap<String, User> frozen = Immutables.freezeMap(users, path, Codecs.STRING, Codecs.serializable());
+
+        assertEquals(users, frozen);
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), new ArrayList<>(frozen.keySet()));
+
+        FrozenMap<String, User> reopened = Immutables.openFrozenMap(path, Codecs.STRING, Codecs.serializable());
+        assertEquals(user2, reopened.get("Tashi"));
+        assertNull(reopened.get("Fgh"));
+        assertNull(reopened.get(42));
+        assertFalse(reopened.containsKey("Fgh"));
+        assertThrows(UnsupportedOperationException.class, () -> reopened.put("Fgh", user1));
+    }
+
+    @Test
+    public void testNumericKeyOrder() throws IOException
+    {
+        Map<Long, String> expected = new TreeMap<>();
+
+        for (long i = -5_000; i < 5_000; i += 3)
+        {
+            expected.put(i * 1_000_003, "v" + i);
+        }
+
+        Path path = tempDir.resolve("longs.frozen");
+        FrozenMap.write(expected, path, Codecs.LONG, Codecs.STRING);
+        FrozenMap<Long, String> frozen = FrozenMap.open(path, Codecs.LONG, Codecs.STRING);
+
+        assertEquals(expected.size(), frozen.size());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(frozen.entrySet()));
+
+        for (Map.Entry<Long, String> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), frozen.get(entry.getKey()));
+            assertNull(frozen.get(entry.getKey() + 1));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException
+    {
+        Path path = tempDir.resolve("garbage.frozen");
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20 });
+
+        IOException e = assertThrows(IOException.class, () -> FrozenMap.open(path, Codecs.STRING, Codecs.STRING));
+        assertTrue(e.getMessage().startsWith("Not a frozen map snapshot"));
+
+        Path empty = tempDir.resolve("empty.frozen");
+        FrozenMap.write(ImmutableMap.of(), empty, Codecs.STRING, Codecs.STRING);
+        assertTrue(FrozenMap.open(empty, Codecs.STRING, Codecs.STRING).isEmpty());
+    }
+}
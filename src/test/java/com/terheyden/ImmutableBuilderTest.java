@@ -2,15 +2,37 @@ package com.terheyden;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
 import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ImmutableBuilderTest
 {
@@ -54,4 +76,448 @@ class ImmutableBuilderTest
         assertFalse(iter4.hasNext());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testImmutableTerminals()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        ImmutableList<String> list = Immutables
+            .builder()
+            .addListValues(ImmutableList.of("Tashi", "Cora", "Mika", "Cora"))
+            .addListValue("Fgh")
+            .removeListValue("Mika")
+            .toImmutableList();
+
+        assertEquals(ImmutableList.of("Tashi", "Cora", "Cora", "Fgh"), list);
+
+        ImmutableList<String> sortedList = Immutables
+            .builder()
+            .addListValues(list)
+            .removeListValue("Fgh")
+            .sortList()
+            .toImmutableList();
+
+        assertEquals(ImmutableList.of("Cora", "Cora", "Tashi"), sortedList);
+
+        ImmutableSortedSet<String> sortedSet = Immutables
+            .builder()
+            .addSetValues(list)
+            .toImmutableSortedSet();
+
+        assertEquals(ImmutableList.of("Cora", "Fgh", "Tashi"), sortedSet.asList());
+
+        ImmutableListMultimap<String, User> listMap = ImmutableListMultimap.of(
+            "Tashi", user2,
+            "Cora", user1,
+            "Cora", user1,
+            "Mika", user3);
+
+        ImmutableListMultimap<String, User> listMap2 = Immutables
+            .from(listMap)
+            .removeMapValue("Cora", user1)
+            .removeMapKey("Mika")
+            .sortMapKeys()
+            .toImmutableListMultimap();
+
+        // Only the first matching pair is removed from a list multimap:
+        assertEquals(ImmutableListMultimap.of("Cora", user1, "Tashi", user2), listMap2);
+        assertEquals(ImmutableList.of("Cora", "Tashi"), listMap2.keySet().asList());
+
+        ImmutableSetMultimap<String, User> setMap = Immutables
+            .from(listMap)
+            .addMapValue("Tashi", user3)
+            .removeMapValue("Cora", user1)
+            .toImmutableSetMultimap();
+
+        assertEquals(ImmutableSetMultimap.of("Tashi", user2, "Tashi", user3, "Mika", user3), setMap);
+
+        PersistentSetMultimap<String, User> persistentSetMap = Immutables
+            .from(listMap)
+            .addMapValue("Tashi", user3)
+            .removeMapValue("Cora", user1)
+            .toPersistentSetMultimap();
+
+        assertEquals(setMap, persistentSetMap);
+
+        PersistentListMultimap<String, User> persistentListMap = Immutables
+            .from(listMap)
+            .removeMapValue("Cora", user1)
+            .removeMapKey("Mika")
+            .toPersistentListMultimap();
+
+        assertEquals(listMap2, persistentListMap);
+    }
+
+    @Test
+    public void testListRemovals()
+    {
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> idsToRemove = new ArrayList<>();
+
+        for (int i = 0; i < 1_000_000; i++)
+        {
+            ids.add(i);
+
+            if (i % 20 == 0)
+            {
+                idsToRemove.add(i);
+            }
+        }
+
+        // Hash-indexed, so this stays linear:
+        List<Integer> remaining = Immutables
+            .builder()
+            .addListValues(ids)
+            .removeListValues(idsToRemove)
+            .toList();
+
+        assertEquals(950_000, remaining.size());
+        assertEquals(Integer.valueOf(1), remaining.get(0));
+        assertEquals(Integer.valueOf(21), remaining.get(19));
+
+        ImmutableList<String> removeAll = Immutables
+            .builder()
+            .addListValues(ImmutableList.of("Cora", "Mika", "Cora", "Cora"))
+            .removeListValue("Cora")
+            .toImmutableList();
+
+        assertEquals(ImmutableList.of("Mika"), removeAll);
+
+        ImmutableList<String> removeOne = Immutables
+            .builder()
+            .addListValues(ImmutableList.of("Cora", "Mika", "Cora", "Cora"))
+            .removeListValues(ImmutableList.of("Cora", "Cora", "Tashi"))
+            .removeOneOccurrence()
+            .toImmutableList();
+
+        assertEquals(ImmutableList.of("Mika", "Cora"), removeOne);
+    }
+
+    @Test
+    public void testSortedSourceMerge()
+    {
+        ImmutableSortedSet<Integer> source = ImmutableSortedSet.of(10, 20, 30, 40);
+
+        ImmutableBuilder builder = Immutables
+            .from(source)
+            .addListValues(ImmutableList.of(35, 5, 20, 50))
+            .removeListValue(30)
+            .sortList();
+
+        assertEquals(ImmutableList.of(5, 10, 20, 20, 35, 40, 50), builder.toImmutableList());
+        assertEquals(ImmutableList.of(5, 10, 20, 20, 35, 40, 50), builder.toList());
+        assertEquals(ImmutableSortedSet.of(5, 10, 20, 35, 40, 50), builder.toImmutableSortedSet());
+        assertEquals(ImmutableLongArray.of(5, 10, 20, 20, 35, 40, 50), builder.toImmutableLongArray());
+
+        // Unsorted sources still get sorted:
+        assertEquals(
+            ImmutableList.of(5, 10, 20, 50),
+            Immutables.from(ImmutableList.of(50, 10)).addListValues(ImmutableList.of(20, 5)).toSortedList());
+
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        TreeMultimap<String, Integer> sortedMap = TreeMultimap.create();
+        sortedMap.put("Cora", 8);
+        sortedMap.put("Tashi", 11);
+
+        ImmutableListMultimap<String, Integer> mergedMap = Immutables
+            .from(sortedMap)
+            .addMapValue("Mika", 12)
+            .addMapValue("Cora", 9)
+            .removeMapKey("Tashi")
+            .sortMapKeys()
+            .toImmutableListMultimap();
+
+        assertEquals(ImmutableListMultimap.of("Cora", 8, "Cora", 9, "Mika", 12), mergedMap);
+        assertEquals(ImmutableList.of("Cora", "Mika"), mergedMap.keySet().asList());
+    }
+
+    @Test
+    public void testPassthrough()
+    {
+        ImmutableSortedSet<Integer> sortedSet = ImmutableSortedSet.copyOf(ContiguousSet.closedOpen(0, 1_000));
+        ImmutableList<Integer> list = sortedSet.asList();
+
+        assertSame(list, Immutables.from(list).toImmutableList());
+        assertSame(list, Immutables.from(list).removeListValue(-1).toImmutableList());
+        assertSame(sortedSet, Immutables.from(sortedSet).addSetValue(10).removeSetValue(-1).toImmutableSortedSet());
+        assertEquals(999, Immutables.from(sortedSet).removeSetValue(10).toImmutableSortedSet().size());
+
+        ImmutableSetMultimap.Builder<Integer, Integer> setMapBuilder = ImmutableSetMultimap.builder();
+        list.forEach(val -> setMapBuilder.put(val % 100, val));
+        ImmutableSetMultimap<Integer, Integer> setMap = setMapBuilder.build();
+
+        assertSame(setMap, Immutables.from(setMap).toImmutableSetMultimap());
+        assertSame(setMap, Immutables
+            .from(setMap)
+            .addMapValue(1, 101)
+            .removeMapValue(1, 102)
+            .removeMapKey(-1)
+            .toImmutableSetMultimap());
+
+        ImmutableListMultimap<Integer, Integer> listMap = ImmutableListMultimap.copyOf(setMap);
+        assertSame(listMap, Immutables.from(listMap).removeMapValue(1, 102).toImmutableListMultimap());
+        assertEquals(1_001, Immutables.from(listMap).addMapValue(1, 101).toImmutableListMultimap().size());
+
+        // Persistent sources take small deltas one edit at a time:
+        PersistentSetMultimap<Integer, Integer> persistentSetMap = PersistentSetMultimap.copyOf(setMap);
+        assertSame(persistentSetMap, Immutables.from(persistentSetMap).addMapValue(1, 101).toPersistentSetMultimap());
+
+        PersistentSetMultimap<Integer, Integer> editedSetMap = Immutables
+            .from(persistentSetMap)
+            .addMapValue(1, 2)
+            .removeMapValue(1, 101)
+            .removeMapKey(2)
+            .toPersistentSetMultimap();
+
+        assertEquals(Immutables
+            .from(setMap)
+            .addMapValue(1, 2)
+            .removeMapValue(1, 101)
+            .removeMapKey(2)
+            .toImmutableSetMultimap(), editedSetMap);
+
+        PersistentListMultimap<Integer, Integer> persistentListMap = PersistentListMultimap.copyOf(listMap);
+
+        PersistentListMultimap<Integer, Integer> editedListMap = Immutables
+            .from(persistentListMap)
+            .addMapValue(1, 1)
+            .addMapValue(1, 7)
+            .removeMapValue(1, 1)
+            .removeMapValue(1, 7)
+            .toPersistentListMultimap();
+
+        // The source's 1 goes, then the added 7, since the source has none:
+        assertEquals(ImmutableList.builder().addAll(listMap.get(1).subList(1, 10)).add(1).build(), editedListMap.get(1));
+    }
+
+    @Test
+    public void testParallel()
+    {
+        Random random = new Random(42);
+        List<Integer> values = new ArrayList<>();
+        List<Integer> valuesToRemove = new ArrayList<>();
+
+        for (int i = 0; i < 200_000; i++)
+        {
+            values.add(random.nextInt(50_000));
+
+            if (i % 50 == 0)
+            {
+                valuesToRemove.add(random.nextInt(50_000));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            Supplier<ImmutableBuilder> builder = () -> Immutables
+                .builder()
+                .addListValues(values)
+                .removeListValues(valuesToRemove);
+
+            assertEquals(builder.get().toList(), builder.get().parallel(0, pool).toList());
+            assertEquals(builder.get().toSortedList(), builder.get().parallel(0, pool).toSortedList());
+            assertEquals(
+                builder.get().sortList().toImmutableList(),
+                builder.get().parallel().sortList().toImmutableList());
+            assertEquals(builder.get().toImmutableList(), builder.get().parallel(0, pool).toImmutableList());
+            assertEquals(
+                builder.get().toImmutableSortedSet().asList(),
+                builder.get().parallel(0, pool).toImmutableSortedSet().asList());
+            assertEquals(
+                builder.get().removeOneOccurrence().toSortedList(),
+                builder.get().removeOneOccurrence().parallel(0, pool).toSortedList());
+
+            // A sorted source is merged with the additions rather than sorted in parallel:
+            Supplier<ImmutableBuilder> sortedBuilder = () -> Immutables
+                .from(ImmutableSortedSet.copyOf(values))
+                .addListValues(valuesToRemove)
+                .removeListValue(values.get(0));
+
+            assertEquals(sortedBuilder.get().toList(), sortedBuilder.get().parallel(0, pool).toList());
+            assertEquals(sortedBuilder.get().toSortedList(), sortedBuilder.get().parallel(0, pool).toSortedList());
+            assertEquals(
+                sortedBuilder.get().sortList().toImmutableList(),
+                sortedBuilder.get().parallel(0, pool).sortList().toImmutableList());
+            assertEquals(
+                sortedBuilder.get().toImmutableSortedSet().asList(),
+                sortedBuilder.get().parallel(0, pool).toImmutableSortedSet().asList());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamedValues()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        // Nothing's read until the terminal:
+        Iterator<Integer> values = ImmutableList.of(1, 2, 5).iterator();
+        ImmutableBuilder builder = Immutables
+            .from(ImmutableList.of(9, 8))
+            .addListValue(7)
+            .addListValues(values)
+            .addListValue(6)
+            .addListValues(Stream.of(4, 3))
+            .removeListValues(ImmutableList.of(3, 8));
+
+        assertTrue(values.hasNext());
+        assertEquals(ImmutableList.of(9, 7, 1, 2, 5, 6, 4), builder.toImmutableList());
+        assertFalse(values.hasNext());
+        assertThrows(IllegalStateException.class, builder::toImmutableList);
+
+        assertEquals(
+            ImmutableSortedSet.of(1, 2, 4, 5, 6, 7, 9),
+            Immutables
+                .from(ImmutableSortedSet.of(9, 8))
+                .addSetValues(Stream.of(1, 2, 4, 5, 6, 7, 8))
+                .removeSetValue(8)
+                .toImmutableSortedSet());
+
+        ImmutableSetMultimap<String, User> map = ImmutableSetMultimap.of("Cora", user1, "Tashi", user2);
+        Supplier<Stream<Map.Entry<String, User>>> entries = () -> Stream.of(
+            Maps.immutableEntry("Mika", user3),
+            Maps.immutableEntry("Tashi", user2),
+            Maps.immutableEntry("Tashi", user3));
+
+        assertEquals(
+            ImmutableSetMultimap.of("Cora", user1, "Mika", user3, "Tashi", user3),
+            Immutables.from(map).addMapValues(entries.get()).removeMapValue("Tashi", user2).toImmutableSetMultimap());
+        assertEquals(
+            ImmutableListMultimap.of("Cora", user1, "Mika", user3, "Tashi", user2, "Tashi", user2, "Tashi", user3),
+            Immutables.from(map).addMultimapValues(entries.get()).sortMapKeys().toListMultimap());
+        assertEquals(
+            PersistentSetMultimap.copyOf(map).assoc("Mika", user3).assoc("Tashi", user3),
+            Immutables.from(PersistentSetMultimap.copyOf(map)).addMapValues(entries.get()).toPersistentSetMultimap());
+    }
+
+    @Test
+    public void testSpillToDisk(@TempDir Path dir) throws IOException
+    {
+        Random random = new Random(42);
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++)
+        {
+            values.add(random.nextInt(5_000));
+        }
+
+        Supplier<ImmutableBuilder> builder = () -> Immutables
+            .builder()
+            .addListValues(values.subList(0, 100))
+            .removeListValues(ImmutableList.of(1, 2, 3));
+
+        ImmutableBuilder spilled = builder.get().spillToDisk(Codecs.INTEGER, 1_000, dir);
+        values.subList(100, values.size()).forEach(spilled::addListValue);
+        assertEquals(builder.get().addListValues(values.subList(100, values.size())).toSortedList(), spilled.toSortedList());
+
+        // The runs are gone once the merge is done, and can't be read again:
+        assertEquals(0, Files.list(dir).count());
+        assertThrows(IllegalStateException.class, spilled::toSortedList);
+
+        ImmutableSortedSet<Integer> expectedSet = ImmutableSortedSet.copyOf(values);
+        assertEquals(expectedSet, Immutables.from(values).spillToDisk(Codecs.INTEGER, 1_000, dir).toImmutableSortedSet());
+
+        // Unsorted terminals need sortList(), since the values come back sorted either way:
+        assertThrows(
+            IllegalStateException.class,
+            () -> Immutables.from(values).spillToDisk(Codecs.INTEGER, 1_000, dir).toList());
+
+        // Closing a stream before the end still cleans up:
+        try (Stream<Integer> stream = Immutables.from(values).spillToDisk(Codecs.INTEGER, 1_000, dir).toSortedStream())
+        {
+            assertEquals(expectedSet.first(), stream.findFirst().get());
+        }
+
+        assertEquals(0, Files.list(dir).count());
+    }
+
+    @Test
+    public void testSpillMapToDisk(@TempDir Path dir) throws IOException
+    {
+        Random random = new Random(42);
+        SetMultimap<String, Integer> entries = TreeMultimap.create();
+
+        for (int i = 0; i < 10_000; i++)
+        {
+            entries.put("key" + random.nextInt(500), random.nextInt(5_000));
+        }
+
+        ImmutableSetMultimap<String, Integer> src = ImmutableSetMultimap.of("key1", -1, "key2", -2);
+
+        Supplier<ImmutableBuilder> builder = () -> Immutables
+            .from(src)
+            .removeMapKey("key3")
+            .removeMapValue("key1", -1);
+
+        ImmutableBuilder spilled = builder.get().spillMapToDisk(Codecs.STRING, Codecs.INTEGER, 1_000, dir);
+        entries.forEach(spilled::addMapValue);
+
+        ImmutableBuilder inMemory = builder.get();
+        entries.forEach(inMemory::addMapValue);
+
+        // Keys come back sorted, with each key's values in the order they were added:
+        ImmutableSetMultimap<String, Integer> expected = inMemory.sortMapKeys().toImmutableSetMultimap();
+        ImmutableListMultimap<String, Integer> actual = spilled.toImmutableListMultimap();
+        assertEquals(expected, ImmutableSetMultimap.copyOf(actual));
+        assertEquals(expected.keySet().asList(), actual.keySet().asList());
+        assertEquals(ImmutableList.copyOf(entries.get("key42")), actual.get("key42"));
+        assertEquals(0, Files.list(dir).count());
+
+        assertEquals(
+            builder.get().addMapValues(entries.entries().stream()).toSetMultimap(),
+            builder.get()
+                .addMapValues(entries.entries().stream())
+                .spillMapToDisk(Codecs.STRING, Codecs.INTEGER, 1_000, dir)
+                .toSetMultimap());
+        assertEquals(0, Files.list(dir).count());
+    }
+
+    @Test
+    public void testPrimitiveTerminals()
+    {
+        ImmutableBuilder builder = Immutables
+            .builder()
+            .addListValues(ImmutableList.of(30L, 10L, 20L, 10L))
+            .removeListValue(20L);
+
+        assertEquals(ImmutableLongArray.of(30, 10, 10), builder.toImmutableLongArray());
+        assertEquals(ImmutableIntArray.of(30, 10, 10), builder.toImmutableIntArray());
+        assertEquals(ImmutableLongSet.of(10, 30), builder.toImmutableLongSet());
+        assertEquals(ImmutableDoubleArray.of(10, 10, 30), builder.sortList().toImmutableDoubleArray());
+    }
+
+    @Test
+    public void testIntern()
+    {
+        ImmutableInterner interner = ImmutableInterner.weak();
+        User user = new User("Cora", 8);
+
+        ImmutableSetMultimap<String, User> map1 = Immutables
+            .builder()
+            .addMapValue(new String("Cora"), user)
+            .intern(interner)
+            .toImmutableSetMultimap();
+
+        ImmutableSetMultimap<String, User> map2 = Immutables
+            .builder()
+            .addMapValue(new String("Cora"), user)
+            .intern(interner)
+            .toImmutableSetMultimap();
+
+        assertSame(map1, map2);
+        assertSame(map1.keySet().iterator().next(), interner.internValue("Cora"));
+    }
+}
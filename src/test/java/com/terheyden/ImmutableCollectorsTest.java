@@ -0,0 +1,81 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import org.junit.jupiter.api.Test;
+
+class ImmutableCollectorsTest
+{
+    @Test
+    public void testParallelMatchesSequential()
+    {
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < 200_000; i++)
+        {
+            // Scrambled, so the sorted map has real work to do:
+            values.add((i * 7_919) % 200_000);
+        }
+
+        assertEquals(
+            values.stream().collect(ImmutableList.toImmutableList()),
+            values.parallelStream().collect(ImmutableCollectors.toImmutableList()));
+
+        ImmutableMap<Integer, String> map = values.parallelStream()
+            .collect(ImmutableCollectors.toImmutableMap(Function.identity(), String::valueOf));
+
+        assertEquals(ImmutableList.copyOf(values), map.keySet().asList());
+
+        ImmutableSortedMap<Integer, String> sortedMap = values.parallelStream()
+            .map(val -> Maps.immutableEntry(val, String.valueOf(val)))
+            .collect(ImmutableCollectors.toImmutableSortedMap());
+
+        assertEquals(map, sortedMap);
+        assertEquals(Integer.valueOf(0), sortedMap.firstKey());
+        assertEquals(Integer.valueOf(199_999), sortedMap.lastKey());
+
+        ImmutableSetMultimap<Integer, Integer> setMultimap = values.parallelStream()
+            .collect(ImmutableCollectors.toImmutableSetMultimap(val -> val % 10, val -> val / 2));
+
+        assertEquals(
+            values.stream().collect(ImmutableSetMultimap.toImmutableSetMultimap(val -> val % 10, val -> val / 2)),
+            setMultimap);
+
+        ImmutableListMultimap<Integer, Integer> listMultimap = values.parallelStream()
+            .collect(ImmutableCollectors.toImmutableListMultimap(val -> val % 10, val -> val / 2));
+
+        assertEquals(
+            values.stream().collect(ImmutableListMultimap.toImmutableListMultimap(val -> val % 10, val -> val / 2)),
+            listMultimap);
+    }
+
+    @Test
+    public void testDuplicateKeys()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+
+        assertThrows(IllegalArgumentException.class, () -> Stream.of(user1, user2, user1)
+            .collect(ImmutableCollectors.toImmutableMap(User::getName, User::getAge)));
+
+        Stream<Map.Entry<String, User>> entries = IntStream.range(0, 3)
+            .mapToObj(i -> Maps.immutableEntry("Cora", user1));
+
+        assertThrows(IllegalArgumentException.class, () -> entries.collect(ImmutableCollectors.toImmutableSortedMap()));
+    }
+}
@@ -0,0 +1,97 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Comparator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.jupiter.api.Test;
+
+class ImmutableInternerTest
+{
+    @Test
+    public void testWeak()
+    {
+        ImmutableInterner interner = ImmutableInterner.weak();
+
+        String cora = new String("Cora");
+        String mika = new String("Mika");
+        ImmutableList<String> list1 = interner.intern(ImmutableList.of(cora, mika));
+        ImmutableList<String> list2 = interner.intern(ImmutableList.of(new String("Cora"), new String("Mika")));
+
+        assertSame(list1, list2);
+        assertSame(cora, list2.get(0));
+
+        User user = new User("Tashi", 11);
+        ImmutableMap<String, User> map1 = interner.intern(ImmutableMap.of(new String("Tashi"), user));
+        ImmutableMap<String, User> map2 = interner.intern(ImmutableMap.of(new String("Tashi"), user));
+        assertSame(map1, map2);
+
+        // Equal sets that sort differently stay separate:
+        ImmutableSortedSet<String> natural = ImmutableSortedSet.of("Cora", "Mika");
+        ImmutableSortedSet<String> reversed = ImmutableSortedSet.orderedBy(Comparator.<String>reverseOrder())
+            .add("Cora", "Mika")
+            .build();
+
+        ImmutableSet<String> naturalCanonical = interner.intern(natural);
+        ImmutableSet<String> reversedCanonical = interner.intern(reversed);
+
+        assertEquals(naturalCanonical, reversedCanonical);
+        assertNotSame(naturalCanonical, reversedCanonical);
+        assertEquals("Mika", reversedCanonical.iterator().next());
+        assertSame(cora, naturalCanonical.iterator().next());
+    }
+
+    @Test
+    public void testIterationOrder()
+    {
+        ImmutableInterner interner = ImmutableInterner.weak();
+
+        // Equal, but iterating differently - neither may come back in the other's order:
+        ImmutableSet<String> set1 = interner.intern(ImmutableSet.of("Mika", "Cora"));
+        ImmutableSet<String> set2 = interner.intern(ImmutableSet.of("Cora", "Mika"));
+        assertEquals(set1, set2);
+        assertEquals(ImmutableList.of("Cora", "Mika"), set2.asList());
+        assertSame(set1, interner.intern(ImmutableSet.of("Mika", "Cora")));
+
+        ImmutableMap<String, Integer> map = interner.intern(ImmutableMap.of("Tashi", 11, "Cora", 8));
+        assertEquals(
+            ImmutableList.of("Cora", "Tashi"),
+            interner.intern(ImmutableMap.of("Cora", 8, "Tashi", 11)).keySet().asList());
+        assertSame(map, interner.intern(ImmutableMap.of("Tashi", 11, "Cora", 8)));
+
+        interner.intern(ImmutableSetMultimap.of("z", 1, "a", 2));
+        ImmutableSetMultimap<String, Integer> sorted = Immutables
+            .from(ImmutableSetMultimap.of("z", 1, "a", 2))
+            .sortMapKeys()
+            .intern(interner)
+            .toImmutableSetMultimap();
+        assertEquals(ImmutableList.of("a", "z"), sorted.keySet().asList());
+    }
+
+    @Test
+    public void testBounded()
+    {
+        ImmutableInterner interner = ImmutableInterner.bounded(100);
+
+        ImmutableSet<Integer> set1 = interner.intern(ImmutableSet.of(1000, 2000));
+        ImmutableSet<Integer> set2 = interner.intern(ImmutableSet.of(1000, 2000));
+        assertSame(set1, set2);
+
+        // Fill the cache far past its bound:
+        for (int i = 0; i < 10_000; i++)
+        {
+            interner.internValue(ImmutableList.of(i));
+        }
+
+        assertNotSame(set1, interner.intern(ImmutableSet.of(1000, 2000)));
+        assertEquals(set1, Immutables.intern(ImmutableSet.of(1000, 2000)));
+    }
+}
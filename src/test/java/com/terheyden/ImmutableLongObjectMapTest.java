@@ -0,0 +1,81 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ImmutableLongObjectMapTest
+{
+    @Test
+    public void testAddRemove()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+
+        ImmutableLongObjectMap<User> map1 = ImmutableLongObjectMap.of(8, user1);
+        ImmutableLongObjectMap<User> map2 = Immutables.addToMap(map1, 0, user2);
+        ImmutableLongObjectMap<User> map3 = Immutables.removeFromMap(map2, 8);
+
+        assertEquals(1, map1.size());
+        assertEquals(2, map2.size());
+        assertEquals(user1, map2.get(8));
+        assertEquals(user2, map2.get(0));
+        assertNull(map3.get(8));
+        assertFalse(map3.containsKey(8));
+        assertEquals(ImmutableLongSet.of(0), map3.keySet());
+
+        assertSame(map3, Immutables.addToMap(map3, 0, user2));
+        assertSame(map3, Immutables.removeFromMap(map3, 8));
+    }
+
+    @Test
+    public void testTooManyEntries()
+    {
+        assertThrows(IllegalArgumentException.class, () -> ImmutableLongObjectMap.builder(1_600_000_000));
+    }
+
+    @Test
+    public void testMatchesHashMap()
+    {
+        Random random = new Random(42);
+        Map<Long, Integer> expected = new HashMap<>();
+        ImmutableLongObjectMap<Integer> actual = ImmutableLongObjectMap.of();
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            long key = random.nextInt(2_000) - 10;
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key);
+                actual = actual.without(key);
+            }
+            else
+            {
+                expected.put(key, i);
+                actual = actual.with(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.hashCode(), actual.hashCode());
+
+        for (long key = -20; key < 2_010; key++)
+        {
+            assertEquals(expected.get(key), actual.get(key));
+        }
+
+        Map<Long, Integer> iterated = new HashMap<>();
+        actual.forEach(iterated::put);
+        assertEquals(expected, iterated);
+        assertEquals(actual, actual.toBuilder().build());
+    }
+}
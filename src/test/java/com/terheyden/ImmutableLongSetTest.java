@@ -0,0 +1,90 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ImmutableLongSetTest
+{
+    @Test
+    public void testAddRemove()
+    {
+        ImmutableLongSet set1 = ImmutableLongSet.of(1, 2, 3);
+        ImmutableLongSet set2 = Immutables.addToSet(set1, 0, 4);
+        ImmutableLongSet set3 = Immutables.removeFromSet(set2, 1, 0, 99);
+
+        assertEquals(3, set1.size());
+        assertEquals(5, set2.size());
+        assertTrue(set2.contains(0));
+        assertFalse(set3.contains(0));
+        assertFalse(set3.contains(1));
+        assertEquals(ImmutableLongSet.of(2, 3, 4), set3);
+
+        assertSame(set3, Immutables.addToSet(set3, 2, 4));
+        assertSame(set3, Immutables.removeFromSet(set3, 0, 1));
+    }
+
+    @Test
+    public void testTooManyValues()
+    {
+        // Past a table of 2^30 slots, the capacity would overflow:
+        assertThrows(IllegalArgumentException.class, () -> ImmutableLongSet.builder(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMatchesHashSet()
+    {
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        ImmutableLongSet.Builder builder = ImmutableLongSet.builder();
+        ImmutableLongSet snapshot = builder.build();
+
+        for (int i = 0; i < 50_000; i++)
+        {
+            // Small range, so probe runs collide and removals have to shift entries back:
+            long value = random.nextInt(5_000) - 100;
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(value);
+                builder.remove(value);
+            }
+            else
+            {
+                expected.add(value);
+                builder.add(value);
+            }
+
+            if (i % 10_000 == 0)
+            {
+                // Building mid-way must not let later edits leak into the built set:
+                int snapshotSize = expected.size();
+                snapshot = builder.build();
+                assertEquals(snapshotSize, snapshot.size());
+            }
+        }
+
+        ImmutableLongSet actual = builder.build();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.hashCode(), actual.hashCode());
+
+        for (long value = -200; value < 5_100; value++)
+        {
+            assertEquals(expected.contains(value), actual.contains(value));
+        }
+
+        Set<Long> iterated = new HashSet<>();
+        actual.forEach(iterated::add);
+        assertEquals(expected, iterated);
+        assertEquals(expected.size(), actual.stream().count());
+        assertEquals(actual, ImmutableLongSet.of(actual.toArray()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.jupiter.api.Test;
+
+class ImmutableRefTest
+{
+    @Test
+    public void testConcurrentWriters() throws Exception
+    {
+        int threads = 32;
+        int editsPerThread = 500;
+
+        ImmutableRef<ImmutableMap<Integer, Integer>, Map<Integer, Integer>> ref = ImmutableRef.ofMap(ImmutableMap.of());
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        try
+        {
+            // Readers never block, and never see the map shrink:
+            Future<Boolean> reader = executor.submit(() -> {
+                int lastSize = 0;
+
+                while (writing.get())
+                {
+                    int size = ref.get().size();
+
+                    if (size < lastSize)
+                    {
+                        return false;
+                    }
+
+                    lastSize = size;
+                }
+
+                return true;
+            });
+
+            List<Future<?>> writers = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++)
+            {
+                int thread = t;
+
+                writers.add(executor.submit(() -> {
+                    start.await();
+
+                    for (int i = 0; i < editsPerThread; i++)
+                    {
+                        int key = thread * editsPerThread + i;
+                        ImmutableMap<Integer, Integer> published = ref.update(map -> map.put(key, key));
+                        assertTrue(published.containsKey(key));
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> writer : writers)
+            {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+
+            writing.set(false);
+            assertTrue(reader.get(30, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * editsPerThread, ref.get().size());
+    }
+
+    @Test
+    public void testFailedEdit()
+    {
+        ImmutableRef<ImmutableList<String>, List<String>> ref = ImmutableRef.ofList(ImmutableList.of("Cora"));
+
+        assertEquals(ImmutableList.of("Cora", "Mika"), ref.update(list -> list.add("Mika")));
+
+        assertThrows(IllegalStateException.class, () -> ref.update(list -> {
+            list.add("Tashi");
+            throw new IllegalStateException();
+        }));
+
+        // The failed edit left nothing behind:
+        assertEquals(ImmutableList.of("Cora", "Mika"), ref.get());
+        assertFalse(ref.get().contains("Tashi"));
+
+        // Errors are handed back the same way, rather than leaving the batch unfinished:
+        assertThrows(AssertionError.class, () -> ref.update(list -> {
+            list.add("Tashi");
+            throw new AssertionError();
+        }));
+
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), ref.update(list -> list.add("Tashi")));
+    }
+}
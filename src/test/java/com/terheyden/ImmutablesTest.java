@@ -1,8 +1,15 @@
 package com.terheyden;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -10,9 +17,13 @@ import java.util.SortedMap;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
 
 import org.junit.jupiter.api.Test;
 
@@ -43,6 +54,10 @@ class ImmutablesTest
 
         assertEquals(3, list5.size());
         assertTrue(list5.contains("Tashi"));
+
+        // No-ops hand back the source:
+        assertSame(list2, Immutables.addToList(list2));
+        assertSame(list2, Immutables.removeFromList(list2, "fake"));
     }
 
     @Test
@@ -72,6 +87,10 @@ class ImmutablesTest
         // Removing from an immutable map:
         ImmutableMap<String, User> map5 = Immutables.removeFromMap(map4, "Cora");
         assertEquals(2, map5.size());
+
+        // No-ops hand back the source:
+        assertSame(map5, Immutables.removeFromMap(map5, "Cora"));
+        assertSame(map5, Immutables.addToMap(map5, "Tashi", user2));
     }
 
     @Test
@@ -112,6 +131,38 @@ class ImmutablesTest
         // Adding to an immutable map:
         ImmutableSortedMap<String, User> map5 = Immutables.addToSortedMap(map4, "Cora", user1);
         assertEquals(3, map5.size());
+
+        // No-ops hand back the source:
+        assertSame(map4, Immutables.removeFromSortedMap(map4, "Cora"));
+        assertSame(map5, Immutables.addToSortedMap(map5, "Cora", user1));
+    }
+
+    @Test
+    public void testAddToSortedMapList()
+    {
+        Instant now = Instant.parse("2019-04-01T12:00:00Z");
+        Instant hourAhead = now.plusSeconds(3_600);
+
+        ImmutableSortedMap<Instant, ImmutableList<String>> scheduledItems1 = ImmutableSortedMap.of(
+            now, ImmutableList.of("Cora"),
+            hourAhead, ImmutableList.of("Tashi"));
+
+        ImmutableSortedMap<Instant, ImmutableList<String>> scheduledItems2 =
+            Immutables.addToSortedMapList(scheduledItems1, hourAhead, "Mika");
+
+        ImmutableSortedMap<Instant, ImmutableList<String>> scheduledItems3 =
+            Immutables.addToSortedMapList(scheduledItems2, now.minusSeconds(1), "Mika");
+
+        assertEquals(ImmutableList.of("Tashi"), scheduledItems1.get(hourAhead));
+        assertEquals(ImmutableList.of("Tashi", "Mika"), scheduledItems2.get(hourAhead));
+        assertEquals(ImmutableList.of(now.minusSeconds(1), now, hourAhead), scheduledItems3.keySet().asList());
+
+        PersistentSortedMap<Instant, PersistentVector<String>> persistentItems =
+            Immutables.addToSortedMapList(PersistentSortedMap.naturalOrder(), hourAhead, "Tashi");
+
+        assertEquals(
+            ImmutableSortedMap.of(hourAhead, ImmutableList.of("Tashi", "Mika")),
+            Immutables.addToSortedMapList(persistentItems, hourAhead, "Mika"));
     }
 
     @Test
@@ -128,6 +179,124 @@ class ImmutablesTest
 
         ImmutableSetMultimap<String, User> map2 = Immutables.addToSetMultimap(map1, "Mika", user3);
         assertEquals(3, map2.entries().size());
+        assertSame(map2, Immutables.addToSetMultimap(map2, "Mika", user3));
+
+        ImmutableSetMultimap<String, User> map3 = Immutables.removeFromSetMultimap(map2, "Tashi", user1);
+        assertEquals(ImmutableList.of("Cora", "Mika"), map3.keySet().asList());
+        assertSame(map3, Immutables.removeFromSetMultimap(map3, "Tashi", user1));
+
+        PersistentSetMultimap<String, User> map4 = Immutables.addToSetMultimap(
+            PersistentSetMultimap.copyOf(map1), "Mika", user3);
+
+        assertEquals(map2, map4);
+        assertEquals(map3, Immutables.removeFromSetMultimap(map4, "Tashi", user1));
+        assertEquals(map3, Immutables.removeKeyFromSetMultimap(map4, "Tashi"));
+    }
+
+    @Test
+    public void testEdit()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        ImmutableList<String> list1 = ImmutableList.of("Cora", "Tashi");
+        ImmutableList<String> list2 = Immutables.editList(list1, list -> {
+            list.add("Mika");
+            list.remove("Cora");
+        });
+
+        assertEquals(ImmutableList.of("Cora", "Tashi"), list1);
+        assertEquals(ImmutableList.of("Tashi", "Mika"), list2);
+
+        ImmutableMap<String, User> map1 = ImmutableMap.of("Cora", user1);
+        ImmutableMap<String, User> map2 = Immutables.editMap(map1, map -> {
+            map.put("Tashi", user2);
+            map.put("Mika", user3);
+            map.remove("Cora");
+        });
+
+        assertEquals(1, map1.size());
+        assertEquals(ImmutableMap.of("Tashi", user2, "Mika", user3), map2);
+
+        ImmutableSortedMap<String, User> map3 = ImmutableSortedMap.of("Tashi", user2);
+        ImmutableSortedMap<String, User> map4 = Immutables.editSortedMap(map3, map -> {
+            map.put("Mika", user3);
+            map.put("Cora", user1);
+        });
+
+        assertEquals(1, map3.size());
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), map4.keySet().asList());
+
+        ImmutableSetMultimap<String, User> map5 = ImmutableSetMultimap.of("Tashi", user2);
+        ImmutableSetMultimap<String, User> map6 = Immutables.editSetMultimap(map5, map -> {
+            map.put("Tashi", user3);
+            map.put("Tashi", user3);
+            map.put("Cora", user1);
+        });
+
+        assertEquals(1, map5.size());
+        assertEquals(3, map6.size());
+    }
+
+    @Test
+    public void testPrimitiveLists()
+    {
+        ImmutableLongArray list1 = ImmutableLongArray.of(1, 2, 3);
+        ImmutableLongArray list2 = Immutables.addToList(list1, 4, 2);
+        ImmutableLongArray list3 = Immutables.removeFromList(list2, 2, 99);
+
+        assertEquals(ImmutableLongArray.of(1, 2, 3, 4, 2), list2);
+        assertEquals(ImmutableLongArray.of(1, 3, 4), list3);
+        assertSame(list3, Immutables.removeFromList(list3, 99));
+
+        ImmutableIntArray ints = Immutables.removeFromList(Immutables.addToList(ImmutableIntArray.of(5), 6, 7), 5);
+        assertEquals(ImmutableIntArray.of(6, 7), ints);
+
+        ImmutableDoubleArray doubles = Immutables.addToList(ImmutableDoubleArray.of(0.0, Double.NaN), -0.0);
+        assertEquals(ImmutableDoubleArray.of(-0.0), Immutables.removeFromList(doubles, 0.0, Double.NaN));
+    }
+
+    @Test
+    public void testDiffPatch() throws IOException, ClassNotFoundException
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        ImmutableMap<String, User> map1 = ImmutableMap.of("Cora", user1, "Tashi", user2);
+        ImmutableMap<String, User> map2 = ImmutableMap.of("Tashi", user3, "Mika", user3);
+
+        MapPatch<String, User> patch = roundTrip(Immutables.diff(map1, map2));
+
+        assertEquals(ImmutableMap.of("Mika", user3), patch.added());
+        assertEquals(ImmutableMap.of("Tashi", user3), patch.changed());
+        assertEquals(ImmutableSet.of("Cora"), patch.removed());
+        assertEquals(map2, Immutables.apply(map1, patch));
+
+        ImmutableSetMultimap<String, User> multimap1 = ImmutableSetMultimap.of("Cora", user1, "Cora", user2);
+        ImmutableSetMultimap<String, User> multimap2 = ImmutableSetMultimap.of("Cora", user2, "Mika", user3);
+
+        MultimapPatch<String, User> multimapPatch = roundTrip(Immutables.diff(multimap1, multimap2));
+
+        assertEquals(ImmutableSetMultimap.of("Mika", user3), multimapPatch.added());
+        assertEquals(ImmutableSetMultimap.of("Cora", user1), multimapPatch.removed());
+        assertEquals(multimap2, Immutables.apply(multimap1, multimapPatch));
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T obj) throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(obj);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            return (T) in.readObject();
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.jupiter.api.Test;
+
+class MapPipelineTest
+{
+    @Test
+    public void testSteps()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+        ImmutableMap<String, User> users = ImmutableMap.of("Cora", user1, "Tashi", user2, "Mika", user3);
+
+        ImmutableMap<String, String> descriptions = Immutables.pipeline(users)
+            .filterValues(user -> user.getAge() > 10)
+            .mapEntries((name, user) -> String.format("%s, age %d", name, user.getAge()))
+            .toImmutableMap();
+
+        assertEquals(ImmutableMap.of("Tashi", "Tashi, age 11", "Mika", "Mika, age 12"), descriptions);
+        assertEquals(ImmutableList.of("Tashi", "Mika"), descriptions.keySet().asList());
+
+        assertEquals(
+            ImmutableMap.of(8, user1, 11, user2, 12, user3),
+            Immutables.pipeline(users).mapKeys(name -> users.get(name).getAge()).toPersistentHashMap());
+
+        assertEquals(
+            ImmutableMap.of("Cora", 8, "cora", 8),
+            Immutables.pipeline(users)
+                .filterKeys(name -> name.startsWith("C"))
+                .flatMap((name, user) -> ImmutableMap.of(name, user.getAge(), name.toLowerCase(), user.getAge()))
+                .toImmutableMap());
+
+        assertEquals(ImmutableMap.of("Mika", user3), Immutables.removeFromMap(ImmutableMap.of("Cora", user1, "Mika", user3), "Cora"));
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Immutables.pipeline(users).mapKeys(name -> "same").toImmutableMap());
+    }
+
+    @Test
+    public void testMemoize()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ImmutableMap<String, Integer> ages = ImmutableMap.of("Cora", 8, "Tashi", 11, "Mika", 12);
+
+        Map<String, String> view = Immutables.pipeline(ages)
+            .mapValues(age -> {
+                calls.incrementAndGet();
+                return "age " + age;
+            })
+            .memoize();
+
+        assertEquals("age 11", view.get("Tashi"));
+        assertEquals("age 11", view.get("Tashi"));
+        assertNull(view.get("fake"));
+        assertEquals(1, calls.get());
+        assertEquals(ImmutableMap.of("Cora", "age 8", "Tashi", "age 11", "Mika", "age 12"), view);
+        assertEquals(3, calls.get());
+
+        Map<String, Integer> filtered = Immutables.pipeline(ages)
+            .filter((name, age) -> {
+                calls.incrementAndGet();
+                return age > 10;
+            })
+            .memoize();
+
+        assertEquals(ImmutableMap.of("Tashi", 11, "Mika", 12), filtered);
+        assertEquals(12, (int) filtered.get("Mika"));
+        assertEquals(6, calls.get());
+    }
+}
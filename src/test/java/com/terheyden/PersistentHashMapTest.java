@@ -0,0 +1,261 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentHashMapTest
+{
+    @Test
+    public void testAddRemove()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+
+        PersistentHashMap<String, User> map1 = PersistentHashMap.of("Cora", user1);
+        PersistentHashMap<String, User> map2 = Immutables.addToMap(map1, "Tashi", user2);
+        PersistentHashMap<String, User> map3 = Immutables.removeFromMap(map2, "Cora");
+
+        assertEquals(1, map1.size());
+        assertEquals(2, map2.size());
+        assertEquals(user1, map2.get("Cora"));
+        assertEquals(user2, map2.get("Tashi"));
+
+        assertEquals(1, map3.size());
+        assertFalse(map3.containsKey("Cora"));
+        assertTrue(map3.containsKey("Tashi"));
+
+        // No-op edits hand back the same instance:
+        assertSame(map2, map2.assoc("Cora", user1));
+        assertSame(map3, map3.dissoc("Cora"));
+
+        assertThrows(UnsupportedOperationException.class, () -> map2.put("Mika", user1));
+    }
+
+    @Test
+    public void testMatchesHashMap()
+    {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> actual = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            Integer key = random.nextInt(5_000);
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key);
+                actual = actual.dissoc(key);
+            }
+            else
+            {
+                expected.put(key, i);
+                actual = actual.assoc(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+    }
+
+    @Test
+    public void testHashCollisions()
+    {
+        PersistentHashMap<Collider, String> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 100; i++)
+        {
+            map = map.assoc(new Collider(i), "v" + i);
+        }
+
+        assertEquals(100, map.size());
+        assertEquals("v42", map.get(new Collider(42)));
+
+        for (int i = 0; i < 99; i++)
+        {
+            map = map.dissoc(new Collider(i));
+        }
+
+        assertEquals(1, map.size());
+        assertEquals("v99", map.get(new Collider(99)));
+        assertNull(map.get(new Collider(0)));
+        assertEquals(ImmutableMap.of(new Collider(99), "v99"), map);
+    }
+
+    @Test
+    public void testTransient()
+    {
+        PersistentHashMap<Integer, String> map1 = PersistentHashMap.empty();
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            map1 = map1.assoc(i, "v" + i);
+        }
+
+        Map<Integer, String> expected = new HashMap<>(map1);
+
+        PersistentHashMap<Integer, String> map2 = Immutables.editMap(map1, map -> {
+            for (int i = 500; i < 5_000; i++)
+            {
+                map.put(i, "w" + i);
+            }
+
+            for (int i = 0; i < 5_000; i += 3)
+            {
+                map.remove(i);
+            }
+        });
+
+        // The source is untouched:
+        assertEquals(expected, map1);
+
+        for (int i = 500; i < 5_000; i++)
+        {
+            expected.put(i, "w" + i);
+        }
+
+        for (int i = 0; i < 5_000; i += 3)
+        {
+            expected.remove(i);
+        }
+
+        assertEquals(expected, map2);
+        assertEquals(expected.size(), map2.size());
+        assertSame(map2, Immutables.editMap(map2, map -> map.remove(-1)));
+
+        PersistentHashMap.Transient<Integer, String> tmp = map2.asTransient();
+        tmp.persistent();
+        assertThrows(IllegalStateException.class, () -> tmp.put(1, "x"));
+    }
+
+    @Test
+    public void testDiff()
+    {
+        PersistentHashMap<Integer, String> map1 = PersistentHashMap.empty();
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            map1 = map1.assoc(i, "v" + i);
+        }
+
+        PersistentHashMap<Integer, String> map2 = Immutables.editMap(map1, map -> {
+            for (int i = 0; i < 100; i++)
+            {
+                map.put(i * 1_000, "changed");
+                map.put(-i - 1, "added");
+                map.remove(i * 1_000 + 1);
+            }
+        });
+
+        MapPatch<Integer, String> patch = Immutables.diff(map1, map2);
+
+        assertEquals(100, patch.added().size());
+        assertEquals(100, patch.changed().size());
+        assertEquals(100, patch.removed().size());
+        assertEquals(MapPatch.between(map1, map2), patch);
+        assertEquals(map2, Immutables.apply(map1, patch));
+        assertTrue(Immutables.diff(map2, map2).isEmpty());
+
+        // Collision nodes fall back to comparing their entries:
+        PersistentHashMap<Collider, String> colliders1 = PersistentHashMap.empty();
+
+        for (int i = 0; i < 30; i++)
+        {
+            colliders1 = colliders1.assoc(new Collider(i), "v" + i);
+        }
+
+        PersistentHashMap<Collider, String> colliders2 = colliders1
+            .dissoc(new Collider(3))
+            .assoc(new Collider(4), "changed")
+            .assoc(new Collider(31), "added");
+
+        MapPatch<Collider, String> colliderPatch = Immutables.diff(colliders1, colliders2);
+        assertEquals(3, colliderPatch.size());
+        assertEquals(colliders2, Immutables.apply(colliders1, colliderPatch));
+    }
+
+    /**
+     * Keys whose hash codes collide in groups of ten, and fully collide in the low bits.
+     */
+    private static final class Collider
+    {
+        private final int id;
+
+        Collider(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof Collider && ((Collider) obj).id == id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (id / 10) << 20;
+        }
+    }
+
+    @Test
+    public void testHashCodeAndEquals()
+    {
+        Random random = new Random(11);
+        Map<Object, Integer> expected = new HashMap<>();
+        PersistentHashMap<Object, Integer> forwards = PersistentHashMap.empty();
+
+        for (int i = 0; i < 5_000; i++)
+        {
+            Object key = i % 10 < 3 ? new Collider(i) : (Object) random.nextInt();
+            expected.put(key, i);
+            forwards = forwards.assoc(key, i);
+            assertEquals(expected.hashCode(), forwards.hashCode());
+        }
+
+        PersistentHashMap.Transient<Object, Integer> edits = PersistentHashMap.<Object, Integer>empty().asTransient();
+        expected.forEach((key, val) -> edits.put(key, -val));
+        expected.forEach(edits::put);
+        PersistentHashMap<Object, Integer> backwards = edits.persistent();
+
+        assertEquals(expected.hashCode(), backwards.hashCode());
+        assertEquals(forwards, backwards);
+        assertEquals(backwards, forwards);
+
+        Object someKey = expected.keySet().iterator().next();
+        PersistentHashMap<Object, Integer> changed = backwards.assoc(someKey, -1);
+        assertFalse(forwards.equals(changed));
+        assertEquals(forwards, changed.assoc(someKey, expected.get(someKey)));
+
+        PersistentHashMap.Transient<Object, Integer> removals = backwards.asTransient();
+        Map<Object, Integer> remaining = new HashMap<>(expected);
+        expected.keySet().stream().filter(key -> key.hashCode() % 2 == 0).forEach(key -> {
+            removals.remove(key);
+            remaining.remove(key);
+        });
+        assertEquals(remaining.hashCode(), removals.persistent().hashCode());
+
+        for (Object key : expected.keySet())
+        {
+            forwards = forwards.dissoc(key);
+        }
+
+        assertEquals(PersistentHashMap.empty(), forwards);
+        assertEquals(0, forwards.hashCode());
+    }
+}
@@ -0,0 +1,84 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Random;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentListMultimapTest
+{
+    @Test
+    public void testAssocAndDissoc()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        PersistentListMultimap<String, User> map1 = PersistentListMultimap.<String, User>empty()
+            .assoc("Tashi", user2)
+            .assoc("Tashi", user3)
+            .assoc("Tashi", user2)
+            .assoc("Cora", user1);
+
+        assertEquals(4, map1.size());
+        assertEquals(ImmutableList.of(user2, user3, user2), map1.get("Tashi"));
+        assertEquals(ImmutableList.of(), map1.get("Mika"));
+
+        // Only the first occurrence goes:
+        PersistentListMultimap<String, User> map2 = map1.dissoc("Tashi", user2);
+        assertEquals(ImmutableList.of(user3, user2), map2.get("Tashi"));
+        assertSame(map2, map2.dissoc("Cora", user2));
+
+        PersistentListMultimap<String, User> map3 = map2.dissoc("Cora", user1);
+        assertFalse(map3.containsKey("Cora"));
+        assertEquals(ImmutableListMultimap.of("Tashi", user3, "Tashi", user2), map3);
+
+        PersistentListMultimap<String, User> map4 = map1.dissocAll("Tashi");
+        assertEquals(ImmutableListMultimap.of("Cora", user1), map4);
+        assertSame(map4, map4.dissocAll("Tashi"));
+
+        // Older versions are untouched:
+        assertEquals(4, map1.size());
+        assertEquals(ImmutableList.of(user2, user3, user2), map1.get("Tashi"));
+    }
+
+    @Test
+    public void testMatchesArrayListMultimap()
+    {
+        Random random = new Random(42);
+        ListMultimap<Integer, Integer> expected = ArrayListMultimap.create();
+        PersistentListMultimap<Integer, Integer> actual = PersistentListMultimap.empty();
+
+        for (int i = 0; i < 50_000; i++)
+        {
+            Integer key = random.nextInt(1_000);
+            Integer val = random.nextInt(50);
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key, val);
+                actual = actual.dissoc(key, val);
+            }
+            else
+            {
+                expected.put(key, val);
+                actual = actual.assoc(key, val);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.keys(), actual.keys());
+        assertEquals(actual, PersistentListMultimap.copyOf(expected));
+    }
+}
@@ -0,0 +1,93 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentScheduleTest
+{
+    private static final Instant NOW = Instant.parse("2019-04-01T12:00:00Z");
+
+    @Test
+    public void testScheduleAndPoll()
+    {
+        Instant hourAhead = NOW.plusSeconds(3_600);
+
+        PersistentSchedule<String> schedule1 = PersistentSchedule.<String>empty()
+            .schedule(hourAhead, "Tashi")
+            .schedule(NOW, "Cora")
+            .schedule(hourAhead, "Mika");
+
+        assertEquals(3, schedule1.size());
+        assertEquals(ImmutableList.of("Cora", "Tashi", "Mika"), ImmutableList.copyOf(schedule1));
+        assertEquals(ImmutableList.of("Tashi", "Mika"), schedule1.itemsAt(hourAhead));
+        assertEquals(NOW, schedule1.nextTime());
+        assertEquals(hourAhead, schedule1.lastTime());
+
+        PersistentSchedule.Poll<String> early = schedule1.pollDue(NOW.minusSeconds(1));
+        assertTrue(early.due().isEmpty());
+        assertSame(schedule1, early.remaining());
+
+        PersistentSchedule.Poll<String> poll = schedule1.pollDue(NOW);
+        assertEquals(ImmutableList.of("Cora"), ImmutableList.copyOf(poll.due()));
+        assertEquals(1, poll.due().size());
+        assertEquals(2, poll.remaining().size());
+        assertEquals(hourAhead, poll.remaining().nextTime());
+
+        PersistentSchedule<String> schedule2 = poll.remaining().unschedule(hourAhead, "Tashi");
+        assertEquals(ImmutableList.of("Mika"), ImmutableList.copyOf(schedule2));
+        assertSame(schedule2, schedule2.unschedule(hourAhead, "fake"));
+        assertNull(schedule2.unschedule(hourAhead, "Mika").nextTime());
+
+        // Older versions are untouched:
+        assertEquals(3, schedule1.size());
+        assertEquals(ImmutableList.of("Tashi", "Mika"), schedule1.itemsAt(hourAhead));
+    }
+
+    @Test
+    public void testMatchesTreeMap()
+    {
+        Random random = new Random(42);
+        TreeMap<Instant, List<Integer>> expected = new TreeMap<>();
+        PersistentSchedule<Integer> actual = PersistentSchedule.empty();
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            Instant when = NOW.plusSeconds(random.nextInt(5_000));
+            expected.computeIfAbsent(when, key -> new ArrayList<>()).add(i);
+            actual = actual.schedule(when, i);
+        }
+
+        assertEquals(20_000, actual.size());
+        assertEquals(expected, actual.asSortedMap());
+        assertEquals(actual, PersistentSchedule.copyOf(expected));
+
+        Instant from = NOW.plusSeconds(1_000);
+        Instant to = NOW.plusSeconds(2_000);
+        PersistentSchedule<Integer> range = actual.between(from, to);
+
+        assertEquals(expected.subMap(from, to), range.asSortedMap());
+        assertEquals(expected.subMap(from, to).values().stream().mapToInt(List::size).sum(), range.size());
+
+        PersistentSchedule.Poll<Integer> poll = actual.pollDue(from);
+        Map<Instant, List<Integer>> due = expected.headMap(from, true);
+
+        assertEquals(due, poll.due().asSortedMap());
+        assertEquals(expected.tailMap(from, false), poll.remaining().asSortedMap());
+        assertEquals(actual.size(), poll.due().size() + poll.remaining().size());
+        assertEquals(poll.due().size(), Iterables.size(poll.due()));
+    }
+}
@@ -0,0 +1,92 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentSetMultimapTest
+{
+    @Test
+    public void testAssocAndDissoc()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        PersistentSetMultimap<String, User> map1 = PersistentSetMultimap.<String, User>empty()
+            .assoc("Cora", user1)
+            .assoc("Tashi", user2)
+            .assoc("Tashi", user3);
+
+        assertEquals(3, map1.size());
+        assertEquals(ImmutableSet.of(user2, user3), map1.get("Tashi"));
+        assertTrue(map1.get("Mika").isEmpty());
+        assertTrue(map1.containsEntry("Cora", user1));
+        assertTrue(map1.containsValue(user3));
+        assertSame(map1, map1.assoc("Cora", user1));
+
+        PersistentSetMultimap<String, User> map2 = map1.dissoc("Tashi", user2);
+        assertEquals(ImmutableSetMultimap.of("Cora", user1, "Tashi", user3), map2);
+        assertSame(map2, map2.dissoc("Tashi", user2));
+        assertSame(map2, map2.dissoc("Mika", user3));
+
+        // Emptied keys go away:
+        PersistentSetMultimap<String, User> map3 = map2.dissoc("Tashi", user3);
+        assertFalse(map3.containsKey("Tashi"));
+        assertEquals(ImmutableSet.of("Cora"), map3.keySet());
+
+        PersistentSetMultimap<String, User> map4 = map1.dissocAll("Tashi");
+        assertEquals(1, map4.size());
+        assertEquals(map3, map4);
+        assertEquals(map3.hashCode(), map4.hashCode());
+        assertSame(map4, map4.dissocAll("Tashi"));
+
+        // Older versions are untouched:
+        assertEquals(3, map1.size());
+        assertEquals(ImmutableSet.of(user2, user3), map1.get("Tashi"));
+    }
+
+    @Test
+    public void testMatchesHashMultimap()
+    {
+        Random random = new Random(42);
+        SetMultimap<Integer, Integer> expected = HashMultimap.create();
+        PersistentSetMultimap<Integer, Integer> actual = PersistentSetMultimap.empty();
+
+        for (int i = 0; i < 50_000; i++)
+        {
+            Integer key = random.nextInt(1_000);
+            Integer val = random.nextInt(50);
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key, val);
+                actual = actual.dissoc(key, val);
+            }
+            else
+            {
+                expected.put(key, val);
+                actual = actual.assoc(key, val);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.keys(), actual.keys());
+        assertEquals(ImmutableSet.copyOf(expected.entries()), actual.entries());
+        assertEquals(expected.asMap(), actual.asMap());
+        assertEquals(actual, PersistentSetMultimap.copyOf(expected));
+    }
+}
@@ -0,0 +1,184 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentSortedMapTest
+{
+    @Test
+    public void testAddRemove()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        PersistentSortedMap<String, User> map1 = Immutables.toPersistentSortedMap(
+            ImmutableSortedMap.of("Tashi", user2, "Cora", user1));
+
+        PersistentSortedMap<String, User> map2 = Immutables.addToSortedMap(map1, "Mika", user3);
+        PersistentSortedMap<String, User> map3 = Immutables.removeFromSortedMap(map2, "Cora");
+
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), new ArrayList<>(map2.keySet()));
+        assertEquals(ImmutableList.of("Mika", "Tashi"), new ArrayList<>(map3.keySet()));
+        assertEquals(2, map1.size());
+
+        assertSame(map3, map3.dissoc("Cora"));
+        assertThrows(UnsupportedOperationException.class, () -> map3.put("Cora", user1));
+    }
+
+    @Test
+    public void testMatchesTreeMap()
+    {
+        Random random = new Random(42);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> actual = PersistentSortedMap.naturalOrder();
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            Integer key = random.nextInt(5_000);
+
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key);
+                actual = actual.dissoc(key);
+            }
+            else
+            {
+                expected.put(key, i);
+                actual = actual.assoc(key, i);
+            }
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+        assertEquals(expected.firstKey(), actual.firstKey());
+        assertEquals(expected.lastKey(), actual.lastKey());
+
+        for (int i = 0; i < 100; i++)
+        {
+            int from = random.nextInt(5_000);
+            int to = from + random.nextInt(1_000);
+
+            assertEquals(expected.subMap(from, to), actual.subMap(from, to));
+            assertEquals(expected.subMap(from, to).size(), actual.subMap(from, to).size());
+            assertEquals(expected.headMap(from), actual.headMap(from));
+            assertEquals(expected.tailMap(from), actual.tailMap(from));
+        }
+    }
+
+    @Test
+    public void testSplitJoin()
+    {
+        Instant now = Instant.parse("2019-04-01T12:00:00Z");
+        PersistentSortedMap<Instant, String> schedule = PersistentSortedMap.naturalOrder();
+
+        for (int i = -50; i < 50; i++)
+        {
+            schedule = schedule.assoc(now.plusSeconds(i * 60), "item" + i);
+        }
+
+        // Pop everything that's due:
+        PersistentSortedMap.Split<Instant, String> split = schedule.split(now);
+
+        assertEquals(50, split.lower().size());
+        assertEquals("item0", split.match().getValue());
+        assertEquals(49, split.higher().size());
+        assertEquals(now.plusSeconds(60), split.higher().firstKey());
+
+        PersistentSortedMap<Instant, String> rejoined = split.lower()
+            .join(split.higher().assoc(now, "item0"));
+
+        assertEquals(schedule, rejoined);
+        assertThrows(IllegalArgumentException.class, () -> split.higher().join(split.lower()));
+
+        PersistentSortedMap.Split<Instant, String> missing = schedule.split(now.plusSeconds(30));
+        assertNull(missing.match());
+        assertEquals(100, missing.lower().size() + missing.higher().size());
+    }
+
+    @Test
+    public void testTransient()
+    {
+        Random random = new Random(11);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.naturalOrder();
+
+        for (int round = 0; round < 20; round++)
+        {
+            PersistentSortedMap<Integer, Integer> before = map;
+            TreeMap<Integer, Integer> expectedBefore = new TreeMap<>(expected);
+
+            map = Immutables.editSortedMap(map, tmp -> {
+                for (int i = 0; i < 1_000; i++)
+                {
+                    Integer key = random.nextInt(3_000);
+
+                    if (random.nextInt(3) == 0)
+                    {
+                        assertEquals(expected.remove(key), tmp.remove(key));
+                    }
+                    else
+                    {
+                        assertEquals(expected.put(key, i), tmp.put(key, i));
+                    }
+                }
+            });
+
+            assertEquals(expectedBefore, before);
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+            assertEquals(expected.size(), map.size());
+        }
+    }
+
+    @Test
+    public void testHashCodeAndEquals()
+    {
+        Random random = new Random(11);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> byAssoc = PersistentSortedMap.naturalOrder();
+
+        for (int i = 0; i < 5_000; i++)
+        {
+            Integer key = random.nextInt();
+            expected.put(key, i);
+            byAssoc = byAssoc.assoc(key, i);
+            assertEquals(expected.hashCode(), byAssoc.hashCode());
+        }
+
+        PersistentSortedMap<Integer, Integer> byCopy = PersistentSortedMap.copyOf(expected);
+        PersistentSortedMap.Split<Integer, Integer> split = byCopy.split(expected.firstKey() / 2);
+        PersistentSortedMap<Integer, Integer> byJoin = split.lower().join(split.higher());
+
+        assertEquals(expected.hashCode(), byCopy.hashCode());
+        assertEquals(expected.hashCode(), byJoin.hashCode());
+        assertEquals(byAssoc, byCopy);
+        assertEquals(byCopy, byJoin);
+        assertEquals(expected.headMap(0).hashCode(), byAssoc.headMap(0).hashCode());
+
+        Integer someKey = expected.lastKey();
+        PersistentSortedMap<Integer, Integer> changed = byCopy.assoc(someKey, -1);
+        assertFalse(byAssoc.equals(changed));
+        assertEquals(byAssoc, changed.assoc(someKey, expected.get(someKey)));
+
+        PersistentSortedMap<Integer, Integer> edited = Immutables.editSortedMap(byAssoc, map -> {
+            map.put(someKey, -1);
+            map.put(someKey, expected.get(someKey));
+        });
+
+        assertEquals(byAssoc, edited);
+        assertEquals(expected.hashCode(), edited.hashCode());
+    }
+}
@@ -0,0 +1,209 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentVectorTest
+{
+    @Test
+    public void testAddRemove()
+    {
+        PersistentVector<String> list1 = PersistentVector.of("Cora");
+        PersistentVector<String> list2 = Immutables.addToList(list1, "Mika", "Tashi");
+        PersistentVector<String> list3 = Immutables.removeFromList(list2, "Cora", "fake");
+
+        assertEquals(ImmutableList.of("Cora"), list1);
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), list2);
+        assertEquals(ImmutableList.of("Mika", "Tashi"), list3);
+
+        assertSame(list3, Immutables.removeFromList(list3, "fake"));
+        assertThrows(UnsupportedOperationException.class, () -> list3.add("Cora"));
+    }
+
+    @Test
+    public void testRemoveMatchesArrayList()
+    {
+        Random random = new Random(42);
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < 5_000; i++)
+        {
+            values.add(random.nextInt(1_000));
+        }
+
+        PersistentVector<Integer> vector = PersistentVector.copyOf(values);
+
+        for (Integer[] toRemove : new Integer[][] { { 0 }, { 999, 5 }, { values.get(0), values.get(4_999) }, { -1 } })
+        {
+            List<Integer> expected = new ArrayList<>(values);
+            expected.removeAll(ImmutableList.copyOf(toRemove));
+
+            PersistentVector<Integer> actual = Immutables.removeFromList(vector, toRemove);
+            assertEquals(expected, actual);
+            assertEquals(expected.hashCode(), actual.hashCode());
+        }
+
+        assertSame(vector, Immutables.removeFromList(vector, -1, 1_000));
+    }
+
+    @Test
+    public void testAppendAndUpdate()
+    {
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> actual = PersistentVector.empty();
+
+        for (int i = 0; i < 40_000; i++)
+        {
+            expected.add(i);
+            actual = actual.append(i);
+        }
+
+        assertEquals(expected, actual);
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            int index = random.nextInt(expected.size());
+            expected.set(index, -i);
+            actual = actual.assoc(index, -i);
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+    }
+
+    @Test
+    public void testConcatAndSlice()
+    {
+        Random random = new Random(7);
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> actual = PersistentVector.empty();
+
+        for (int round = 0; round < 200; round++)
+        {
+            int len = random.nextInt(3_000);
+            List<Integer> chunk = new ArrayList<>();
+
+            for (int i = 0; i < len; i++)
+            {
+                chunk.add(random.nextInt());
+            }
+
+            expected.addAll(chunk);
+            actual = actual.concat(PersistentVector.copyOf(chunk));
+
+            if (round % 10 == 9)
+            {
+                int from = random.nextInt(expected.size() / 4 + 1);
+                int to = expected.size() - random.nextInt(expected.size() / 4 + 1);
+
+                expected = new ArrayList<>(expected.subList(from, to));
+                actual = actual.subList(from, to);
+            }
+
+            actual = actual.append(round);
+            expected.add(round);
+        }
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testTransient()
+    {
+        PersistentVector<Integer> list1 = PersistentVector.copyOf(ImmutableList.of(1, 2, 3));
+        List<Integer> expected = new ArrayList<>(list1);
+
+        PersistentVector<Integer> list2 = Immutables.editList(list1, list -> {
+            for (int i = 0; i < 10_000; i++)
+            {
+                list.add(i);
+            }
+
+            list.set(0, -1);
+            list.set(5_000, -2);
+            list.set(list.size() - 1, -3);
+        });
+
+        assertEquals(ImmutableList.of(1, 2, 3), list1);
+
+        for (int i = 0; i < 10_000; i++)
+        {
+            expected.add(i);
+        }
+
+        expected.set(0, -1);
+        expected.set(5_000, -2);
+        expected.set(expected.size() - 1, -3);
+        assertEquals(expected, list2);
+
+        PersistentVector<Integer> list3 = Immutables.editList(list2, list -> list.removeAll(ImmutableList.of(-1, -2, -3)));
+        expected.removeAll(ImmutableList.of(-1, -2, -3));
+        assertEquals(expected, list3);
+        assertEquals(10_000, list3.size());
+    }
+
+    @Test
+    public void testHashCodeAndEquals()
+    {
+        Random random = new Random(11);
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> byAppend = PersistentVector.empty();
+
+        for (int i = 0; i < 5_000; i++)
+        {
+            Integer element = random.nextInt();
+            expected.add(element);
+            byAppend = byAppend.append(element);
+            assertEquals(expected.hashCode(), byAppend.hashCode());
+        }
+
+        PersistentVector<Integer> byConcat = PersistentVector.empty();
+
+        for (int from = 0; from < expected.size(); from += 700)
+        {
+            byConcat = byConcat.concat(PersistentVector.copyOf(expected.subList(from, Math.min(from + 700, expected.size()))));
+        }
+
+        PersistentVector<Integer> bySlice = PersistentVector.<Integer>of(0).concat(byAppend).append(0).subList(1, expected.size() + 1);
+        PersistentVector<Integer> byTransient = Immutables.editList(PersistentVector.<Integer>empty(), list -> {
+            list.addAll(expected);
+            list.set(100, 0);
+            list.set(list.size() - 1, 0);
+            list.set(100, expected.get(100));
+            list.set(list.size() - 1, expected.get(list.size() - 1));
+        });
+
+        for (PersistentVector<Integer> actual : ImmutableList.of(byConcat, bySlice, byTransient))
+        {
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(byAppend, actual);
+            assertEquals(expected, actual);
+        }
+
+        assertEquals(expected.subList(17, 4_321).hashCode(), byConcat.subList(17, 4_321).hashCode());
+        assertEquals(byAppend.subList(17, 4_321), byConcat.subList(17, 4_321));
+
+        PersistentVector<Integer> changed = byConcat.assoc(2_500, 0);
+        assertFalse(byAppend.equals(changed));
+        assertEquals(byAppend, changed.assoc(2_500, expected.get(2_500)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.jupiter.api.Test;
+
+class PipelineTest
+{
+    @Test
+    public void testSteps()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+        ImmutableList<User> users = ImmutableList.of(user1, user2, user3);
+
+        Pipeline<String> olderNames = Immutables.pipeline(users)
+            .filter(user -> user.getAge() > 10)
+            .map(User::getName);
+
+        assertEquals(ImmutableList.of("Tashi", "Mika"), olderNames.toImmutableList());
+        assertEquals(ImmutableList.of("Tashi", "Mika"), olderNames.toPersistentVector());
+
+        // Pipelines are immutable, so they can be branched:
+        assertEquals(
+            ImmutableList.of('T', 'a', 's', 'h', 'i', 'M', 'i', 'k', 'a'),
+            olderNames.flatMap(name -> name.chars().mapToObj(ch -> (char) ch)::iterator).toImmutableList());
+
+        assertEquals(
+            ImmutableSet.of('a', 'i'),
+            olderNames.flatMap(name -> ImmutableList.of(name.charAt(1), name.charAt(name.length() - 1))).toImmutableSet());
+
+        assertEquals(ImmutableList.of("Cora"), Immutables.removeFromList(ImmutableList.of("Cora", "Mika", "Tashi"), "Mika", "Tashi"));
+        assertThrows(NullPointerException.class, () -> Immutables.pipeline(users).map(user -> null).toImmutableList());
+    }
+
+    @Test
+    public void testFused()
+    {
+        AtomicInteger calls = new AtomicInteger();
+
+        Pipeline<Integer> pipeline = Immutables.pipeline(ImmutableList.of(1, 2, 3, 4))
+            .map(i -> {
+                calls.incrementAndGet();
+                return i * 10;
+            })
+            .filter(i -> i > 10);
+
+        // Nothing runs until a terminal method, and then each element goes through once:
+        assertEquals(0, calls.get());
+        assertEquals(ImmutableList.of(20, 30, 40), pipeline.toImmutableList());
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testMemoize()
+    {
+        AtomicInteger calls = new AtomicInteger();
+
+        List<String> view = Immutables.pipeline(ImmutableList.of("Cora", "Tashi", "Mika"))
+            .map(name -> {
+                calls.incrementAndGet();
+                return name.toUpperCase();
+            })
+            .memoize();
+
+        assertEquals("TASHI", view.get(1));
+        assertEquals("TASHI", view.get(1));
+        assertEquals(1, calls.get());
+        assertEquals(ImmutableList.of("CORA", "TASHI", "MIKA"), view);
+        assertEquals(3, calls.get());
+
+        List<String> filtered = Immutables.pipeline(ImmutableList.of("Cora", "Tashi", "Mika"))
+            .map(name -> {
+                calls.incrementAndGet();
+                return name.toLowerCase();
+            })
+            .filter(name -> name.length() == 4)
+            .memoize();
+
+        assertEquals(3, calls.get());
+        assertEquals(ImmutableList.of("cora", "mika"), filtered);
+        assertEquals("mika", filtered.get(1));
+        assertEquals(6, calls.get());
+    }
+}
@@ -0,0 +1,143 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.jupiter.api.Test;
+
+class SnapshotPublisherTest
+{
+    @Test
+    public void testSlowSubscriberSkipsToLatest()
+    {
+        SnapshotPublisher<ImmutableList<String>> publisher = new SnapshotPublisher<>(ImmutableList.of(), Runnable::run);
+        Recorder<Snapshot<ImmutableList<String>>> recorder = new Recorder<>();
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.items.size());
+        assertEquals(0, recorder.items.get(0).version());
+
+        publisher.update(list -> Immutables.addToList(list, "Cora"));
+        publisher.update(list -> Immutables.addToList(list, "Mika"));
+        publisher.update(list -> Immutables.addToList(list, "Tashi"));
+        assertEquals(1, recorder.items.size());
+
+        // Same instance back, so no new version:
+        publisher.update(list -> list);
+        assertEquals(3, publisher.current().version());
+
+        recorder.subscription.request(5);
+        assertEquals(2, recorder.items.size());
+        assertEquals(3, recorder.items.get(1).version());
+        assertEquals(ImmutableList.of("Cora", "Mika", "Tashi"), recorder.items.get(1).value());
+
+        publisher.close();
+        assertTrue(recorder.completed);
+        assertThrows(IllegalStateException.class, () -> publisher.set(ImmutableList.of()));
+    }
+
+    @Test
+    public void testDeltas()
+    {
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        SnapshotPublisher<ImmutableMap<String, User>> publisher =
+            new SnapshotPublisher<>(ImmutableMap.of("Cora", user1), Runnable::run);
+
+        Recorder<MapPatch<String, User>> recorder = new Recorder<>();
+        publisher.deltas(ImmutableMap.<String, User>of(), Immutables::diff).subscribe(recorder);
+
+        recorder.subscription.request(1);
+        assertEquals(ImmutableMap.of("Cora", user1), recorder.items.get(0).added());
+
+        publisher.update(map -> Immutables.addToMap(map, "Tashi", user2));
+        publisher.update(map -> Immutables.addToMap(map, "Mika", user3));
+        publisher.update(map -> Immutables.removeFromMap(map, "Cora"));
+
+        // One delta covering all three skipped versions:
+        recorder.subscription.request(1);
+        assertEquals(2, recorder.items.size());
+        assertEquals(ImmutableMap.of("Tashi", user2, "Mika", user3), recorder.items.get(1).added());
+        assertEquals(ImmutableSet.of("Cora"), recorder.items.get(1).removed());
+    }
+
+    @Test
+    public void testAsyncDelivery() throws InterruptedException
+    {
+        SnapshotPublisher<Integer> publisher = new SnapshotPublisher<>(0);
+        Recorder<Snapshot<Integer>> recorder = new Recorder<>();
+        publisher.subscribe(recorder);
+
+        assertTrue(recorder.subscribed.await(10, TimeUnit.SECONDS));
+        recorder.subscription.request(Long.MAX_VALUE);
+
+        for (int i = 1; i <= 10_000; i++)
+        {
+            publisher.update(val -> val + 1);
+        }
+
+        publisher.close();
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+
+        long lastVersion = -1;
+
+        for (Snapshot<Integer> snapshot : recorder.items)
+        {
+            assertTrue(snapshot.version() > lastVersion);
+            assertEquals(snapshot.version(), (long) snapshot.value());
+            lastVersion = snapshot.version();
+        }
+
+        assertEquals(10_000, lastVersion);
+    }
+
+    private static final class Recorder<T> implements Flow.Subscriber<T>
+    {
+        private final List<T> items = new CopyOnWriteArrayList<>();
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Flow.Subscription subscription;
+        private volatile boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillingSorterTest
+{
+    @Test
+    public void testMoreRunsThanFanIn(@TempDir Path dir) throws IOException
+    {
+        Random random = new Random(42);
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++)
+        {
+            values.add(random.nextInt(100_000));
+        }
+
+        // Only the tens count, so there are plenty of ties to keep in order:
+        Comparator<Integer> byTens = Comparator.comparing(val -> val / 10);
+        SpillingSorter<Integer> sorter = new SpillingSorter<>(Codecs.INTEGER, byTens, 50, 4, dir);
+        values.forEach(sorter::add);
+
+        // 200 runs, merged 4 at a time: 200 -> 50 -> 13 -> 4 -> 1, plus the buffer:
+        assertEquals(200, sorter.runCount());
+        assertEquals(10_000, sorter.size());
+
+        List<Integer> expected = new ArrayList<>(values);
+        expected.sort(byTens);
+        assertEquals(expected, ImmutableList.copyOf(sorter.sorted()));
+
+        assertEquals(0, Files.list(dir).count());
+        assertThrows(IllegalStateException.class, sorter::sorted);
+    }
+}
@@ -0,0 +1,156 @@
+package com.terheyden;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class VersionedStoreTest
+{
+    @Test
+    public void testRetainVersions()
+    {
+        VersionedStore<PersistentSortedMap<String, User>> store = VersionedStore
+            .<PersistentSortedMap<String, User>>builder()
+            .retainVersions(3)
+            .build(PersistentSortedMap.naturalOrder());
+
+        User user1 = new User("Cora", 8);
+        User user2 = new User("Tashi", 11);
+        User user3 = new User("Mika", 12);
+
+        long v1 = store.update(map -> map.assoc("Cora", user1)).version();
+        long v2 = store.update(map -> map.assoc("Tashi", user2)).version();
+        store.update(map -> map);
+        long v3 = store.update(map -> map.assoc("Mika", user3)).version();
+
+        assertEquals(3, v3);
+        assertEquals(3, store.retainedVersions());
+        assertEquals(1, store.oldestVersion());
+        assertNull(store.get(0));
+        assertNull(store.get(4));
+
+        assertEquals(1, store.get(v1).size());
+        assertEquals(2, store.get(v2).size());
+        assertEquals(user2, store.get(v2).get("Tashi"));
+        assertEquals(store.current().value(), store.get(v3));
+    }
+
+    @Test
+    public void testRetainWeight()
+    {
+        // Weigh each version by how many entries it added:
+        VersionedStore<PersistentVector<String>> store = VersionedStore
+            .<PersistentVector<String>>builder()
+            .retainWeight(5, (older, newer) -> newer.size() - older.size())
+            .build(PersistentVector.of());
+
+        store.update(list -> list.append("a").append("b"));
+        store.update(list -> list.append("c").append("d").append("e"));
+        assertEquals(0, store.oldestVersion());
+
+        store.update(list -> list.append("f"));
+        assertEquals(1, store.oldestVersion());
+
+        store.update(list -> list.append("g").append("h").append("i").append("j").append("k").append("l"));
+        // Version 4 alone is over budget, but the current version is always kept:
+        assertEquals(4, store.oldestVersion());
+        assertEquals(1, store.retainedVersions());
+    }
+
+    @Test
+    public void testRetainFor()
+    {
+        TestClock clock = new TestClock();
+
+        VersionedStore<Integer> store = VersionedStore
+            .<Integer>builder()
+            .retainFor(Duration.ofMinutes(10))
+            .clock(clock)
+            .build(0);
+
+        store.set(1);
+        clock.advance(Duration.ofMinutes(5));
+        store.set(2);
+        clock.advance(Duration.ofMinutes(6));
+
+        // Version 0 was superseded 11 minutes ago, version 1 only 6:
+        store.reclaim();
+        assertEquals(1, store.oldestVersion());
+
+        clock.advance(Duration.ofHours(1));
+        store.reclaim();
+        assertEquals(2, store.oldestVersion());
+        assertEquals(2, (int) store.get(2));
+    }
+
+    @Test
+    public void testBackgroundReclaim() throws InterruptedException
+    {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try (VersionedStore<Integer> store = VersionedStore
+            .<Integer>builder()
+            .retainFor(Duration.ZERO)
+            .reclaimEvery(Duration.ofMillis(10), executor)
+            .build(0))
+        {
+            store.set(1);
+            store.set(2);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+
+            while (store.retainedVersions() > 1 && System.nanoTime() < deadline)
+            {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, store.retainedVersions());
+            assertEquals(2, (int) store.get(store.oldestVersion()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static final class TestClock extends Clock
+    {
+        private Instant now = Instant.EPOCH;
+
+        private void advance(Duration duration)
+        {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone)
+        {
+            return this;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return now;
+        }
+    }
+}